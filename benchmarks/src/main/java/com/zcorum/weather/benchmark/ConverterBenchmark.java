@@ -0,0 +1,68 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.converter.BinaryTemperaturesConverter;
+import com.zcorum.weather.converter.CommaSeparatedListConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+	Encoding and decoding of the temperatures of one record, in the legacy text and in the binary column format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+	private final CommaSeparatedListConverter textConverter = new CommaSeparatedListConverter();
+
+	private final BinaryTemperaturesConverter binaryConverter = new BinaryTemperaturesConverter();
+
+	private List<Double> temperatures;
+
+	private String text;
+
+	private byte[] binary;
+
+	@Setup
+	public void setup() {
+		temperatures = WeatherData.temperatures(new Random(42));
+		text = textConverter.convertToDatabaseColumn(temperatures);
+		binary = binaryConverter.convertToDatabaseColumn(temperatures);
+	}
+
+	@Benchmark
+	public String encodeText() {
+		return textConverter.convertToDatabaseColumn(temperatures);
+	}
+
+	@Benchmark
+	public List<Double> decodeText() {
+		return textConverter.convertToEntityAttribute(text);
+	}
+
+	@Benchmark
+	public byte[] encodeBinary() {
+		return binaryConverter.convertToDatabaseColumn(temperatures);
+	}
+
+	@Benchmark
+	public List<Double> decodeBinary() {
+		return binaryConverter.convertToEntityAttribute(binary);
+	}
+
+}
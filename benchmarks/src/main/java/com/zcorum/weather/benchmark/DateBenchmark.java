@@ -0,0 +1,59 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.util.Dates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.zcorum.weather.constants.Constants.yyyy_MM_dd;
+
+/*
+	Parsing and formatting of one date, by Dates and by a SimpleDateFormat per call as the dates were handled before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateBenchmark {
+
+	private final String text = "2023-03-20";
+
+	private final LocalDate date = LocalDate.of(2023, 3, 20);
+
+	private final Date legacyDate = new Date();
+
+	@Benchmark
+	public LocalDate parse() {
+		return Dates.parse(text);
+	}
+
+	@Benchmark
+	public String format() {
+		return Dates.format(date);
+	}
+
+	@Benchmark
+	public Date parseSimpleDateFormat() throws ParseException {
+		return new SimpleDateFormat(yyyy_MM_dd).parse(text);
+	}
+
+	@Benchmark
+	public String formatSimpleDateFormat() {
+		return new SimpleDateFormat(yyyy_MM_dd).format(legacyDate);
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.ZCorumWeatherApplication;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.service.WeatherService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+	Rows per second stored one record per WeatherService.create call, as by POST /weather, against
+	WeatherService.createAll in JDBC batches, as by POST /weather/batch, into an embedded H2 database. Every invocation
+	stores RECORDS records, so the scores of both benchmarks are rows per second. Each record has a new city and date,
+	the table grows over the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestBenchmark {
+
+	private static final int RECORDS = 500;
+
+	private ConfigurableApplicationContext context;
+
+	private WeatherService weatherService;
+
+	private final Random random = new Random(42);
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = new SpringApplicationBuilder(ZCorumWeatherApplication.class)
+				.web(WebApplicationType.NONE)
+				// command line arguments, so that they take precedence over the application.yaml of the application
+				.run("--spring.main.banner-mode=off",
+						"--spring.datasource.url=jdbc:h2:mem:ingest;MODE=MySQL;DB_CLOSE_DELAY=-1",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.datasource.username=sa",
+						"--spring.datasource.password=",
+						"--spring.jpa.hibernate.ddl-auto=create",
+						"--spring.jpa.show-sql=false",
+						"--spring.cache.type=none",
+						"--logging.level.root=warn");
+		weatherService = context.getBean(WeatherService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public int createOneByOne() {
+		int last = 0;
+		for (int i = 0; i < RECORDS; i++) {
+			last = weatherService.create(WeatherData.dto(next++, random)).getId();
+		}
+		return last;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public List<Integer> createAll() {
+		List<WeatherDto> dtos = WeatherData.dtos(next, RECORDS, next);
+		next += RECORDS;
+		return weatherService.createAll(dtos);
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.zcorum.weather.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zcorum.weather.dto.WeatherDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+	JSON serialization of search results with an ObjectMapper configured the way Spring Boot configures the web one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+	@Param({"1000"})
+	private int records;
+
+	private List<WeatherDto> dtos;
+
+	private ObjectWriter listWriter;
+
+	private ObjectWriter recordWriter;
+
+	@Setup
+	public void setup() {
+		dtos = WeatherData.dtos(0, records, 42);
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, WeatherDto.class));
+		recordWriter = objectMapper.writerFor(WeatherDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	}
+
+	@Benchmark
+	public void serializeList(Blackhole blackhole) throws IOException {
+		listWriter.writeValue(new BlackholeOutputStream(blackhole), dtos);
+	}
+
+	@Benchmark
+	public byte[] serializeRecord() throws IOException {
+		return recordWriter.writeValueAsBytes(dtos.get(0));
+	}
+
+	/*
+		Consumes written bytes without keeping them, so that only the serialization allocates.
+	 */
+	private static final class BlackholeOutputStream extends OutputStream {
+
+		private final Blackhole blackhole;
+
+		BlackholeOutputStream(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(int b) {
+			blackhole.consume(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			blackhole.consume(b);
+			blackhole.consume(len);
+		}
+
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.mapper.WeatherEntityDtoMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+	MapStruct mapping between entities and DTOs, of a single record and of a whole search result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+	@Param({"1000"})
+	private int records;
+
+	private final WeatherEntityDtoMapper mapper = Mappers.getMapper(WeatherEntityDtoMapper.class);
+
+	private List<WeatherEntity> entities;
+
+	private WeatherEntity entity;
+
+	private WeatherDto dto;
+
+	@Setup
+	public void setup() {
+		entities = WeatherData.entities(records, 42);
+		entity = entities.get(0);
+		dto = mapper.entityToDto(entity);
+	}
+
+	@Benchmark
+	public WeatherDto entityToDto() {
+		return mapper.entityToDto(entity);
+	}
+
+	@Benchmark
+	public WeatherEntity dtoToEntity() {
+		return mapper.dtoToEntity(dto);
+	}
+
+	@Benchmark
+	public List<WeatherDto> entitiesToDtos() {
+		return mapper.entitiesToDtos(entities);
+	}
+
+}
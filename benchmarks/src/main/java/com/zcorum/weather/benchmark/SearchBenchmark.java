@@ -0,0 +1,108 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.ZCorumWeatherApplication;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.service.WeatherService;
+import com.zcorum.weather.util.Dates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+	End-to-end WeatherService.search against an embedded H2 database seeded with `rows` records, through the same
+	specification, query, converter and mapper path as the web endpoints. The result cache is disabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({"10000"})
+	private int rows;
+
+	private ConfigurableApplicationContext context;
+
+	private WeatherService weatherService;
+
+	private String day;
+
+	private String weekStart;
+
+	private String weekEnd;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		context = new SpringApplicationBuilder(ZCorumWeatherApplication.class)
+				.web(WebApplicationType.NONE)
+				// command line arguments, so that they take precedence over the application.yaml of the application
+				.run("--spring.main.banner-mode=off",
+						"--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.datasource.username=sa",
+						"--spring.datasource.password=",
+						"--spring.jpa.hibernate.ddl-auto=create",
+						"--spring.jpa.show-sql=false",
+						"--spring.cache.type=none",
+						"--logging.level.root=warn");
+		weatherService = context.getBean(WeatherService.class);
+		int chunk = 10000;
+		for (int seeded = 0; seeded < rows; seeded += chunk) {
+			weatherService.createAll(WeatherData.dtos(seeded, Math.min(chunk, rows - seeded), seeded));
+		}
+		int days = Math.max(1, rows / WeatherData.CITIES.length);
+		day = Dates.format(WeatherData.date(days / 2 * WeatherData.CITIES.length));
+		weekStart = day;
+		weekEnd = Dates.format(WeatherData.date(Math.min(days - 1, days / 2 + 6) * WeatherData.CITIES.length));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<WeatherDto> searchByCity() {
+		return weatherService.search(null, null, null, "laredo", null);
+	}
+
+	@Benchmark
+	public List<WeatherDto> searchByCitiesSortedByDate() {
+		return weatherService.search(null, null, null, "Laredo,Austin", "-date");
+	}
+
+	@Benchmark
+	public List<WeatherDto> searchByDate() {
+		return weatherService.search(day, null, null, null, null);
+	}
+
+	@Benchmark
+	public List<WeatherDto> searchByCityAndWeek() {
+		return weatherService.search(null, weekStart, weekEnd, "denver", null);
+	}
+
+	@Benchmark
+	public int streamByCity(Blackhole blackhole) {
+		return weatherService.search(null, null, null, "laredo", null, blackhole::consume);
+	}
+
+}
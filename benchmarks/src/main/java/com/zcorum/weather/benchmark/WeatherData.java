@@ -0,0 +1,78 @@
+package com.zcorum.weather.benchmark;
+
+import com.zcorum.weather.converter.TemperatureList;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.entity.WeatherEntity;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+	Deterministic weather records shaped like the production data: 24 hourly readings with one decimal.
+ */
+final class WeatherData {
+
+	static final String[] CITIES = {"Nashville", "Laredo", "Jacksonville", "Los Angeles", "Jersey City", "Pittsburgh", "Austin", "Denver"};
+
+	static final LocalDate FIRST_DATE = LocalDate.of(2000, 1, 1);
+
+	private WeatherData() {
+	}
+
+	static List<Double> temperatures(Random random) {
+		double[] values = new double[24];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = Math.round((random.nextDouble() * 40 - 5) * 10) / 10.0;
+		}
+		return TemperatureList.wrap(values);
+	}
+
+	static WeatherDto dto(int index, Random random) {
+		WeatherDto dto = new WeatherDto();
+		dto.setDate(date(index));
+		dto.setLat(36.1189);
+		dto.setLon(-86.6892);
+		dto.setCity(CITIES[index % CITIES.length]);
+		dto.setState("Tennessee");
+		dto.setTemperatures(temperatures(random));
+		return dto;
+	}
+
+	static List<WeatherDto> dtos(int first, int count, long seed) {
+		Random random = new Random(seed);
+		List<WeatherDto> dtos = new ArrayList<>(count);
+		for (int i = first; i < first + count; i++) {
+			dtos.add(dto(i, random));
+		}
+		return dtos;
+	}
+
+	static List<WeatherEntity> entities(int count, long seed) {
+		Random random = new Random(seed);
+		List<WeatherEntity> entities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			WeatherDto dto = dto(i, random);
+			WeatherEntity entity = new WeatherEntity();
+			entity.setId(i + 1);
+			entity.setDate(dto.getDate());
+			entity.setLat(dto.getLat());
+			entity.setLon(dto.getLon());
+			entity.setCity(dto.getCity());
+			entity.setState(dto.getState());
+			entity.setTemperatures(dto.getTemperatures());
+			entity.fillDerivedColumns();
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	/*
+		Every city gets one record per day, records of the same day are consecutive.
+	 */
+	static LocalDate date(int index) {
+		return FIRST_DATE.plusDays(index / CITIES.length);
+	}
+
+}
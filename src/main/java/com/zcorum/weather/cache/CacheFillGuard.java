@@ -0,0 +1,66 @@
+package com.zcorum.weather.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/*
+	Notes the change count when a cached read starts, so that its result is not cached when a change was committed
+	while it ran: the read may have missed the change, and the eviction of the change may already be done, leaving the
+	older result cached until it expires. Covers the @Cacheable methods and WeatherService.findAllById, which fills the
+	cache by id itself. Ordered outside the caching advice, so the count is taken before the cache is looked up.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 4)
+public class CacheFillGuard {
+
+	private static final ThreadLocal<Read> READ = new ThreadLocal<>();
+
+	private final WeatherChanges weatherChanges;
+
+	public CacheFillGuard(WeatherChanges weatherChanges) {
+		this.weatherChanges = weatherChanges;
+	}
+
+	@Around("@annotation(org.springframework.cache.annotation.Cacheable)"
+			+ " || execution(public * com.zcorum.weather.service.WeatherService+.findAllById(..))")
+	public Object track(ProceedingJoinPoint joinPoint) throws Throwable {
+		Read previous = READ.get();
+		READ.set(new Read(weatherChanges, weatherChanges.count()));
+		try {
+			return joinPoint.proceed();
+		} finally {
+			if (previous == null) {
+				READ.remove();
+			} else {
+				READ.set(previous);
+			}
+		}
+	}
+
+	/*
+		Whether a change was committed since the current read started, false outside of a tracked read.
+	 */
+	public static boolean isStale() {
+		Read read = READ.get();
+		return read != null && read.changes.count() != read.count;
+	}
+
+	private static final class Read {
+
+		private final WeatherChanges changes;
+
+		private final long count;
+
+		private Read(WeatherChanges changes, long count) {
+			this.changes = changes;
+			this.count = count;
+		}
+
+	}
+
+}
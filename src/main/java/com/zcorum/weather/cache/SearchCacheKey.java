@@ -0,0 +1,71 @@
+package com.zcorum.weather.cache;
+
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.util.Dates;
+import lombok.Value;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static com.zcorum.weather.constants.Constants.FIELD_ID;
+import static java.util.stream.Collectors.toCollection;
+
+/*
+	Normalized search query, so that `city=London,kyiv` and `city=kyiv,london` share a cache entry.
+	Dates are kept as epoch days. An empty city set or day array and unbounded from and to days mean that the query is
+	not filtered by them.
+ */
+@Value
+public class SearchCacheKey {
+
+	static final long UNBOUNDED_FROM = Long.MIN_VALUE;
+	static final long UNBOUNDED_TO = Long.MAX_VALUE;
+
+	SortedSet<String> cityKeys;
+	// sorted and distinct
+	long[] days;
+	long fromDay;
+	long toDay;
+	String sort;
+
+	public static SearchCacheKey of(String date, String from, String to, String city, String sort) {
+		SortedSet<String> cityKeys = StringUtils.isEmpty(city)
+				? Collections.emptySortedSet()
+				: Arrays.stream(city.split(",")).map(WeatherEntity::toCityKey).collect(toCollection(TreeSet::new));
+		long[] days = StringUtils.isEmpty(date)
+				? new long[0]
+				: Dates.parseList(date).stream().mapToLong(LocalDate::toEpochDay).sorted().distinct().toArray();
+		return new SearchCacheKey(Collections.unmodifiableSortedSet(cityKeys), days,
+				StringUtils.isEmpty(from) ? UNBOUNDED_FROM : Dates.parse(from).toEpochDay(),
+				StringUtils.isEmpty(to) ? UNBOUNDED_TO : Dates.parse(to).toEpochDay(),
+				StringUtils.isEmpty(sort) ? FIELD_ID : sort);
+	}
+
+	/*
+		Whether a record written by the change could be part of the result of this query.
+	 */
+	public boolean mayContain(WeatherChangedEvent event) {
+		for (Map.Entry<String, Set<Long>> change : event.getDaysByCityKey().entrySet()) {
+			boolean cityMatches = cityKeys.isEmpty() || cityKeys.contains(change.getKey());
+			if (cityMatches && change.getValue().stream().anyMatch(this::dayMatches)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean dayMatches(Long day) {
+		if (day == null) {
+			return days.length == 0 && fromDay == UNBOUNDED_FROM && toDay == UNBOUNDED_TO;
+		}
+		return day >= fromDay && day <= toDay && (days.length == 0 || Arrays.binarySearch(days, day) >= 0);
+	}
+
+}
@@ -0,0 +1,21 @@
+package com.zcorum.weather.cache;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/*
+	Builds the SearchCacheKey of a WeatherService.search(date, from, to, city, sort) call.
+ */
+@Component(SearchCacheKeyGenerator.NAME)
+public class SearchCacheKeyGenerator implements KeyGenerator {
+
+	public static final String NAME = "searchCacheKeyGenerator";
+
+	@Override
+	public Object generate(Object target, Method method, Object... params) {
+		return SearchCacheKey.of((String) params[0], (String) params[1], (String) params[2], (String) params[3], (String) params[4]);
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.zcorum.weather.cache;
+
+import com.zcorum.weather.routing.ReadYourWrites;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+	Runs concurrent WeatherService.search(date, from, to, city, sort) calls of the same normalized query once: the
+	first caller runs the search and the callers arriving while it runs get its result, or its exception. A caller
+	only joins a search that started after the last committed change it could have seen and that reads from the same
+	database, so it never gets older data than a search of its own would return. A caller waiting longer than max-wait
+	runs the search itself.
+	Ordered inside the caching advice, so only cache misses are coalesced, and outside the transaction advice, so
+	waiting callers hold no connection. Callers are counted as `weather.search.coalescing`, tagged by role: leader runs
+	the search, follower gets the result of a leader and timeout gave up waiting for one.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+@ConditionalOnProperty(prefix = "weather.search.coalescing", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class SearchCoalescing {
+
+	private final ConcurrentMap<Flight, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+	private final WeatherChanges weatherChanges;
+
+	private final long maxWaitNanos;
+
+	private final Counter leaders;
+
+	private final Counter followers;
+
+	private final Counter timeouts;
+
+	public SearchCoalescing(WeatherChanges weatherChanges, MeterRegistry meterRegistry,
+	                        @Value("${weather.search.coalescing.max-wait:2s}") Duration maxWait) {
+		this.weatherChanges = weatherChanges;
+		this.maxWaitNanos = maxWait.toNanos();
+		this.leaders = counter(meterRegistry, "leader");
+		this.followers = counter(meterRegistry, "follower");
+		this.timeouts = counter(meterRegistry, "timeout");
+	}
+
+	private static Counter counter(MeterRegistry meterRegistry, String role) {
+		return Counter.builder("weather.search.coalescing")
+				.description("Searches run or shared by concurrent callers of the same query")
+				.tag("role", role)
+				.register(meterRegistry);
+	}
+
+	@Around("execution(public java.util.List com.zcorum.weather.service.WeatherService+.search(String, String, String, String, String))")
+	public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+		Object[] args = joinPoint.getArgs();
+		// counted before the search starts, see WeatherChanges.tag
+		Flight flight = new Flight(SearchCacheKey.of((String) args[0], (String) args[1], (String) args[2], (String) args[3], (String) args[4]),
+				ReadYourWrites.isPinned(), weatherChanges.count());
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		CompletableFuture<Object> running = flights.putIfAbsent(flight, result);
+		if (running == null) {
+			leaders.increment();
+			return lead(joinPoint, flight, result);
+		}
+		try {
+			Object value = running.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+			followers.increment();
+			return value;
+		} catch (ExecutionException e) {
+			followers.increment();
+			throw e.getCause();
+		} catch (TimeoutException e) {
+			timeouts.increment();
+			return joinPoint.proceed();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a search", e);
+		}
+	}
+
+	private Object lead(ProceedingJoinPoint joinPoint, Flight flight, CompletableFuture<Object> result) throws Throwable {
+		Object value;
+		try {
+			value = joinPoint.proceed();
+		} catch (Throwable e) {
+			flights.remove(flight, result);
+			result.completeExceptionally(e);
+			throw e;
+		}
+		flights.remove(flight, result);
+		result.complete(value);
+		return value;
+	}
+
+	@EqualsAndHashCode
+	@RequiredArgsConstructor
+	private static class Flight {
+
+		private final SearchCacheKey query;
+
+		private final boolean primary;
+
+		private final long changes;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.zcorum.weather.cache;
+
+import com.zcorum.weather.event.WeatherChangedEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_SEARCH;
+
+/*
+	Evicts, once the change is committed, the cached records by id and only the cached searches that may include
+	one of the written records. A read running concurrently with the commit does not cache its possibly older result
+	afterwards, see CacheFillGuard.
+ */
+@Component
+public class WeatherCacheInvalidator {
+
+	private final CacheManager cacheManager;
+
+	public WeatherCacheInvalidator(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onWeatherChanged(WeatherChangedEvent event) {
+		Cache byId = cacheManager.getCache(CACHE_WEATHER_BY_ID);
+		if (byId != null) {
+			event.getIds().forEach(byId::evict);
+		}
+		Cache search = cacheManager.getCache(CACHE_WEATHER_SEARCH);
+		if (search != null && search.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+			com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache = (com.github.benmanes.caffeine.cache.Cache<?, ?>) search.getNativeCache();
+			nativeCache.asMap().keySet().removeIf(key -> ((SearchCacheKey) key).mayContain(event));
+		}
+	}
+
+}
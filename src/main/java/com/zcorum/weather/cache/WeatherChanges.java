@@ -0,0 +1,156 @@
+package com.zcorum.weather.cache;
+
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.shard.ShardContext;
+import com.zcorum.weather.shard.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_SEARCH;
+import static com.zcorum.weather.entity.WeatherChangesEntity.ID;
+
+/*
+	Counts the committed changes of weather records, so that a search result can be tagged with the state it was read
+	from and revalidated without running the search again. The count is stored per shard in the weather_changes row and
+	bumped in the transaction of every change, so the tag moves with the changes made by any instance, the imports and
+	the maintenance steps alike. Writes made to the database directly must bump it as well.
+	An instance also counts the changes it sees in memory, for its caches: its own commits, and the changes of others
+	it finds when reading the tag, which drop its caches.
+ */
+@Slf4j
+@Component
+public class WeatherChanges implements InitializingBean {
+
+	private final AtomicLong count = new AtomicLong();
+
+	// per shard, the highest stored count this instance saw, through its own commits or the tag
+	private final ConcurrentMap<Integer, Long> known = new ConcurrentHashMap<>();
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Shards shards;
+
+	private final CacheManager cacheManager;
+
+	public WeatherChanges(DataSource dataSource, Shards shards, CacheManager cacheManager) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.shards = shards;
+		this.cacheManager = cacheManager;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for (int shard : shards.all()) {
+			shards.on(shard, () -> known.put(shard, seed()));
+		}
+	}
+
+	private long seed() {
+		List<Long> stored = jdbcTemplate.queryForList("SELECT changes FROM weather_changes WHERE id = ?", Long.class, ID);
+		if (!stored.isEmpty()) {
+			return stored.get(0);
+		}
+		String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+		try {
+			jdbcTemplate.update("INSERT INTO weather_changes (id, epoch, changes) VALUES (?, ?, 0)", ID, epoch);
+		} catch (DuplicateKeyException e) {
+			log.debug("The change count of shard {} was created concurrently", ShardContext.current());
+		}
+		return jdbcTemplate.queryForObject("SELECT changes FROM weather_changes WHERE id = ?", Long.class, ID);
+	}
+
+	/*
+		Bumps the stored count in the transaction of the change, on the shard it is written to.
+	 */
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onWeatherChanging(WeatherChangedEvent event) {
+		int shard = ShardContext.current();
+		jdbcTemplate.update("UPDATE weather_changes SET changes = changes + 1 WHERE id = ?", ID);
+		Long stored = jdbcTemplate.queryForObject("SELECT changes FROM weather_changes WHERE id = ?", Long.class, ID);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			known.merge(shard, stored, Math::max);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				known.merge(shard, stored, Math::max);
+			}
+		});
+	}
+
+	/*
+		Counted before WeatherCacheInvalidator evicts, so a read that may cache data older than the change sees the count
+		changed, see CacheFillGuard.
+	 */
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onWeatherChanged(WeatherChangedEvent event) {
+		count.incrementAndGet();
+	}
+
+	/*
+		The stored counts of all shards, read before the data, so data read from the primary after getting a tag is at
+		least as recent as the tag. Data read from a replica may be older and must not be tagged, see ReadRouting.
+		A count beyond the changes this instance saw was bumped elsewhere, the caches are dropped then.
+	 */
+	public String tag() {
+		List<Integer> all = shards.all();
+		List<Object[]> stored = shards.executeAll(all, true, shard -> jdbcTemplate.queryForObject(
+				"SELECT epoch, changes FROM weather_changes WHERE id = ?", (row, rowNum) -> new Object[]{row.getString(1), row.getLong(2)}, ID));
+		StringBuilder tag = new StringBuilder();
+		boolean changedElsewhere = false;
+		for (int i = 0; i < all.size(); i++) {
+			long changes = (Long) stored.get(i)[1];
+			Long seen = known.get(all.get(i));
+			if (seen == null || changes > seen) {
+				changedElsewhere = true;
+				known.merge(all.get(i), changes, Math::max);
+			}
+			tag.append(i == 0 ? "" : "-").append(stored.get(i)[0]).append('.').append(changes);
+		}
+		if (changedElsewhere) {
+			forget();
+		}
+		return tag.toString();
+	}
+
+	/*
+		The number of changes this instance saw since the start, counted like the tag.
+	 */
+	public long count() {
+		return count.get();
+	}
+
+	// counted first, like a commit, so that reads running meanwhile do not cache their results
+	private void forget() {
+		count.incrementAndGet();
+		for (String name : new String[]{CACHE_WEATHER_BY_ID, CACHE_WEATHER_SEARCH}) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+
+}
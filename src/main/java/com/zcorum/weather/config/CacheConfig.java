@@ -0,0 +1,50 @@
+package com.zcorum.weather.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.Collection;
+
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_SEARCH;
+
+/*
+	The caching advice is ordered before the search coalescing and the transaction advice, so a cache hit returns without opening a transaction
+	or borrowing a connection. Hit and miss counts are published as the `cache.gets` metric.
+	Setting spring.cache.type=none replaces the caches with no-op ones, e.g. to measure the uncached search path.
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 3)
+public class CacheConfig {
+
+	@Bean
+	@ConditionalOnProperty(prefix = "spring.cache", name = "type", havingValue = "caffeine", matchIfMissing = true)
+	public CacheManager cacheManager(@Value("${weather.cache.by-id.maximum-size:10000}") long byIdMaximumSize,
+	                                 @Value("${weather.cache.by-id.expire-after-write:10m}") Duration byIdExpireAfterWrite,
+	                                 @Value("${weather.cache.search.maximum-records:100000}") long searchMaximumRecords,
+	                                 @Value("${weather.cache.search.expire-after-write:1m}") Duration searchExpireAfterWrite) {
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+		cacheManager.registerCustomCache(CACHE_WEATHER_BY_ID, Caffeine.newBuilder()
+				.maximumSize(byIdMaximumSize)
+				.expireAfterWrite(byIdExpireAfterWrite)
+				.recordStats()
+				.build());
+		// bounded by the total number of cached records rather than by the number of cached searches
+		cacheManager.registerCustomCache(CACHE_WEATHER_SEARCH, Caffeine.newBuilder()
+				.maximumWeight(searchMaximumRecords)
+				.weigher((Object key, Object value) -> 1 + (value instanceof Collection ? ((Collection<?>) value).size() : 0))
+				.expireAfterWrite(searchExpireAfterWrite)
+				.recordStats()
+				.build());
+		return cacheManager;
+	}
+
+}
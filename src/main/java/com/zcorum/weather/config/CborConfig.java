@@ -0,0 +1,46 @@
+package com.zcorum.weather.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/*
+	Serves and reads application/cbor with the Jackson settings of the JSON mapper (spring.jackson.*). Replaces the
+	default CBOR converter in its place, after the JSON one, so JSON stays the default when any type is accepted.
+	The responses of handlers returning a ResponseEntity are negotiated that way and vary by the Accept header, which is
+	added up front so that 304 responses carry it too.
+ */
+@Configuration
+public class CborConfig implements WebMvcConfigurer {
+
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new HandlerInterceptor() {
+			@Override
+			public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+				if (handler instanceof HandlerMethod
+						&& ResponseEntity.class.isAssignableFrom(((HandlerMethod) handler).getMethod().getReturnType())) {
+					response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+				}
+				return true;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.zcorum.weather.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+
+/*
+	Builds the connection pools of the replica and the shards in the same way Spring Boot builds the pool of
+	spring.datasource, pool settings are bound from the hikari.* properties under the given prefix.
+ */
+final class DataSourcePools {
+
+	private DataSourcePools() {
+	}
+
+	static HikariDataSource pool(DataSourceProperties properties, Binder binder, String hikariPrefix, String name) {
+		HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		binder.bind(hikariPrefix, Bindable.ofInstance(pool));
+		if (pool.getPoolName() == null) {
+			pool.setPoolName(name);
+		}
+		return pool;
+	}
+
+}
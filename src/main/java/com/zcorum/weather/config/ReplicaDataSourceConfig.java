@@ -0,0 +1,39 @@
+package com.zcorum.weather.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zcorum.weather.routing.ReadWriteRoutingDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+import static com.zcorum.weather.config.DataSourcePools.pool;
+
+/*
+	When weather.datasource.replica.url is set, read-only transactions (findById, search and stats) read from the
+	replica pool while writes and everything else stay on the spring.datasource primary. The replica pool is configured
+	like the primary one: weather.datasource.replica.username, password, driver-class-name and hikari.*.
+ */
+@Configuration
+@ConditionalOnProperty("weather.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+	public static final String REPLICA_PREFIX = "weather.datasource.replica";
+
+	@Bean
+	public DataSource dataSource(DataSourceProperties properties, Environment environment) {
+		Binder binder = Binder.get(environment);
+		HikariDataSource primary = pool(properties, binder, "spring.datasource.hikari", "primary");
+		DataSourceProperties replicaProperties = binder.bind(REPLICA_PREFIX, DataSourceProperties.class).get();
+		HikariDataSource replica = pool(replicaProperties, binder, REPLICA_PREFIX + ".hikari", "replica");
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica);
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.zcorum.weather.config;
+
+import com.zcorum.weather.shard.ShardRoutingDataSource;
+import com.zcorum.weather.shard.ShardSchema;
+import com.zcorum.weather.shard.ShardedSequenceGenerator;
+import com.zcorum.weather.shard.Shards;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.zcorum.weather.config.DataSourcePools.pool;
+import static java.util.Collections.singletonList;
+
+/*
+	When weather.datasource.shards lists data sources, records are spread over them by city (see Shards) and
+	spring.datasource is not used. Every shard is configured like spring.datasource: url, username, password,
+	driver-class-name and hikari.*. The order of the list must not change once records are stored, the shard of a
+	record is encoded in its id.
+ */
+@Configuration
+public class ShardingConfig {
+
+	public static final String SHARDS_PREFIX = "weather.datasource.shards";
+
+	// hibernate property naming the provider of additional integrators
+	private static final String INTEGRATOR_PROVIDER = "hibernate.integrator_provider";
+
+	@Bean
+	public Shards shards(Environment environment, PlatformTransactionManager transactionManager, ObjectProvider<ShardSchema> shardSchema) {
+		Shards shards = new Shards(shardProperties(environment).size(), transactionManager);
+		shardSchema.ifAvailable(schema -> schema.applyToOtherShards(shards));
+		return shards;
+	}
+
+	private static List<DataSourceProperties> shardProperties(Environment environment) {
+		return Binder.get(environment)
+				.bind(SHARDS_PREFIX, Bindable.listOf(DataSourceProperties.class))
+				.orElse(singletonList(new DataSourceProperties()));
+	}
+
+	@Configuration
+	@ConditionalOnProperty(SHARDS_PREFIX + "[0].url")
+	public static class ShardDataSourceConfig {
+
+		@Bean
+		public DataSource dataSource(Environment environment) {
+			if (environment.containsProperty(ReplicaDataSourceConfig.REPLICA_PREFIX + ".url")) {
+				throw new IllegalStateException("A read replica can not be combined with shards");
+			}
+			Binder binder = Binder.get(environment);
+			List<DataSourceProperties> properties = shardProperties(environment);
+			List<DataSource> pools = new ArrayList<>(properties.size());
+			for (int shard = 0; shard < properties.size(); shard++) {
+				pools.add(pool(properties.get(shard), binder, SHARDS_PREFIX + "[" + shard + "].hikari", "shard-" + shard));
+			}
+			ShardRoutingDataSource routing = new ShardRoutingDataSource(pools);
+			routing.afterPropertiesSet();
+			return new LazyConnectionDataSourceProxy(routing);
+		}
+
+		@Bean
+		public ShardSchema shardSchema() {
+			return new ShardSchema();
+		}
+
+		@Bean
+		public HibernatePropertiesCustomizer shardHibernateProperties(Environment environment, ShardSchema shardSchema) {
+			int count = shardProperties(environment).size();
+			return properties -> {
+				properties.put(ShardedSequenceGenerator.SHARD_COUNT, count);
+				properties.put(INTEGRATOR_PROVIDER, (IntegratorProvider) () -> singletonList(shardSchema));
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.zcorum.weather.config;
+
+import com.zcorum.weather.sql.ProfilingDataSource;
+import com.zcorum.weather.sql.SqlProfiler;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/*
+	Wraps the data source so that every statement is timed by SqlProfiler, statements slower than
+	weather.sql.slow-threshold are logged. Replaces spring.jpa.show-sql, which prints every statement without timing.
+ */
+@Configuration
+public class SqlProfilingConfig {
+
+	// static, so that the post processor does not force the early creation of this configuration
+	@Bean
+	public static BeanPostProcessor profilingDataSourcePostProcessor(Environment environment) {
+		Duration threshold = Binder.get(environment).bind("weather.sql.slow-threshold", Duration.class).orElse(Duration.ofMillis(200));
+		SqlProfiler profiler = new SqlProfiler(threshold);
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof DataSource && !(bean instanceof ProfilingDataSource)) {
+					return new ProfilingDataSource((DataSource) bean, profiler);
+				}
+				return bean;
+			}
+		};
+	}
+
+}
@@ -8,5 +8,18 @@ public interface Constants {
 	String FIELD_ID = "id";
 	String FIELD_DATE = "date";
 	String FIELD_CITY = "city";
+	String FIELD_CITY_KEY = "cityKey";
+	String FIELD_GEOHASH = "geohash";
+	String FIELD_LAT = "lat";
+	String FIELD_LON = "lon";
+
+	String HEADER_NEXT_PAGE_TOKEN = "X-Next-Page-Token";
+
+	String CACHE_WEATHER_BY_ID = "weatherById";
+	String CACHE_WEATHER_SEARCH = "weatherSearch";
+
+	String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+	String MEDIA_TYPE_CSV = "text/csv";
+	String MEDIA_TYPE_CBOR = "application/cbor";
 
 }
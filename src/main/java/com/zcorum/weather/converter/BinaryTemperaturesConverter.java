@@ -0,0 +1,106 @@
+package com.zcorum.weather.converter;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/*
+	Packs temperatures into a fixed-width binary value:
+	- 1 byte format version
+	- 2 bytes number of readings (unsigned)
+	- the readings, 2 bytes each for VERSION_INT16_CENTI or 8 bytes each for VERSION_FLOAT64
+
+	VERSION_INT16_CENTI stores hundredths of a degree and is chosen only when every reading round-trips exactly,
+	otherwise the lossless VERSION_FLOAT64 layout is written. The number of readings is limited so that the float64
+	layout fits the COLUMN_LENGTH bytes of the column.
+ */
+@Converter
+public class BinaryTemperaturesConverter implements AttributeConverter<List<Double>, byte[]> {
+
+	public static final byte VERSION_INT16_CENTI = 1;
+	public static final byte VERSION_FLOAT64 = 2;
+
+	public static final int COLUMN_LENGTH = 1024;
+
+	private static final int HEADER_SIZE = 3;
+
+	public static final int MAX_READINGS = (COLUMN_LENGTH - HEADER_SIZE) / Double.BYTES;
+	private static final double SCALE = 100.0;
+
+	@Override
+	public byte[] convertToDatabaseColumn(List<Double> list) {
+		if (list == null) {
+			return null;
+		}
+		return encode(TemperatureList.copyOf(list));
+	}
+
+	@Override
+	public List<Double> convertToEntityAttribute(byte[] packed) {
+		if (packed == null) {
+			return null;
+		}
+		long started = System.nanoTime();
+		try {
+			return decode(packed);
+		} finally {
+			DecodeTimings.BINARY.record(System.nanoTime() - started);
+		}
+	}
+
+	public static byte[] encode(TemperatureList temperatures) {
+		int size = temperatures.size();
+		if (size > MAX_READINGS) {
+			throw new IllegalArgumentException("Too many temperature readings: " + size + ", at most " + MAX_READINGS);
+		}
+		boolean scaled = isScalable(temperatures);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size * (scaled ? Short.BYTES : Double.BYTES));
+		buffer.put(scaled ? VERSION_INT16_CENTI : VERSION_FLOAT64);
+		buffer.putShort((short) size);
+		for (int i = 0; i < size; i++) {
+			double value = temperatures.getDouble(i);
+			if (scaled) {
+				buffer.putShort((short) Math.round(value * SCALE));
+			} else {
+				buffer.putDouble(value);
+			}
+		}
+		return buffer.array();
+	}
+
+	public static TemperatureList decode(byte[] packed) {
+		ByteBuffer buffer = ByteBuffer.wrap(packed);
+		byte version = buffer.get();
+		int size = buffer.getShort() & 0xFFFF;
+		double[] values = new double[size];
+		switch (version) {
+			case VERSION_INT16_CENTI:
+				for (int i = 0; i < size; i++) {
+					values[i] = buffer.getShort() / SCALE;
+				}
+				break;
+			case VERSION_FLOAT64:
+				for (int i = 0; i < size; i++) {
+					values[i] = buffer.getDouble();
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported temperatures format version " + version);
+		}
+		return TemperatureList.wrap(values);
+	}
+
+	private static boolean isScalable(TemperatureList temperatures) {
+		for (int i = 0; i < temperatures.size(); i++) {
+			double value = temperatures.getDouble(i);
+			long scaled = Math.round(value * SCALE);
+			if (scaled < Short.MIN_VALUE || scaled > Short.MAX_VALUE || scaled / SCALE != value) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -3,44 +3,73 @@ package com.zcorum.weather.converter;
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
+/*
+	Legacy text format of the temperatures column, kept to read rows written before BinaryTemperaturesConverter.
+ */
 @Converter
 public class CommaSeparatedListConverter implements AttributeConverter<List<Double>, String> {
 
-	private static final String DELIMITER = ",";
+	private static final char DELIMITER = ',';
 
 	@Override
 	public String convertToDatabaseColumn(List<Double> list) {
 		if (list == null) {
 			return "";
 		}
-		return list.stream()
-				.map(String::valueOf)
-				.collect(Collectors.joining(DELIMITER));
+		StringBuilder joined = new StringBuilder(list.size() * 6);
+		for (Double value : list) {
+			if (joined.length() > 0) {
+				joined.append(DELIMITER);
+			}
+			joined.append(value);
+		}
+		return joined.toString();
 	}
 
 	@Override
 	public List<Double> convertToEntityAttribute(String joined) {
-		if (joined == null) {
-			return new ArrayList<>();
+		if (joined == null || joined.isEmpty()) {
+			return TemperatureList.empty();
+		}
+		long started = System.nanoTime();
+		try {
+			return decode(joined);
+		} finally {
+			DecodeTimings.TEXT.record(System.nanoTime() - started);
 		}
-		return Arrays.stream(joined.split(DELIMITER))
-				.map(this::stringToDouble)
-				.filter(Objects::nonNull)
-				.collect(Collectors.toList());
 	}
 
-	private Double stringToDouble(String value) {
-		try {
-			return Double.valueOf(value);
-		} catch (NumberFormatException e) {
-			return null;
+	private TemperatureList decode(String joined) {
+		double[] values = new double[countTokens(joined)];
+		int size = 0;
+		int start = 0;
+		while (start <= joined.length()) {
+			int end = joined.indexOf(DELIMITER, start);
+			if (end < 0) {
+				end = joined.length();
+			}
+			try {
+				values[size] = Double.parseDouble(joined.substring(start, end));
+				size++;
+			} catch (NumberFormatException e) {
+				// unparsable readings are skipped
+			}
+			start = end + 1;
+		}
+		return TemperatureList.wrap(size == values.length ? values : Arrays.copyOf(values, size));
+	}
+
+	private int countTokens(String joined) {
+		int count = 1;
+		for (int i = 0; i < joined.length(); i++) {
+			if (joined.charAt(i) == DELIMITER) {
+				count++;
+			}
 		}
+		return count;
 	}
 
 }
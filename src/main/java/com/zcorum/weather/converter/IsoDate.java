@@ -0,0 +1,60 @@
+package com.zcorum.weather.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.zcorum.weather.exception.WrongDateFormatException;
+import com.zcorum.weather.util.Dates;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/*
+	Dates of weather records as yyyy-MM-dd strings, written and read through Dates instead of a formatter per value.
+	A date that does not parse is reported as an invalid format, the same as with the former @JsonFormat pattern.
+ */
+public final class IsoDate {
+
+	private IsoDate() {
+	}
+
+	public static class Serializer extends StdScalarSerializer<LocalDate> {
+
+		public Serializer() {
+			super(LocalDate.class);
+		}
+
+		@Override
+		public void serialize(LocalDate date, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			generator.writeString(Dates.format(date));
+		}
+	}
+
+	public static class Deserializer extends StdScalarDeserializer<LocalDate> {
+
+		public Deserializer() {
+			super(LocalDate.class);
+		}
+
+		@Override
+		public LocalDate deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+			if (parser.currentToken() != JsonToken.VALUE_STRING) {
+				return (LocalDate) context.handleUnexpectedToken(LocalDate.class, parser);
+			}
+			String text = parser.getText().trim();
+			if (text.isEmpty()) {
+				return null;
+			}
+			try {
+				return Dates.parse(text);
+			} catch (WrongDateFormatException e) {
+				return (LocalDate) context.handleWeirdStringValue(LocalDate.class, text, e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.zcorum.weather.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/*
+	Temperatures in CBOR are written as one packed array, a byte string of little-endian float64 values tagged as an
+	RFC 8746 typed array, instead of an array of separately encoded numbers. Other formats, JSON included, keep the
+	array of numbers. Both forms are read from CBOR, so clients without typed array support can send plain arrays.
+ */
+public final class PackedTemperatures {
+
+	// RFC 8746: IEEE 754 binary64, little endian, typed array
+	public static final int TAG_FLOAT64_LITTLE_ENDIAN = 86;
+
+	private PackedTemperatures() {
+	}
+
+	public static class Serializer extends StdSerializer<List<Double>> {
+
+		public Serializer() {
+			super(List.class, false);
+		}
+
+		@Override
+		public void serialize(List<Double> temperatures, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			if (!(generator instanceof CBORGenerator)) {
+				generator.writeStartArray(temperatures.size());
+				for (Double temperature : temperatures) {
+					if (temperature == null) {
+						generator.writeNull();
+					} else {
+						generator.writeNumber(temperature);
+					}
+				}
+				generator.writeEndArray();
+				return;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(temperatures.size() * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if (temperatures instanceof TemperatureList) {
+				TemperatureList values = (TemperatureList) temperatures;
+				for (int i = 0; i < values.size(); i++) {
+					buffer.putDouble(values.getDouble(i));
+				}
+			} else {
+				for (Double temperature : temperatures) {
+					buffer.putDouble(temperature == null ? Double.NaN : temperature);
+				}
+			}
+			((CBORGenerator) generator).writeTag(TAG_FLOAT64_LITTLE_ENDIAN);
+			generator.writeBinary(buffer.array());
+		}
+	}
+
+	public static class Deserializer extends StdDeserializer<List<Double>> {
+
+		public Deserializer() {
+			super(List.class);
+		}
+
+		@Override
+		public List<Double> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+			if (parser.currentToken() != JsonToken.VALUE_EMBEDDED_OBJECT) {
+				JavaType type = context.getTypeFactory().constructCollectionType(List.class, Double.class);
+				return context.readValue(parser, type);
+			}
+			byte[] bytes = parser.getBinaryValue();
+			if (bytes.length % Double.BYTES != 0) {
+				return context.reportInputMismatch(this, "Packed temperatures of %d bytes are not float64 values", bytes.length);
+			}
+			double[] values = new double[bytes.length / Double.BYTES];
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(values);
+			return TemperatureList.wrap(values);
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.zcorum.weather.converter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/*
+	Immutable List<Double> view over a primitive double[].
+	Temperatures are stored unboxed; a Double is only created when an element is read through the List interface.
+ */
+public final class TemperatureList extends AbstractList<Double> implements RandomAccess {
+
+	private static final TemperatureList EMPTY = new TemperatureList(new double[0]);
+
+	private final double[] values;
+
+	private TemperatureList(double[] values) {
+		this.values = values;
+	}
+
+	public static TemperatureList empty() {
+		return EMPTY;
+	}
+
+	/*
+		Wraps the given array without copying it, the caller must not modify the array afterwards.
+	 */
+	public static TemperatureList wrap(double[] values) {
+		return values.length == 0 ? EMPTY : new TemperatureList(values);
+	}
+
+	/*
+		Returns the same instance for a TemperatureList, otherwise copies values skipping nulls.
+	 */
+	public static TemperatureList copyOf(List<Double> list) {
+		if (list instanceof TemperatureList) {
+			return (TemperatureList) list;
+		}
+		double[] values = new double[list.size()];
+		int size = 0;
+		for (Double value : list) {
+			if (value != null) {
+				values[size++] = value;
+			}
+		}
+		return wrap(size == values.length ? values : Arrays.copyOf(values, size));
+	}
+
+	@Override
+	public Double get(int index) {
+		return values[index];
+	}
+
+	public double getDouble(int index) {
+		return values[index];
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	public double[] toDoubleArray() {
+		return values.clone();
+	}
+
+}
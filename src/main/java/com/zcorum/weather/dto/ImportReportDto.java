@@ -0,0 +1,51 @@
+package com.zcorum.weather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+	## Import report:
+	Outcome of a bulk import, for example:
+	```
+	{
+		"lines": 1000001,
+		"committedLines": 1000001,
+		"skippedLines": 0,
+		"stored": 999998,
+		"rejected": 2,
+		"elapsedMillis": 41250,
+		"rowsPerSecond": 24242,
+		"rejections": [{"line": 17, "error": "Unable to parse str 2023-3-x to date"}],
+		"error": null
+	}
+	```
+	Lines are counted from the start of the input, including a CSV header and the skipped lines of a resumed import.
+	error tells why an import stopped before the end of the input, it resumes right after committedLines.
+	Only the first rejections are listed.
+ */
+@Data
+public class ImportReportDto {
+
+	private long lines;
+	private long committedLines;
+	private long skippedLines;
+	private long stored;
+	private long rejected;
+	private long elapsedMillis;
+	private long rowsPerSecond;
+	private List<Rejection> rejections = new ArrayList<>();
+	private String error;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Rejection {
+
+		private long line;
+		private String error;
+	}
+}
@@ -0,0 +1,35 @@
+package com.zcorum.weather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+	## Ingest status:
+	State of a record accepted by `POST /weather` in write-behind mode, for example:
+	```
+	{
+		"ticket": "0b4f6a9e-5d0c-4d6f-9a53-2a4c1d1f7e11",
+		"state": "STORED",
+		"id": 42,
+		"error": null
+	}
+	```
+	id is the id of the record once it is stored, error tells why it could not be stored.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestStatusDto {
+
+	public enum State {
+		QUEUED,
+		STORED,
+		FAILED
+	}
+
+	private String ticket;
+	private State state;
+	private Integer id;
+	private String error;
+}
@@ -0,0 +1,47 @@
+package com.zcorum.weather.dto;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/*
+	Period temperature statistics are grouped by, with the format of the period in WeatherStatsDto.
+ */
+public enum StatsGranularity {
+
+	DAY("yyyy-MM-dd"),
+	MONTH("yyyy-MM"),
+	YEAR("yyyy");
+
+	private final DateTimeFormatter periodFormatter;
+
+	StatsGranularity(String periodPattern) {
+		this.periodFormatter = DateTimeFormatter.ofPattern(periodPattern);
+	}
+
+	public String formatPeriod(LocalDate periodStart) {
+		return periodFormatter.format(periodStart);
+	}
+
+	public LocalDate periodStart(LocalDate day) {
+		switch (this) {
+			case MONTH:
+				return day.withDayOfMonth(1);
+			case YEAR:
+				return day.withDayOfYear(1);
+			default:
+				return day;
+		}
+	}
+
+	public LocalDate nextPeriodStart(LocalDate periodStart) {
+		switch (this) {
+			case MONTH:
+				return periodStart.plusMonths(1);
+			case YEAR:
+				return periodStart.plusYears(1);
+			default:
+				return periodStart.plusDays(1);
+		}
+	}
+
+}
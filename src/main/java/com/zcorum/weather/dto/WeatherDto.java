@@ -1,14 +1,17 @@
 package com.zcorum.weather.dto;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.zcorum.weather.converter.BinaryTemperaturesConverter;
+import com.zcorum.weather.converter.IsoDate;
+import com.zcorum.weather.converter.PackedTemperatures;
+import com.zcorum.weather.exception.WrongRecordException;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.Optional;
-
-import static com.zcorum.weather.constants.Constants.yyyy_MM_dd;
 
 /*
 	## Data:
@@ -30,19 +33,49 @@ public class WeatherDto {
 
 	private Integer id;
 
-	@JsonFormat(shape = JsonFormat.Shape.STRING, pattern = yyyy_MM_dd)
-	private Date date;
+	// version of the stored record, only used for its ETag
+	@JsonIgnore
+	@EqualsAndHashCode.Exclude
+	private Integer version;
+
+	// yyyy-MM-dd
+	@JsonSerialize(using = IsoDate.Serializer.class)
+	@JsonDeserialize(using = IsoDate.Deserializer.class)
+	private LocalDate date;
 	private Double lat;
 	private Double lon;
 	private String city;
 	private String state;
+	// a packed float64 array in CBOR, see PackedTemperatures
+	@JsonSerialize(using = PackedTemperatures.Serializer.class)
+	@JsonDeserialize(using = PackedTemperatures.Deserializer.class)
 	private List<Double> temperatures;
 
+	/*
+		Rejects a record holding more readings than a stored record can, see BinaryTemperaturesConverter.MAX_READINGS.
+	 */
+	public void checkReadings() {
+		if (temperatures != null && temperatures.size() > BinaryTemperaturesConverter.MAX_READINGS) {
+			throw new WrongRecordException("Too many temperature readings: " + temperatures.size() + ", at most "
+					+ BinaryTemperaturesConverter.MAX_READINGS);
+		}
+	}
+
+	/*
+		Rejects an upserted record that lacks a part of the natural key: a NULL city or date is distinct from every
+		other in the unique index, so the record would be inserted again on every upsert.
+	 */
+	public void checkNaturalKey() {
+		if (city == null || date == null) {
+			throw new WrongRecordException("City and date are required for an upsert");
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "WeatherDto{" +
 				"id=" + id +
-				", date=" + Optional.ofNullable(date).map(d -> new SimpleDateFormat(yyyy_MM_dd).format(d)).orElse(null) +
+				", date=" + date +
 				", lat=" + lat +
 				", lon=" + lon +
 				", city='" + city + '\'' +
@@ -0,0 +1,19 @@
+package com.zcorum.weather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/*
+	Records fetched by id, in the order of the requested ids, and the requested ids of records that do not exist.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherMultiGetDto {
+
+	private List<WeatherDto> records;
+	private List<Integer> missingIds;
+}
@@ -0,0 +1,20 @@
+package com.zcorum.weather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/*
+	One page of search results. nextPageToken is null on the last page, otherwise it is passed back as `after`
+	to continue the search right behind the last record of this page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherPageDto {
+
+	private List<WeatherDto> records;
+	private String nextPageToken;
+}
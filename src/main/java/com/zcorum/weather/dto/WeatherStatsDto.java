@@ -0,0 +1,33 @@
+package com.zcorum.weather.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+	## Stats:
+	Temperature statistics of one city over one period, for example:
+	```
+	{
+		"city": "Nashville",
+		"period": "1985-01",
+		"min": 14.9,
+		"max": 29.9,
+		"mean": 21.3,
+		"count": 744
+	}
+	```
+	count is the number of hourly readings the statistics are computed from.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeatherStatsDto {
+
+	private String city;
+	private String period;
+	private Double min;
+	private Double max;
+	private Double mean;
+	private Long count;
+}
@@ -0,0 +1,32 @@
+package com.zcorum.weather.entity;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/*
+	The single row counting the committed changes of the weather records of a shard, bumped in the transaction of
+	every change, see WeatherChanges. The epoch is drawn when the row is created, so that the count of a recreated
+	database does not repeat an earlier tag.
+ */
+@Data
+@Entity
+@Table(name = "weather_changes")
+public class WeatherChangesEntity {
+
+	public static final int ID = 1;
+
+	@Id
+	@Column(name = "id")
+	private Integer id;
+
+	@Column(name = "epoch", length = 16, nullable = false)
+	private String epoch;
+
+	@Column(name = "changes", nullable = false)
+	private Long changes;
+
+}
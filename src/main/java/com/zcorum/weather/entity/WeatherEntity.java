@@ -1,32 +1,62 @@
 package com.zcorum.weather.entity;
 
+import com.zcorum.weather.converter.BinaryTemperaturesConverter;
 import com.zcorum.weather.converter.CommaSeparatedListConverter;
+import com.zcorum.weather.util.Geohash;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
-import javax.persistence.Temporal;
-import javax.persistence.TemporalType;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.util.Date;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 
 @Data
 @Entity
-@Table(name = "weather")
+@Table(name = "weather", indexes = {
+		@Index(name = "idx_weather_city_key_date_id", columnList = "city_key, date, id"),
+		@Index(name = "idx_weather_date_id", columnList = "date, id"),
+		@Index(name = "idx_weather_geohash_lat_lon_date", columnList = "geohash, lat, lon, date")
+})
+// the unique index of the natural key (city_key, state_key, date) is created by LegacyDataMigration, once duplicates
+// stored before it are removed, see NaturalKeyIndex
 public class WeatherEntity {
+
+	public static final String ID_SEQUENCE = "weather_id_seq";
+
+	public static final int ID_INCREMENT = 50;
+
+	// a pooled sequence (a table on MySQL) instead of IDENTITY, so that inserts can be sent in JDBC batches,
+	// one per shard when the records are sharded
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "weather_id")
+	@GenericGenerator(name = "weather_id", strategy = "com.zcorum.weather.shard.ShardedSequenceGenerator", parameters = {
+			@Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = ID_SEQUENCE),
+			@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + ID_INCREMENT)
+	})
 	@Column(name = "id", nullable = false)
 	private Integer id;
 
-	@Temporal(TemporalType.DATE)
+	// incremented when the record is corrected, so that clients can tell whether their copy is current;
+	// null for records stored before versions were kept, the same as 0
+	@Column(name = "version")
+	private Integer version = 0;
+
 	@Column(name = "date")
-	private Date date;
+	private LocalDate date;
 
 	@Column(name = "lat")
 	private Double lat;
@@ -34,14 +64,97 @@ public class WeatherEntity {
 	@Column(name = "lon")
 	private Double lon;
 
+	// geohash of lat/lon, so that nearby records are found with prefix ranges of a plain index
+	@Setter(AccessLevel.NONE)
+	@Column(name = "geohash", length = Geohash.MAX_PRECISION)
+	private String geohash;
+
 	@Column(name = "city")
 	private String city;
 
+	// lower-cased city, so that case insensitive searches can use a plain index
+	@Setter(AccessLevel.NONE)
+	@Column(name = "city_key")
+	private String cityKey;
+
 	@Column(name = "state")
 	private String state;
 
-	@Column(name = "temperatures")
-	@Convert(converter = CommaSeparatedListConverter.class)
+	// state, or an empty string without one, so that records without a state are duplicates of each other too
+	@Setter(AccessLevel.NONE)
+	@Column(name = "state_key")
+	private String stateKey;
+
+	@Column(name = "temperatures_bin", length = BinaryTemperaturesConverter.COLUMN_LENGTH)
+	@Convert(converter = BinaryTemperaturesConverter.class)
 	private List<Double> temperatures;
 
+	// rows written before the binary format was introduced, read only as a fallback for temperatures until
+	// LegacyDataMigration rewrote them in the binary column
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@Column(name = "temperatures", insertable = false, updatable = false)
+	@Convert(converter = CommaSeparatedListConverter.class)
+	private List<Double> legacyTemperatures;
+
+	// summary of temperatures, so that aggregates are computed without decoding them; count is 0 without readings
+	@Setter(AccessLevel.NONE)
+	@Column(name = "temp_min")
+	private Double temperatureMin;
+
+	@Setter(AccessLevel.NONE)
+	@Column(name = "temp_max")
+	private Double temperatureMax;
+
+	@Setter(AccessLevel.NONE)
+	@Column(name = "temp_sum")
+	private Double temperatureSum;
+
+	@Setter(AccessLevel.NONE)
+	@Column(name = "temp_count")
+	private Integer temperatureCount;
+
+	public List<Double> getTemperatures() {
+		return temperatures != null ? temperatures : legacyTemperatures;
+	}
+
+	@PrePersist
+	@PreUpdate
+	public void fillDerivedColumns() {
+		cityKey = toCityKey(city);
+		stateKey = toStateKey(state);
+		geohash = lat == null || lon == null ? null : Geohash.encode(lat, lon, Geohash.MAX_PRECISION);
+		fillTemperatureSummary();
+	}
+
+	private void fillTemperatureSummary() {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		int count = 0;
+		List<Double> values = getTemperatures();
+		if (values != null) {
+			for (Double value : values) {
+				if (value != null) {
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+					sum += value;
+					count++;
+				}
+			}
+		}
+		temperatureMin = count == 0 ? null : min;
+		temperatureMax = count == 0 ? null : max;
+		temperatureSum = count == 0 ? null : sum;
+		temperatureCount = count;
+	}
+
+	public static String toCityKey(String city) {
+		return city == null ? null : city.toLowerCase(Locale.ROOT);
+	}
+
+	public static String toStateKey(String state) {
+		return state == null ? "" : state;
+	}
+
 }
@@ -0,0 +1,67 @@
+package com.zcorum.weather.entity;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/*
+	Temperature summary of a city over a month or a year, kept up to date on every write of a weather record.
+ */
+@Data
+@Entity
+@IdClass(WeatherRollupEntity.Key.class)
+@Table(name = "weather_rollup")
+public class WeatherRollupEntity {
+
+	@Id
+	@Enumerated(EnumType.STRING)
+	@Column(name = "granularity", length = 5, nullable = false)
+	private StatsGranularity granularity;
+
+	@Id
+	@Column(name = "city_key", nullable = false)
+	private String cityKey;
+
+	@Id
+	@Column(name = "period_start", nullable = false)
+	private LocalDate periodStart;
+
+	@Column(name = "city")
+	private String city;
+
+	@Column(name = "temp_min")
+	private Double temperatureMin;
+
+	@Column(name = "temp_max")
+	private Double temperatureMax;
+
+	@Column(name = "temp_sum")
+	private Double temperatureSum;
+
+	@Column(name = "temp_count")
+	private Long temperatureCount;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Key implements Serializable {
+
+		private StatsGranularity granularity;
+
+		private String cityKey;
+
+		private LocalDate periodStart;
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.zcorum.weather.event;
+
+import com.zcorum.weather.entity.WeatherEntity;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+	Published inside the transaction that created or updated weather records.
+	Holds what is needed to find cached data the change can affect: the ids and the days written per city key, as epoch
+	days, null for records without a date.
+ */
+@Getter
+@ToString
+public class WeatherChangedEvent {
+
+	private final Set<Integer> ids = new HashSet<>();
+
+	private final Map<String, Set<Long>> daysByCityKey = new HashMap<>();
+
+	/*
+		The id may still be null for a record that is not yet persisted, nothing can be cached by the id of a new record.
+	 */
+	public void add(WeatherEntity entity) {
+		if (entity.getId() != null) {
+			ids.add(entity.getId());
+		}
+		Long day = entity.getDate() == null ? null : entity.getDate().toEpochDay();
+		daysByCityKey.computeIfAbsent(WeatherEntity.toCityKey(entity.getCity()), key -> new HashSet<>()).add(day);
+	}
+
+	public boolean isEmpty() {
+		return daysByCityKey.isEmpty();
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.zcorum.weather.exception;
+
+
+public class IngestQueueFullException extends RuntimeException {
+
+	public IngestQueueFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,21 @@
+package com.zcorum.weather.exception;
+
+import java.util.List;
+
+/*
+	A write spread over several shards that committed on some of them only. Holds the ids of the stored records in the
+	order they were given, null for the records of the shards that failed.
+ */
+public class PartialWriteException extends RuntimeException {
+
+	private final List<Integer> ids;
+
+	public PartialWriteException(String message, List<Integer> ids, Throwable cause) {
+		super(message, cause);
+		this.ids = ids;
+	}
+
+	public List<Integer> getIds() {
+		return ids;
+	}
+}
@@ -0,0 +1,9 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongExportRequestException extends RuntimeException {
+
+	public WrongExportRequestException(String message) {
+		super(message);
+	}
+}
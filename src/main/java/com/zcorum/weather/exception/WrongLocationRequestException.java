@@ -0,0 +1,9 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongLocationRequestException extends RuntimeException {
+
+	public WrongLocationRequestException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,13 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongMultiGetRequestException extends RuntimeException {
+
+	public WrongMultiGetRequestException(String message) {
+		super(message);
+	}
+
+	public WrongMultiGetRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
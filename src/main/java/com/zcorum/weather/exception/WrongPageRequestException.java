@@ -0,0 +1,13 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongPageRequestException extends RuntimeException {
+
+	public WrongPageRequestException(String message) {
+		super(message);
+	}
+
+	public WrongPageRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
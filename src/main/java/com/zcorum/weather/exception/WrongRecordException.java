@@ -0,0 +1,13 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongRecordException extends RuntimeException {
+
+	public WrongRecordException(String message) {
+		super(message);
+	}
+
+	public WrongRecordException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,9 @@
+package com.zcorum.weather.exception;
+
+
+public class WrongStatsRequestException extends RuntimeException {
+
+	public WrongStatsRequestException(String message) {
+		super(message);
+	}
+}
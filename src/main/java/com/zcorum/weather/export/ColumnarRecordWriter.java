@@ -0,0 +1,179 @@
+package com.zcorum.weather.export;
+
+import com.zcorum.weather.dto.WeatherDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+	Columnar export, written in row groups of at most rowGroupSize records so that memory does not depend on the number
+	of exported records. Numbers are little-endian and every array starts at a multiple of 8 bytes from the start of the
+	file, so a reader can map the file and view the arrays in place:
+	- file header: the magic bytes "WCOL" and int32 version 1
+	- per row group: int32 row count n, int32 temperature count m, int32 city byte count, int32 state byte count, then
+	int32[n] ids, int32[n] dates as days since 1970-01-01 (MISSING_DATE when missing), float64[n] lat, float64[n] lon
+	(NaN when missing), int32[n + 1] temperature offsets, float64[m] temperatures, int32[n + 1] city offsets, UTF-8
+	cities, int32[n + 1] state offsets and UTF-8 states, each array padded with zero bytes to a multiple of 8 bytes
+	- end of file: a row group with n = 0 and no arrays
+	The temperatures of record i are temperatures[offsets[i]] to temperatures[offsets[i + 1] - 1], and the same goes for
+	the bytes of its city and state. Missing cities and states are empty, a missing id is 0.
+ */
+class ColumnarRecordWriter implements RecordWriter {
+
+	static final String MEDIA_TYPE = "application/vnd.zcorum.weather-columnar";
+
+	static final byte[] MAGIC = {'W', 'C', 'O', 'L'};
+
+	static final int VERSION = 1;
+
+	static final int MISSING_DATE = Integer.MIN_VALUE;
+
+	static final int DEFAULT_ROW_GROUP_SIZE = 8192;
+
+	private final OutputStream out;
+
+	private final int rowGroupSize;
+
+	private final int[] ids;
+
+	private final int[] dates;
+
+	private final double[] lats;
+
+	private final double[] lons;
+
+	private final int[] temperatureOffsets;
+
+	private double[] temperatures = new double[1024];
+
+	private final int[] cityOffsets;
+
+	private final ByteArrayOutputStream cities = new ByteArrayOutputStream();
+
+	private final int[] stateOffsets;
+
+	private final ByteArrayOutputStream states = new ByteArrayOutputStream();
+
+	private int rows;
+
+	private boolean started;
+
+	ColumnarRecordWriter(OutputStream out) {
+		this(out, DEFAULT_ROW_GROUP_SIZE);
+	}
+
+	ColumnarRecordWriter(OutputStream out, int rowGroupSize) {
+		this.out = out;
+		this.rowGroupSize = rowGroupSize;
+		this.ids = new int[rowGroupSize];
+		this.dates = new int[rowGroupSize];
+		this.lats = new double[rowGroupSize];
+		this.lons = new double[rowGroupSize];
+		this.temperatureOffsets = new int[rowGroupSize + 1];
+		this.cityOffsets = new int[rowGroupSize + 1];
+		this.stateOffsets = new int[rowGroupSize + 1];
+	}
+
+	@Override
+	public void write(WeatherDto record) throws IOException {
+		ids[rows] = record.getId() == null ? 0 : record.getId();
+		dates[rows] = record.getDate() == null ? MISSING_DATE : Math.toIntExact(record.getDate().toEpochDay());
+		lats[rows] = record.getLat() == null ? Double.NaN : record.getLat();
+		lons[rows] = record.getLon() == null ? Double.NaN : record.getLon();
+		int temperatureCount = temperatureOffsets[rows];
+		List<Double> values = record.getTemperatures();
+		if (values != null) {
+			if (temperatureCount + values.size() > temperatures.length) {
+				temperatures = Arrays.copyOf(temperatures, Math.max(temperatures.length * 2, temperatureCount + values.size()));
+			}
+			for (Double value : values) {
+				temperatures[temperatureCount++] = value == null ? Double.NaN : value;
+			}
+		}
+		temperatureOffsets[rows + 1] = temperatureCount;
+		cityOffsets[rows + 1] = append(cities, record.getCity());
+		stateOffsets[rows + 1] = append(states, record.getState());
+		if (++rows == rowGroupSize) {
+			writeRowGroup();
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (rows > 0) {
+			writeRowGroup();
+		}
+		writeRowGroup();
+		out.flush();
+	}
+
+	private static int append(ByteArrayOutputStream bytes, String value) {
+		if (value != null) {
+			byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+			bytes.write(encoded, 0, encoded.length);
+		}
+		return bytes.size();
+	}
+
+	private void writeRowGroup() throws IOException {
+		int temperatureCount = temperatureOffsets[rows];
+		int size = 16;
+		if (rows > 0) {
+			size += padded(rows * Integer.BYTES) * 2
+					+ rows * Double.BYTES * 2
+					+ padded((rows + 1) * Integer.BYTES) * 3
+					+ temperatureCount * Double.BYTES
+					+ padded(cities.size())
+					+ padded(states.size());
+		}
+		if (!started) {
+			size += 8;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		if (!started) {
+			buffer.put(MAGIC).putInt(VERSION);
+			started = true;
+		}
+		buffer.putInt(rows).putInt(temperatureCount).putInt(cities.size()).putInt(states.size());
+		if (rows > 0) {
+			buffer.asIntBuffer().put(ids, 0, rows);
+			skip(buffer, padded(rows * Integer.BYTES));
+			buffer.asIntBuffer().put(dates, 0, rows);
+			skip(buffer, padded(rows * Integer.BYTES));
+			buffer.asDoubleBuffer().put(lats, 0, rows);
+			skip(buffer, rows * Double.BYTES);
+			buffer.asDoubleBuffer().put(lons, 0, rows);
+			skip(buffer, rows * Double.BYTES);
+			buffer.asIntBuffer().put(temperatureOffsets, 0, rows + 1);
+			skip(buffer, padded((rows + 1) * Integer.BYTES));
+			buffer.asDoubleBuffer().put(temperatures, 0, temperatureCount);
+			skip(buffer, temperatureCount * Double.BYTES);
+			buffer.asIntBuffer().put(cityOffsets, 0, rows + 1);
+			skip(buffer, padded((rows + 1) * Integer.BYTES));
+			buffer.put(cities.toByteArray());
+			skip(buffer, padded(cities.size()) - cities.size());
+			buffer.asIntBuffer().put(stateOffsets, 0, rows + 1);
+			skip(buffer, padded((rows + 1) * Integer.BYTES));
+			buffer.put(states.toByteArray());
+		}
+		out.write(buffer.array());
+		rows = 0;
+		cities.reset();
+		states.reset();
+	}
+
+	private static void skip(ByteBuffer buffer, int bytes) {
+		buffer.position(buffer.position() + bytes);
+	}
+
+	private static int padded(int bytes) {
+		return (bytes + 7) & ~7;
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.zcorum.weather.export;
+
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.util.Dates;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+	CSV with a header line, the format POST /weather/import reads: temperatures are comma separated in one quoted field,
+	fields holding a comma or a quote are quoted and missing values are empty.
+ */
+class CsvRecordWriter implements RecordWriter {
+
+	static final String HEADER = "id,date,lat,lon,city,state,temperatures";
+
+	private final Writer writer;
+
+	private boolean started;
+
+	CsvRecordWriter(OutputStream out) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+	}
+
+	@Override
+	public void write(WeatherDto record) throws IOException {
+		writeHeader();
+		if (record.getId() != null) {
+			writer.write(record.getId().toString());
+		}
+		writer.write(',');
+		if (record.getDate() != null) {
+			writer.write(Dates.format(record.getDate()));
+		}
+		writer.write(',');
+		writeNumber(record.getLat());
+		writer.write(',');
+		writeNumber(record.getLon());
+		writer.write(',');
+		writeText(record.getCity());
+		writer.write(',');
+		writeText(record.getState());
+		writer.write(',');
+		List<Double> temperatures = record.getTemperatures();
+		if (temperatures != null && !temperatures.isEmpty()) {
+			writer.write('"');
+			for (int i = 0; i < temperatures.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeNumber(temperatures.get(i));
+			}
+			writer.write('"');
+		}
+		writer.write('\n');
+	}
+
+	@Override
+	public void finish() throws IOException {
+		writeHeader();
+		writer.flush();
+	}
+
+	private void writeHeader() throws IOException {
+		if (!started) {
+			writer.write(HEADER);
+			writer.write('\n');
+			started = true;
+		}
+	}
+
+	private void writeNumber(Double value) throws IOException {
+		if (value != null) {
+			writer.write(value.toString());
+		}
+	}
+
+	private void writeText(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.zcorum.weather.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zcorum.weather.exception.WrongExportRequestException;
+
+import java.io.OutputStream;
+import java.util.Locale;
+
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_CSV;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_NDJSON;
+
+public enum ExportFormat {
+
+	NDJSON(MEDIA_TYPE_NDJSON, "ndjson"),
+	CSV(MEDIA_TYPE_CSV, "csv"),
+	COLUMNAR(ColumnarRecordWriter.MEDIA_TYPE, "wcol");
+
+	private final String mediaType;
+
+	private final String extension;
+
+	ExportFormat(String mediaType, String extension) {
+		this.mediaType = mediaType;
+		this.extension = extension;
+	}
+
+	public static ExportFormat of(String format) {
+		try {
+			return valueOf(format.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new WrongExportRequestException("Unknown export format " + format);
+		}
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public RecordWriter open(OutputStream out, ObjectMapper objectMapper) {
+		switch (this) {
+			case CSV:
+				return new CsvRecordWriter(out);
+			case COLUMNAR:
+				return new ColumnarRecordWriter(out);
+			default:
+				return new NdjsonRecordWriter(out, objectMapper);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.zcorum.weather.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zcorum.weather.dto.WeatherDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/*
+	One weather data JSON object per line, the format POST /weather/batch and POST /weather/import read.
+ */
+class NdjsonRecordWriter implements RecordWriter {
+
+	private final JsonGenerator generator;
+
+	private final ObjectWriter recordWriter;
+
+	NdjsonRecordWriter(OutputStream out, ObjectMapper objectMapper) {
+		try {
+			this.generator = objectMapper.getFactory().createGenerator(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open export", e);
+		}
+		// the generator buffers the records, flushing each one would turn it into a separate network write
+		this.recordWriter = objectMapper.writerFor(WeatherDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	}
+
+	@Override
+	public void write(WeatherDto record) throws IOException {
+		recordWriter.writeValue(generator, record);
+		generator.writeRaw('\n');
+	}
+
+	@Override
+	public void finish() throws IOException {
+		generator.flush();
+	}
+
+}
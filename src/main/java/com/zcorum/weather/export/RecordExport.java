@@ -0,0 +1,65 @@
+package com.zcorum.weather.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zcorum.weather.dto.WeatherDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/*
+	Passes exported records to the writer of the format. The output is opened with the first record, or when an export
+	without records finishes, so that an error raised before any record can still be reported as an error response.
+ */
+public class RecordExport implements Consumer<WeatherDto> {
+
+	@FunctionalInterface
+	public interface Output {
+
+		OutputStream open() throws IOException;
+	}
+
+	private final ExportFormat format;
+
+	private final ObjectMapper objectMapper;
+
+	private final Output output;
+
+	private OutputStream out;
+
+	private RecordWriter writer;
+
+	public RecordExport(ExportFormat format, ObjectMapper objectMapper, Output output) {
+		this.format = format;
+		this.objectMapper = objectMapper;
+		this.output = output;
+	}
+
+	@Override
+	public void accept(WeatherDto record) {
+		try {
+			writer().write(record);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write record " + record.getId(), e);
+		}
+	}
+
+	/*
+		Writes the end of the export and closes the output. Not called when the export fails, the output is then left to
+		the error handling.
+	 */
+	public void finish() throws IOException {
+		writer().finish();
+		out.close();
+	}
+
+	private RecordWriter writer() throws IOException {
+		if (writer == null) {
+			out = output.open();
+			writer = format.open(out, objectMapper);
+		}
+		return writer;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.zcorum.weather.export;
+
+import com.zcorum.weather.dto.WeatherDto;
+
+import java.io.IOException;
+
+/*
+	Writes exported records one by one to an output stream, holding at most a bounded number of them.
+ */
+public interface RecordWriter {
+
+	void write(WeatherDto record) throws IOException;
+
+	/*
+		Writes what is still buffered and the end of the export, the output stream is left open.
+	 */
+	void finish() throws IOException;
+}
@@ -0,0 +1,298 @@
+package com.zcorum.weather.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.zcorum.weather.dto.ImportReportDto;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.exception.WrongDateFormatException;
+import com.zcorum.weather.exception.WrongRecordException;
+import com.zcorum.weather.service.WeatherService;
+import com.zcorum.weather.util.Dates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+	Streams NDJSON or CSV records into the database. Lines are read in chunks of chunk-size, parsed by parallelism
+	threads and stored in input order, one WeatherService.createAll transaction per chunk, so memory holds at most
+	2 x parallelism chunks whatever the size of the input. Lines that do not parse, have a date not in the yyyy-MM-dd
+	format or lack a date or a city are rejected and reported, the others are stored.
+	An import stops at the first chunk that fails to store. It resumes after the last committed chunk: a file import
+	from its checkpoint, a stream import by skipping the committed lines. The first chunk after a resume is upserted,
+	as it may have been committed right before the failure without being recorded.
+ */
+@Slf4j
+@Component
+public class BulkImport {
+
+	private static final int MAX_REPORTED_REJECTIONS = 100;
+
+	private static final String COLUMN_DATE = "date";
+	private static final String COLUMN_LAT = "lat";
+	private static final String COLUMN_LON = "lon";
+	private static final String COLUMN_CITY = "city";
+	private static final String COLUMN_STATE = "state";
+	private static final String COLUMN_TEMPERATURES = "temperatures";
+
+	private final WeatherService weatherService;
+
+	private final ObjectReader recordReader;
+
+	private final int chunkSize;
+
+	private final int parallelism;
+
+	public BulkImport(WeatherService weatherService, ObjectMapper objectMapper,
+	                  @Value("${weather.import.chunk-size:1000}") int chunkSize,
+	                  @Value("${weather.import.parallelism:0}") int parallelism) {
+		this.weatherService = weatherService;
+		this.recordReader = objectMapper.readerFor(WeatherDto.class);
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+
+	/*
+		Imports the file, resuming from its checkpoint when there is one. The checkpoint is deleted once the whole file is stored.
+	 */
+	public ImportReportDto importFile(Path file, ImportFormat format) throws IOException {
+		ImportCheckpoint checkpoint = ImportCheckpoint.of(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			InputStream in = Channels.newInputStream(channel);
+			Map<String, Integer> columns = null;
+			long line = 0;
+			long offset = 0;
+			if (format == ImportFormat.CSV) {
+				LineReader header = new LineReader(in, 0);
+				columns = readHeader(header);
+				line = 1;
+				offset = header.position();
+			}
+			boolean resumed = checkpoint.getLine() > 0;
+			if (resumed) {
+				log.info("Resuming import of {} after line {}", file, checkpoint.getLine());
+				line = checkpoint.getLine();
+				offset = checkpoint.getOffset();
+			}
+			// the reader of the header may have buffered past it
+			channel.position(offset);
+			ImportReportDto report = run(new LineReader(in, offset), columns, line, resumed, checkpoint);
+			if (report.getError() == null) {
+				checkpoint.delete();
+			}
+			return report;
+		}
+	}
+
+	/*
+		Imports the stream after its first skipLines lines, which are only read, a CSV header is read in any case.
+	 */
+	public ImportReportDto importStream(InputStream in, ImportFormat format, long skipLines) throws IOException {
+		LineReader reader = new LineReader(in, 0);
+		Map<String, Integer> columns = format == ImportFormat.CSV ? readHeader(reader) : null;
+		long line = columns == null ? 0 : 1;
+		while (line < skipLines && reader.readLine() != null) {
+			line++;
+		}
+		return run(reader, columns, line, skipLines > 0, null);
+	}
+
+	private ImportReportDto run(LineReader reader, Map<String, Integer> columns, long skippedLines, boolean resumed,
+	                            ImportCheckpoint checkpoint) {
+		long started = System.nanoTime();
+		ImportReportDto report = new ImportReportDto();
+		report.setSkippedLines(skippedLines);
+		report.setCommittedLines(skippedLines);
+		long line = skippedLines;
+		boolean upsert = resumed;
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService parsers = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "weather-import-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+		try {
+			while (true) {
+				long firstLine = line + 1;
+				List<String> lines = new ArrayList<>(chunkSize);
+				String next;
+				while (lines.size() < chunkSize && (next = reader.readLine()) != null) {
+					lines.add(next);
+				}
+				if (lines.isEmpty()) {
+					break;
+				}
+				line += lines.size();
+				long endOffset = reader.position();
+				pending.add(parsers.submit(() -> parse(lines, firstLine, endOffset, columns)));
+				// parsing runs ahead of storing by a bounded number of chunks
+				if (pending.size() >= 2 * parallelism) {
+					store(pending.poll(), upsert, report, checkpoint);
+					upsert = false;
+				}
+			}
+			while (!pending.isEmpty()) {
+				store(pending.poll(), upsert, report, checkpoint);
+				upsert = false;
+			}
+		} catch (IOException | RuntimeException e) {
+			// the lines after committedLines are not stored, the import is resumed from there
+			log.warn("Import stopped after line {}", report.getCommittedLines(), e);
+			report.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+		} finally {
+			parsers.shutdownNow();
+		}
+		report.setLines(line);
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		report.setElapsedMillis(elapsedMillis);
+		report.setRowsPerSecond(report.getStored() * 1000 / elapsedMillis);
+		log.info("Imported {} records in {} ms ({} rows/s), rejected {} lines", report.getStored(), elapsedMillis,
+				report.getRowsPerSecond(), report.getRejected());
+		return report;
+	}
+
+	private void store(Future<ParsedChunk> pending, boolean upsert, ImportReportDto report, ImportCheckpoint checkpoint) {
+		ParsedChunk chunk;
+		try {
+			chunk = pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Import interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to parse lines", e.getCause());
+		}
+		if (!chunk.records.isEmpty()) {
+			int stored = upsert ? weatherService.upsertAll(chunk.records).size() : weatherService.createAll(chunk.records).size();
+			report.setStored(report.getStored() + stored);
+		}
+		report.setRejected(report.getRejected() + chunk.rejections.size());
+		for (ImportReportDto.Rejection rejection : chunk.rejections) {
+			if (report.getRejections().size() == MAX_REPORTED_REJECTIONS) {
+				break;
+			}
+			report.getRejections().add(rejection);
+		}
+		report.setCommittedLines(chunk.lastLine);
+		if (checkpoint != null) {
+			checkpoint.save(chunk.lastLine, chunk.endOffset);
+		}
+	}
+
+	private ParsedChunk parse(List<String> lines, long firstLine, long endOffset, Map<String, Integer> columns) {
+		ParsedChunk chunk = new ParsedChunk(firstLine + lines.size() - 1, endOffset);
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				WeatherDto record = columns == null ? parseJson(line) : parseCsv(line, columns);
+				if (record.getDate() == null || StringUtils.isEmpty(record.getCity())) {
+					throw new IllegalArgumentException("Date and city are required");
+				}
+				record.checkReadings();
+				chunk.records.add(record);
+			} catch (JsonProcessingException e) {
+				chunk.rejections.add(new ImportReportDto.Rejection(firstLine + i, e.getOriginalMessage()));
+			} catch (WrongDateFormatException | WrongRecordException | IllegalArgumentException e) {
+				chunk.rejections.add(new ImportReportDto.Rejection(firstLine + i, e.getMessage()));
+			}
+		}
+		return chunk;
+	}
+
+	private WeatherDto parseJson(String line) throws JsonProcessingException {
+		return recordReader.readValue(line);
+	}
+
+	private WeatherDto parseCsv(String line, Map<String, Integer> columns) {
+		List<String> fields = CsvFields.split(line);
+		WeatherDto record = new WeatherDto();
+		String date = field(fields, columns, COLUMN_DATE);
+		record.setDate(date == null ? null : Dates.parse(date));
+		record.setLat(toDouble(field(fields, columns, COLUMN_LAT)));
+		record.setLon(toDouble(field(fields, columns, COLUMN_LON)));
+		record.setCity(field(fields, columns, COLUMN_CITY));
+		record.setState(field(fields, columns, COLUMN_STATE));
+		String temperatures = field(fields, columns, COLUMN_TEMPERATURES);
+		if (temperatures != null) {
+			String[] values = temperatures.split(",");
+			List<Double> parsed = new ArrayList<>(values.length);
+			for (String value : values) {
+				parsed.add(Double.valueOf(value.trim()));
+			}
+			record.setTemperatures(parsed);
+		}
+		return record;
+	}
+
+	private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+		Integer index = columns.get(column);
+		if (index == null || index >= fields.size()) {
+			return null;
+		}
+		String value = fields.get(index).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	private static Double toDouble(String value) {
+		return value == null ? null : Double.valueOf(value);
+	}
+
+	private static Map<String, Integer> readHeader(LineReader reader) throws IOException {
+		String header = reader.readLine();
+		if (header == null) {
+			return Collections.emptyMap();
+		}
+		// a byte order mark some spreadsheets write in front of the first column
+		if (header.startsWith("\uFEFF")) {
+			header = header.substring(1);
+		}
+		List<String> names = CsvFields.split(header);
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < names.size(); i++) {
+			columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+		}
+		return columns;
+	}
+
+	private static class ParsedChunk {
+
+		private final long lastLine;
+
+		private final long endOffset;
+
+		private final List<WeatherDto> records = new ArrayList<>();
+
+		private final List<ImportReportDto.Rejection> rejections = new ArrayList<>();
+
+		private ParsedChunk(long lastLine, long endOffset) {
+			this.lastLine = lastLine;
+			this.endOffset = endOffset;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.zcorum.weather.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/*
+	Last committed line of a file import and the byte offset right after it, kept next to the file as <file>.checkpoint.
+	Replaced atomically, so a crash leaves either the previous or the new checkpoint.
+ */
+class ImportCheckpoint {
+
+	private static final String LINE = "line";
+
+	private static final String OFFSET = "offset";
+
+	private final Path path;
+
+	private long line;
+
+	private long offset;
+
+	private ImportCheckpoint(Path path) {
+		this.path = path;
+	}
+
+	static ImportCheckpoint of(Path file) throws IOException {
+		ImportCheckpoint checkpoint = new ImportCheckpoint(file.resolveSibling(file.getFileName() + ".checkpoint"));
+		if (Files.exists(checkpoint.path)) {
+			Properties properties = new Properties();
+			try (InputStream in = Files.newInputStream(checkpoint.path)) {
+				properties.load(in);
+			}
+			checkpoint.line = Long.parseLong(properties.getProperty(LINE));
+			checkpoint.offset = Long.parseLong(properties.getProperty(OFFSET));
+		}
+		return checkpoint;
+	}
+
+	long getLine() {
+		return line;
+	}
+
+	long getOffset() {
+		return offset;
+	}
+
+	void save(long line, long offset) {
+		Properties properties = new Properties();
+		properties.setProperty(LINE, Long.toString(line));
+		properties.setProperty(OFFSET, Long.toString(offset));
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				properties.store(out, null);
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to save import checkpoint " + path, e);
+		}
+		this.line = line;
+		this.offset = offset;
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.zcorum.weather.ingest;
+
+import java.util.Locale;
+
+/*
+	Line based formats of a bulk import:
+	- NDJSON, one weather data JSON object per line
+	- CSV with a header line naming the columns date, lat, lon, city, state and temperatures, in any order; temperatures
+	are comma separated, so the field is quoted, e.g. `2023-03-20,41.39,-74.75,Laredo,Texas,"17.2,18.4,17.3"`
+ */
+public enum ImportFormat {
+
+	NDJSON,
+	CSV;
+
+	public static ImportFormat ofFileName(String fileName) {
+		return fileName.toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : NDJSON;
+	}
+}
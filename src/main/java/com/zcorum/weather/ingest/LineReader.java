@@ -0,0 +1,70 @@
+package com.zcorum.weather.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+	Reads UTF-8 lines and keeps the byte offset of the next one, so that an import resumes by seeking to a line.
+ */
+class LineReader {
+
+	private final InputStream in;
+
+	private final byte[] buffer = new byte[64 * 1024];
+
+	private int bufferStart;
+
+	private int bufferEnd;
+
+	private byte[] line = new byte[256];
+
+	private long position;
+
+	LineReader(InputStream in, long position) {
+		this.in = in;
+		this.position = position;
+	}
+
+	/*
+		Returns the next line without its line terminator, or null at the end of the input.
+	 */
+	String readLine() throws IOException {
+		int length = 0;
+		while (true) {
+			if (bufferStart == bufferEnd) {
+				int read = in.read(buffer);
+				if (read < 0) {
+					return length == 0 ? null : decode(length);
+				}
+				bufferStart = 0;
+				bufferEnd = read;
+			}
+			byte next = buffer[bufferStart++];
+			position++;
+			if (next == '\n') {
+				return decode(length);
+			}
+			if (length == line.length) {
+				line = Arrays.copyOf(line, length * 2);
+			}
+			line[length++] = next;
+		}
+	}
+
+	/*
+		Byte offset of the next line from the start of the input.
+	 */
+	long position() {
+		return position;
+	}
+
+	private String decode(int length) {
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+		return new String(line, 0, length, StandardCharsets.UTF_8);
+	}
+
+}
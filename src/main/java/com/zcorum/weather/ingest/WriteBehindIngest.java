@@ -0,0 +1,225 @@
+package com.zcorum.weather.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zcorum.weather.dto.IngestStatusDto;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.exception.IngestQueueFullException;
+import com.zcorum.weather.exception.PartialWriteException;
+import com.zcorum.weather.service.WeatherService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.zcorum.weather.dto.IngestStatusDto.State.FAILED;
+import static com.zcorum.weather.dto.IngestStatusDto.State.QUEUED;
+import static com.zcorum.weather.dto.IngestStatusDto.State.STORED;
+import static java.util.stream.Collectors.toList;
+
+/*
+	Write-behind mode of POST /weather, enabled by weather.ingest.write-behind.enabled. Records wait in a bounded queue
+	and a single writer stores them in batches of up to batch-size records, one WeatherService.createAll transaction
+	per batch, waiting at most linger for a batch to fill up. When the queue is full, records are rejected instead of
+	waiting. A batch that fails is retried record by record, so that one bad record does not fail the others; with
+	shards, only the records of the shards that failed are retried.
+	On shutdown, after the web server stopped taking requests, the queued records are stored before the data source
+	closes, for at most shutdown-timeout.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "weather.ingest.write-behind.enabled", havingValue = "true")
+public class WriteBehindIngest implements SmartLifecycle {
+
+	private final WeatherService weatherService;
+
+	private final BlockingQueue<QueuedRecord> queue;
+
+	private final Cache<String, IngestStatusDto> statuses;
+
+	private final int batchSize;
+
+	private final long lingerNanos;
+
+	private final Duration shutdownTimeout;
+
+	private final Counter rejected;
+
+	private volatile boolean running;
+
+	private Thread writer;
+
+	public WriteBehindIngest(WeatherService weatherService, MeterRegistry meterRegistry,
+	                         @Value("${weather.ingest.write-behind.capacity:10000}") int capacity,
+	                         @Value("${weather.ingest.write-behind.batch-size:500}") int batchSize,
+	                         @Value("${weather.ingest.write-behind.linger:50ms}") Duration linger,
+	                         @Value("${weather.ingest.write-behind.status-retention:10m}") Duration statusRetention,
+	                         @Value("${weather.ingest.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout) {
+		this.weatherService = weatherService;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.statuses = Caffeine.newBuilder().expireAfterWrite(statusRetention).build();
+		this.batchSize = batchSize;
+		this.lingerNanos = linger.toNanos();
+		this.shutdownTimeout = shutdownTimeout;
+		this.rejected = meterRegistry.counter("weather.ingest.rejected");
+		Gauge.builder("weather.ingest.queued", queue, Collection::size).register(meterRegistry);
+	}
+
+	/*
+		Queues the record and returns its status, the ticket of which is used to look the status up later.
+	 */
+	public IngestStatusDto submit(WeatherDto record) {
+		if (!running) {
+			rejected.increment();
+			throw new IngestQueueFullException("Ingest is not accepting records");
+		}
+		// rejected right away, the caller would only find out from the status otherwise
+		record.checkReadings();
+		IngestStatusDto status = new IngestStatusDto(UUID.randomUUID().toString(), QUEUED, null, null);
+		// known before the writer can take the record, so that it always finds the status to update
+		statuses.put(status.getTicket(), status);
+		if (!queue.offer(new QueuedRecord(status.getTicket(), record))) {
+			statuses.invalidate(status.getTicket());
+			rejected.increment();
+			throw new IngestQueueFullException("Ingest queue is full, retry later");
+		}
+		return status;
+	}
+
+	public Optional<IngestStatusDto> status(String ticket) {
+		return Optional.ofNullable(statuses.getIfPresent(ticket));
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		writer = new Thread(this::drain, "write-behind-ingest");
+		writer.start();
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		try {
+			writer.join(shutdownTimeout.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer.isAlive()) {
+			writer.interrupt();
+			log.warn("Write-behind ingest did not drain within {}, {} queued records are dropped", shutdownTimeout, queue.size());
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	// stopped after the web server, which has the highest phase
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	private void drain() {
+		List<QueuedRecord> batch = new ArrayList<>(batchSize);
+		try {
+			while (running || !queue.isEmpty()) {
+				QueuedRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + lingerNanos;
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+						continue;
+					}
+					long wait = deadline - System.nanoTime();
+					// no lingering while shutting down
+					QueuedRecord next = wait > 0 && running ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				write(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			batch.forEach(record -> failed(record, e));
+			queue.forEach(record -> failed(record, e));
+		}
+	}
+
+	private void write(List<QueuedRecord> batch) {
+		List<Integer> ids;
+		try {
+			ids = weatherService.createAll(batch.stream().map(QueuedRecord::getRecord).collect(toList()));
+		} catch (PartialWriteException e) {
+			// the records of the shards that committed must not be stored again
+			ids = e.getIds();
+			log.warn("Write-behind batch of {} records failed on some shards, storing their records one by one", batch.size(), e);
+		} catch (RuntimeException e) {
+			ids = null;
+			log.warn("Write-behind batch of {} records failed, storing them one by one", batch.size(), e);
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			Integer id = ids == null ? null : ids.get(i);
+			if (id != null) {
+				stored(batch.get(i), id);
+				continue;
+			}
+			try {
+				stored(batch.get(i), weatherService.create(batch.get(i).getRecord()).getId());
+			} catch (RuntimeException recordFailure) {
+				failed(batch.get(i), recordFailure);
+			}
+		}
+	}
+
+	private void stored(QueuedRecord record, Integer id) {
+		statuses.put(record.getTicket(), new IngestStatusDto(record.getTicket(), STORED, id, null));
+	}
+
+	private void failed(QueuedRecord record, Exception e) {
+		statuses.put(record.getTicket(), new IngestStatusDto(record.getTicket(), FAILED, null, String.valueOf(e.getMessage())));
+	}
+
+	private static final class QueuedRecord {
+
+		private final String ticket;
+
+		private final WeatherDto record;
+
+		QueuedRecord(String ticket, WeatherDto record) {
+			this.ticket = ticket;
+			this.record = record;
+		}
+
+		String getTicket() {
+			return ticket;
+		}
+
+		WeatherDto getRecord() {
+			return record;
+		}
+
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.repository.WeatherRepository;
+import com.zcorum.weather.rollup.WeatherRollups;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+	Removes the duplicate readings stored before the natural key was unique, only when the application is started with
+	--remove-duplicate-readings, see LegacyDataMigration. The record with the highest id of a reading is kept, it is the
+	last one stored, like the reading an upsert keeps. Every removed record is logged in full, so that it can be restored.
+ */
+@Slf4j
+@Component
+public class DuplicateReadings {
+
+	public static final String OPTION = "remove-duplicate-readings";
+
+	private static final int CHUNK = 500;
+
+	private final WeatherRepository weatherRepository;
+
+	private final WeatherRollups weatherRollups;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	public DuplicateReadings(WeatherRepository weatherRepository, WeatherRollups weatherRollups, TransactionTemplate transactionTemplate,
+	                         ApplicationEventPublisher eventPublisher) {
+		this.weatherRepository = weatherRepository;
+		this.weatherRollups = weatherRollups;
+		this.transactionTemplate = transactionTemplate;
+		this.eventPublisher = eventPublisher;
+	}
+
+	/*
+		Removes the duplicates of the current shard in chunks, the rollups of their months and years are recomputed with
+		the remaining records. Returns the number of removed records.
+	 */
+	public int remove() {
+		int removed = 0;
+		int chunkSize;
+		do {
+			chunkSize = transactionTemplate.execute(status -> {
+				List<WeatherEntity> duplicates = weatherRepository.findDuplicates(PageRequest.of(0, CHUNK));
+				for (WeatherEntity duplicate : duplicates) {
+					log.warn("Removing {}, a reading stored again later", duplicate);
+					weatherRepository.delete(duplicate);
+				}
+				// once per city and month, a month is recomputed together with its year
+				Set<String> recomputed = new HashSet<>();
+				for (WeatherEntity duplicate : duplicates) {
+					if (recomputed.add(duplicate.getCityKey() + " " + duplicate.getDate().withDayOfMonth(1))) {
+						weatherRollups.recompute(duplicate.getCityKey(), duplicate.getDate());
+					}
+				}
+				return duplicates.size();
+			});
+			removed += chunkSize;
+		} while (chunkSize > 0);
+		return removed;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.dto.ImportReportDto;
+import com.zcorum.weather.ingest.BulkImport;
+import com.zcorum.weather.ingest.ImportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/*
+	Imports NDJSON or CSV files when the application is started with --import=<file>, the option may be repeated.
+	The format follows the file extension unless --import-format=ndjson|csv is given. Starting again with the same
+	option resumes an import that stopped from its checkpoint. Runs after LegacyDataMigration.
+ */
+@Slf4j
+@Component
+public class FileImport implements ApplicationRunner {
+
+	public static final String OPTION = "import";
+
+	public static final String FORMAT_OPTION = "import-format";
+
+	private final BulkImport bulkImport;
+
+	public FileImport(BulkImport bulkImport) {
+		this.bulkImport = bulkImport;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) throws IOException {
+		List<String> files = args.getOptionValues(OPTION);
+		if (files == null) {
+			return;
+		}
+		List<String> formats = args.getOptionValues(FORMAT_OPTION);
+		for (String name : files) {
+			Path file = Paths.get(name);
+			ImportFormat format = formats == null || formats.isEmpty()
+					? ImportFormat.ofFileName(name)
+					: ImportFormat.valueOf(formats.get(0).toUpperCase(Locale.ROOT));
+			ImportReportDto report = bulkImport.importFile(file, format);
+			if (report.getError() != null) {
+				log.error("Import of {} stopped after line {}: {}", file, report.getCommittedLines(), report.getError());
+			} else {
+				log.info("Imported {}: {} records stored, {} lines rejected, {} rows/s", file, report.getStored(),
+						report.getRejected(), report.getRowsPerSecond());
+			}
+			report.getRejections().forEach(rejection -> log.warn("Rejected line {} of {}: {}", rejection.getLine(), file, rejection.getError()));
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.shard.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import static com.zcorum.weather.entity.WeatherEntity.ID_INCREMENT;
+import static com.zcorum.weather.entity.WeatherEntity.ID_SEQUENCE;
+
+/*
+	Moves the id sequence of every shard past the ids stored on it, before the application takes requests, so that new
+	records never get the id of a record stored before the sequence was used, e.g. by an earlier version of the
+	application with auto-increment ids or by a load with explicit ids. A sequence is only ever moved forward.
+	Runs after ShardLayoutCheck, the ids are only decoded for the layout they were stored with.
+ */
+@Slf4j
+@Component
+@DependsOn("shardLayoutCheck")
+public class IdSequenceSeeding implements InitializingBean {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Dialect dialect;
+
+	private final Shards shards;
+
+	public IdSequenceSeeding(DataSource dataSource, EntityManagerFactory entityManagerFactory, Shards shards) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+		this.shards = shards;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for (int shard : shards.all()) {
+			shards.on(shard, () -> seed(shard));
+		}
+	}
+
+	/*
+		The pooled optimizer hands out the ID_INCREMENT values up to the value it took from the sequence, so the next value
+		taken must be at least ID_INCREMENT past the last stored one.
+	 */
+	void seed(int shard) {
+		Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM weather", Long.class);
+		if (maxId == null) {
+			return;
+		}
+		// ids are value * shard count + shard, see ShardedSequenceGenerator
+		long next = Math.floorDiv(maxId - shard, shards.getCount()) + ID_INCREMENT + 1;
+		boolean moved;
+		if (dialect.supportsSequences()) {
+			// takes a value, the ids of one increment are skipped
+			Long current = jdbcTemplate.queryForObject(dialect.getSequenceNextValString(ID_SEQUENCE), Long.class);
+			moved = current != null && current < next;
+			if (moved) {
+				jdbcTemplate.execute("ALTER SEQUENCE " + ID_SEQUENCE + " RESTART WITH " + next);
+			}
+		} else {
+			// the table hibernate uses in place of a sequence
+			moved = jdbcTemplate.update("UPDATE " + ID_SEQUENCE + " SET next_val = ? WHERE next_val < ?", next, next) > 0;
+		}
+		if (moved) {
+			log.info("Moved the id sequence of shard {} to {}, past the stored id {}", shard, next, maxId);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.repository.WeatherRepository;
+import com.zcorum.weather.rollup.RollupChanges;
+import com.zcorum.weather.rollup.WeatherRollups;
+import com.zcorum.weather.shard.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+	Fills columns derived on write for records stored by earlier versions of the application and rewrites their comma
+	separated temperatures in the binary column. Then creates the unique index of the natural key, see NaturalKeyIndex,
+	which fails while duplicate readings are stored; they are only removed when the application is started with
+	--remove-duplicate-readings, see DuplicateReadings. Runs on every start and does nothing once all records are migrated.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LegacyDataMigration implements ApplicationRunner {
+
+	private final WeatherRepository weatherRepository;
+
+	private final WeatherRollups weatherRollups;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final Shards shards;
+
+	private final NaturalKeyIndex naturalKeyIndex;
+
+	private final DuplicateReadings duplicateReadings;
+
+	public LegacyDataMigration(WeatherRepository weatherRepository, WeatherRollups weatherRollups, TransactionTemplate transactionTemplate,
+	                           Shards shards, NaturalKeyIndex naturalKeyIndex, DuplicateReadings duplicateReadings) {
+		this.weatherRepository = weatherRepository;
+		this.weatherRollups = weatherRollups;
+		this.transactionTemplate = transactionTemplate;
+		this.shards = shards;
+		this.naturalKeyIndex = naturalKeyIndex;
+		this.duplicateReadings = duplicateReadings;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		boolean removeDuplicates = args != null && args.containsOption(DuplicateReadings.OPTION);
+		for (int shard : shards.all()) {
+			shards.on(shard, () -> migrate(removeDuplicates));
+		}
+	}
+
+	private void migrate(boolean removeDuplicates) {
+		int summaries = migrate(weatherRepository::findTop500ByTemperatureCountIsNull, WeatherEntity::fillDerivedColumns, true);
+		if (summaries > 0) {
+			log.info("Filled temperature summary of {} records", summaries);
+		}
+		int geohashes = migrate(weatherRepository::findTop500ByGeohashIsNullAndLatIsNotNullAndLonIsNotNull, WeatherEntity::fillDerivedColumns, false);
+		if (geohashes > 0) {
+			log.info("Filled geohash of {} records", geohashes);
+		}
+		// in java rather than with the lower function of the database, so that the keys match those of new records
+		int cityKeys = migrate(weatherRepository::findTop500ByCityKeyIsNullAndCityIsNotNull, WeatherEntity::fillDerivedColumns, false);
+		if (cityKeys > 0) {
+			log.info("Filled city key of {} records", cityKeys);
+		}
+		int stateKeys = migrate(weatherRepository::findTop500ByStateKeyIsNull, WeatherEntity::fillDerivedColumns, false);
+		if (stateKeys > 0) {
+			log.info("Filled state key of {} records", stateKeys);
+		}
+		// after the summaries, the rewritten records would otherwise get theirs without being added to the rollups
+		int rewritten = migrate(weatherRepository::findTop500ByTemperaturesIsNullAndLegacyTemperaturesIsNotNull,
+				entity -> entity.setTemperatures(entity.getTemperatures()), false);
+		if (rewritten > 0) {
+			log.info("Rewrote legacy temperatures of {} records in the binary column", rewritten);
+		}
+		// once every key is filled, so that no duplicate is missed
+		if (removeDuplicates) {
+			int duplicates = duplicateReadings.remove();
+			log.warn("Removed {} duplicate records, the rollups of their cities and months were recomputed", duplicates);
+		}
+		naturalKeyIndex.create();
+	}
+
+	/*
+		Derived columns are computed in java, one transaction per chunk keeps the persistence context small.
+		A chunk must not contain the records of the previous one, they no longer match once they are migrated.
+	 */
+	private int migrate(Supplier<List<WeatherEntity>> chunk, Consumer<WeatherEntity> migration, boolean addToRollups) {
+		int filled = 0;
+		int migrated;
+		do {
+			migrated = transactionTemplate.execute(status -> {
+				List<WeatherEntity> entities = chunk.get();
+				RollupChanges rollupChanges = new RollupChanges();
+				for (WeatherEntity entity : entities) {
+					migration.accept(entity);
+					rollupChanges.add(entity);
+				}
+				if (addToRollups) {
+					weatherRollups.apply(rollupChanges);
+				}
+				return entities.size();
+			});
+			filled += migrated;
+		} while (migrated > 0);
+		return filled;
+	}
+
+}
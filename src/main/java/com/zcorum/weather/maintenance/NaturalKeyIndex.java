@@ -0,0 +1,78 @@
+package com.zcorum.weather.maintenance;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+
+/*
+	The unique index of the natural key of a reading, which upserts rely on. Hibernate would add it while building the
+	schema, before LegacyDataMigration fills the keys of older records, and a failure to add it would only be logged.
+	It is created here instead, after the migration, and a start without it fails. While duplicate readings are stored,
+	the start fails listing some of their keys, for operators to resolve them or to start once with
+	--remove-duplicate-readings, see DuplicateReadings.
+ */
+@Slf4j
+@Component
+public class NaturalKeyIndex {
+
+	public static final String NAME = "uk_weather_city_key_state_key_date";
+
+	private static final int LISTED_DUPLICATES = 20;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public NaturalKeyIndex(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/*
+		Creates the index on the current shard unless it exists, the records must not hold duplicates.
+	 */
+	public void create() {
+		if (exists()) {
+			return;
+		}
+		List<String> duplicates = jdbcTemplate.query("SELECT city_key, state_key, date, COUNT(*) FROM weather"
+						+ " GROUP BY city_key, state_key, date HAVING COUNT(*) > 1 ORDER BY city_key, state_key, date LIMIT " + LISTED_DUPLICATES,
+				(row, rowNum) -> "(" + row.getString(1) + ", " + row.getString(2) + ", " + row.getDate(3) + ") x" + row.getLong(4));
+		if (!duplicates.isEmpty()) {
+			throw new IllegalStateException("Could not create the unique index " + NAME + " of the natural key, readings are"
+					+ " stored more than once, e.g. (city key, state key, date): " + String.join(", ", duplicates)
+					+ ". Resolve them, or start once with --" + DuplicateReadings.OPTION + " to keep the last stored record of each");
+		}
+		try {
+			jdbcTemplate.execute("CREATE UNIQUE INDEX " + NAME + " ON weather (city_key, state_key, date)");
+		} catch (DataAccessException e) {
+			throw new IllegalStateException("Could not create the unique index " + NAME + " of the natural key,"
+					+ " upserts would store repeated readings again", e);
+		}
+		if (!exists()) {
+			throw new IllegalStateException("The unique index " + NAME + " of the natural key is missing after it was created");
+		}
+		log.info("Created the unique index {} of the natural key", NAME);
+	}
+
+	boolean exists() {
+		Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+			DatabaseMetaData metaData = connection.getMetaData();
+			String table = metaData.storesUpperCaseIdentifiers() ? "WEATHER" : "weather";
+			try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, table, true, false)) {
+				while (indexes.next()) {
+					if (NAME.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+						return true;
+					}
+				}
+			}
+			return false;
+		});
+		return Boolean.TRUE.equals(exists);
+	}
+
+}
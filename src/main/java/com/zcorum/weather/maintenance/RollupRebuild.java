@@ -0,0 +1,38 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.rollup.WeatherRollups;
+import com.zcorum.weather.shard.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/*
+	Recomputes the temperature rollups from the weather records when the application is started with --rebuild-rollups,
+	e.g. after records were loaded or fixed directly in the database. Runs after LegacyDataMigration.
+ */
+@Slf4j
+@Component
+public class RollupRebuild implements ApplicationRunner {
+
+	public static final String OPTION = "rebuild-rollups";
+
+	private final WeatherRollups weatherRollups;
+
+	private final Shards shards;
+
+	public RollupRebuild(WeatherRollups weatherRollups, Shards shards) {
+		this.weatherRollups = weatherRollups;
+		this.shards = shards;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (args.containsOption(OPTION)) {
+			long started = System.currentTimeMillis();
+			int rollups = shards.all().stream().mapToInt(shard -> shards.execute(shard, false, weatherRollups::rebuild)).sum();
+			log.info("Rebuilt {} temperature rollups in {} ms", rollups, System.currentTimeMillis() - started);
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.shard.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+/*
+	The id of a record encodes its shard for the number of shards it was stored with (see ShardedSequenceGenerator), so
+	the list of shards can not be reordered or resized in place: the records would then be looked up on the wrong shard.
+	Every shard records its position and the shard count in the weather_shard table on the first start, later starts
+	with another layout fail. A shard holding records but no layout yet is checked against the shard of its lowest and
+	highest ids.
+ */
+@Slf4j
+@Component
+public class ShardLayoutCheck implements InitializingBean {
+
+	public static final String LAYOUT_TABLE = "weather_shard";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Shards shards;
+
+	public ShardLayoutCheck(DataSource dataSource, Shards shards) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.shards = shards;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for (int shard : shards.all()) {
+			shards.on(shard, () -> check(shard));
+		}
+	}
+
+	void check(int shard) {
+		int count = shards.getCount();
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + LAYOUT_TABLE + " (shard INT NOT NULL, shard_count INT NOT NULL)");
+		List<Map<String, Object>> layouts = jdbcTemplate.queryForList("SELECT shard, shard_count FROM " + LAYOUT_TABLE);
+		if (!layouts.isEmpty()) {
+			int storedShard = ((Number) layouts.get(0).get("shard")).intValue();
+			int storedCount = ((Number) layouts.get(0).get("shard_count")).intValue();
+			if (storedShard != shard || storedCount != count) {
+				throw new IllegalStateException("Shard " + shard + " of " + count + " was configured as shard " + storedShard
+						+ " of " + storedCount + ", the list of shards can not be reordered or resized in place");
+			}
+			return;
+		}
+		Map<String, Object> ids = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM weather");
+		for (Object id : ids.values()) {
+			if (id != null && shards.shardOfId(((Number) id).intValue()) != shard) {
+				throw new IllegalStateException("Shard " + shard + " of " + count + " holds the id " + id + " of another shard,"
+						+ " the list of shards can not be reordered or resized in place");
+			}
+		}
+		jdbcTemplate.update("INSERT INTO " + LAYOUT_TABLE + " (shard, shard_count) VALUES (?, ?)", shard, count);
+		log.info("Recorded the layout of shard {} of {}", shard, count);
+	}
+
+}
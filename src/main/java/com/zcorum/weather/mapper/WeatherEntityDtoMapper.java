@@ -1,17 +1,26 @@
 package com.zcorum.weather.mapper;
 
 
+import com.zcorum.weather.converter.TemperatureList;
 import com.zcorum.weather.dto.WeatherDto;
 import com.zcorum.weather.entity.WeatherEntity;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 import java.util.List;
 
 @Mapper(componentModel = "spring")
 public interface WeatherEntityDtoMapper {
+	// the version is kept by the application, a new record starts at 0
+	@Mapping(target = "version", ignore = true)
 	WeatherEntity dtoToEntity(WeatherDto dto);
 
 	WeatherDto entityToDto(WeatherEntity entity);
 
 	List<WeatherDto> entitiesToDtos(List<WeatherEntity> entities);
+
+	// shares the primitive backed list instead of copying it into an ArrayList of boxed values
+	default List<Double> temperatures(List<Double> temperatures) {
+		return temperatures == null ? null : TemperatureList.copyOf(temperatures);
+	}
 }
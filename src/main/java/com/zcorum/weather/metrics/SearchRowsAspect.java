@@ -0,0 +1,62 @@
+package com.zcorum.weather.metrics;
+
+import com.zcorum.weather.dto.WeatherPageDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+	Records the number of records fetched by searches as `weather.search.rows`, tagged by SearchShape and method.
+	Ordered inside the caching advice and the search coalescing, so cache hits and coalesced followers, which fetch
+	nothing, are not counted, and outside the transaction advice.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class SearchRowsAspect {
+
+	private final MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<Tags, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+	public SearchRowsAspect(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Around("execution(public * com.zcorum.weather.service.WeatherService+.search(..))")
+	public Object count(ProceedingJoinPoint joinPoint) throws Throwable {
+		Object result = joinPoint.proceed();
+		Object[] args = joinPoint.getArgs();
+		Tags tags = SearchShape.of((String) args[0], (String) args[1], (String) args[2], (String) args[3], (String) args[4])
+				.toTags().and("method", ServiceMetricsAspect.methodName(((MethodSignature) joinPoint.getSignature()).getMethod()));
+		summaries.computeIfAbsent(tags, key -> DistributionSummary.builder("weather.search.rows")
+				.description("Number of records fetched by searches")
+				.baseUnit("rows")
+				.tags(key)
+				.register(meterRegistry))
+				.record(rows(result));
+		return result;
+	}
+
+	private int rows(Object result) {
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		}
+		if (result instanceof WeatherPageDto) {
+			return ((WeatherPageDto) result).getRecords().size();
+		}
+		return result instanceof Integer ? (Integer) result : 0;
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.zcorum.weather.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import lombok.Value;
+import org.springframework.util.StringUtils;
+
+/*
+	Low cardinality description of a search, used as metric tags so that the hot and the slow query shapes can be found:
+	- date: none, day (one date), days (several dates) or range (from and/or to)
+	- cities: the number of cities, 0, 1, 2-5 or 6+
+	- sort: the sort parameter, id when absent and invalid for values the search rejects
+ */
+@Value
+public class SearchShape {
+
+	String date;
+	String cities;
+	String sort;
+
+	public static SearchShape of(String date, String from, String to, String city, String sort) {
+		return new SearchShape(dateShape(date, from, to), citiesShape(city), sortShape(sort));
+	}
+
+	public Tags toTags() {
+		return Tags.of("date", date, "cities", cities, "sort", sort);
+	}
+
+	private static String dateShape(String date, String from, String to) {
+		if (!StringUtils.isEmpty(date)) {
+			return date.indexOf(',') < 0 ? "day" : "days";
+		}
+		return StringUtils.isEmpty(from) && StringUtils.isEmpty(to) ? "none" : "range";
+	}
+
+	private static String citiesShape(String city) {
+		if (StringUtils.isEmpty(city)) {
+			return "0";
+		}
+		int count = city.split(",").length;
+		if (count <= 1) {
+			return "1";
+		}
+		return count <= 5 ? "2-5" : "6+";
+	}
+
+	private static String sortShape(String sort) {
+		if (StringUtils.isEmpty(sort)) {
+			return "id";
+		}
+		switch (sort) {
+			case "date":
+			case "-date":
+			case "city":
+			case "-city":
+				return sort;
+			default:
+				return "invalid";
+		}
+	}
+
+}
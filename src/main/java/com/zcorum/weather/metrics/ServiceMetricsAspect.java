@@ -0,0 +1,91 @@
+package com.zcorum.weather.metrics;
+
+import com.zcorum.weather.dto.WeatherPageDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+	Times every WeatherService call as `weather.service`, tagged by method and thrown exception. Searches are also timed
+	as `weather.search`, tagged by SearchShape; their rows are counted by SearchRowsAspect.
+	Ordered outside the caching and the transaction advice, so cache hits and commits are part of the measured time.
+	The meters are registered once per set of tags.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 5)
+public class ServiceMetricsAspect {
+
+	private static final String NO_EXCEPTION = "none";
+
+	private final MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<Tags, Timer> serviceTimers = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Tags, Timer> searchTimers = new ConcurrentHashMap<>();
+
+	public ServiceMetricsAspect(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Around("execution(public * com.zcorum.weather.service.WeatherService+.*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		String method = methodName(((MethodSignature) joinPoint.getSignature()).getMethod());
+		String exception = NO_EXCEPTION;
+		Timer.Sample sample = Timer.start(meterRegistry);
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			long nanos = sample.stop(serviceTimers.computeIfAbsent(Tags.of("method", method, "exception", exception),
+					tags -> Timer.builder("weather.service")
+							.description("Time of WeatherService calls")
+							.tags(tags)
+							.register(meterRegistry)));
+			if (method.startsWith("search") && exception.equals(NO_EXCEPTION)) {
+				recordSearch(method, joinPoint.getArgs(), nanos);
+			}
+		}
+	}
+
+	private void recordSearch(String method, Object[] args, long nanos) {
+		Tags tags = SearchShape.of((String) args[0], (String) args[1], (String) args[2], (String) args[3], (String) args[4])
+				.toTags().and("method", method);
+		searchTimers.computeIfAbsent(tags, key -> Timer.builder("weather.search")
+				.description("Time of searches by query shape")
+				.tags(key)
+				.register(meterRegistry))
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+		The search overloads are told apart as search, searchStream and searchPage.
+	 */
+	static String methodName(Method method) {
+		if (!method.getName().equals("search")) {
+			return method.getName();
+		}
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		Class<?> last = parameterTypes[parameterTypes.length - 1];
+		if (Consumer.class.isAssignableFrom(last)) {
+			return "searchStream";
+		}
+		return method.getReturnType() == WeatherPageDto.class ? "searchPage" : "search";
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.zcorum.weather.metrics;
+
+import com.zcorum.weather.converter.DecodeTimings;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+	Publishes the DecodeTimings of the temperature converters as `weather.temperatures.decode`, tagged by format.
+ */
+@Component
+public class TemperatureDecodeMetrics implements MeterBinder {
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		register(registry, DecodeTimings.BINARY, "binary");
+		register(registry, DecodeTimings.TEXT, "text");
+	}
+
+	private void register(MeterRegistry registry, DecodeTimings timings, String format) {
+		FunctionTimer.builder("weather.temperatures.decode", timings, DecodeTimings::getCount, DecodeTimings::getTotalNanos, TimeUnit.NANOSECONDS)
+				.description("Time spent decoding stored temperatures")
+				.tag("format", format)
+				.register(registry);
+	}
+
+}
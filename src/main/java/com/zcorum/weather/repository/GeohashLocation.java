@@ -0,0 +1,15 @@
+package com.zcorum.weather.repository;
+
+import lombok.Value;
+
+/*
+	A distinct location of records and the number of its records, read from the (geohash, lat, lon, date) index.
+ */
+@Value
+public class GeohashLocation {
+
+	String geohash;
+	Double lat;
+	Double lon;
+	Long records;
+}
@@ -0,0 +1,20 @@
+package com.zcorum.weather.repository;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/*
+	Temperature summary of a city over a period, periodStart is the first day of the period.
+ */
+@Value
+public class TemperatureAggregate {
+
+	String cityKey;
+	String city;
+	LocalDate periodStart;
+	Double min;
+	Double max;
+	Double sum;
+	Long count;
+}
@@ -0,0 +1,11 @@
+package com.zcorum.weather.repository;
+
+/*
+	What an upsert did to the stored record of the natural key of the entity.
+ */
+public enum UpsertOutcome {
+
+	INSERTED,
+	UNCHANGED,
+	CORRECTED
+}
@@ -1,8 +1,35 @@
 package com.zcorum.weather.repository;
 
 import com.zcorum.weather.entity.WeatherEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
-public interface WeatherRepository extends CrudRepository<WeatherEntity, Integer>, JpaSpecificationExecutor<WeatherEntity> {
+import java.util.List;
+import java.util.Optional;
+
+public interface WeatherRepository extends CrudRepository<WeatherEntity, Integer>, JpaSpecificationExecutor<WeatherEntity>, WeatherRepositoryCustom {
+
+	List<WeatherEntity> findTop500ByCityKeyIsNullAndCityIsNotNull();
+
+	List<WeatherEntity> findTop500ByStateKeyIsNull();
+
+	List<WeatherEntity> findTop500ByTemperatureCountIsNull();
+
+	List<WeatherEntity> findTop500ByGeohashIsNullAndLatIsNotNullAndLonIsNotNull();
+
+	List<WeatherEntity> findTop500ByTemperaturesIsNullAndLegacyTemperaturesIsNotNull();
+
+	@Query("select coalesce(w.version, 0) from WeatherEntity w where w.id = :id")
+	Optional<Integer> findVersionById(@Param("id") Integer id);
+
+	/*
+		Records of the same city key, state key and date as a record with a higher id, stored before the natural key was
+		unique. Found through the (city_key, date, id) index.
+	 */
+	@Query("select w from WeatherEntity w where exists (select d.id from WeatherEntity d where d.cityKey = w.cityKey"
+			+ " and d.date = w.date and d.id > w.id and d.stateKey = w.stateKey)")
+	List<WeatherEntity> findDuplicates(Pageable pageable);
 }
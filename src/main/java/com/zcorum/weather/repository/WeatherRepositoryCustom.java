@@ -0,0 +1,59 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherEntity;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface WeatherRepositoryCustom {
+
+	/*
+		Returns matching entities as a stream backed by a JDBC cursor, must be consumed inside a transaction and closed.
+	 */
+	Stream<WeatherEntity> stream(Specification<WeatherEntity> spec, Sort sort);
+
+	/*
+		Returns at most limit matching entities, the ordering should be unique to keep pages stable.
+	 */
+	List<WeatherEntity> findAll(Specification<WeatherEntity> spec, Sort sort, int limit);
+
+	void detach(WeatherEntity entity);
+
+	/*
+		Persists all entities, flushing and clearing the persistence context every weather.ingest.flush-size entities.
+		Returns the assigned ids in the order of the entities.
+	 */
+	List<Integer> persistAll(Iterator<WeatherEntity> entities);
+
+	/*
+		Inserts the entity, or corrects the record of the same city key, state key and date with its reading, in a single
+		INSERT ... ON DUPLICATE KEY UPDATE statement, so concurrent upserts of a reading neither fail nor duplicate it.
+		The stored record gets a new version when corrected. The entity gets the id of the stored record and is not
+		managed afterwards, its derived columns must be filled.
+	 */
+	UpsertOutcome upsert(WeatherEntity entity);
+
+	/*
+		Returns the distinct locations of the records whose geohash starts with one of the prefixes, each prefix is a
+		range of the (geohash, lat, lon, date) index, which holds all the columns read. Empty prefixes do not restrict
+		the location and empty dates do not restrict the date.
+	 */
+	List<GeohashLocation> findLocationsByGeohashPrefixes(Collection<String> prefixes, Collection<LocalDate> dates);
+
+	/*
+		Returns the entities located in the given geohash cells, empty dates do not restrict the date.
+	 */
+	List<WeatherEntity> findByGeohashes(Collection<String> geohashes, Collection<LocalDate> dates);
+
+	/*
+		Aggregates the per-record temperature summaries by city and period, ordered by city key and period.
+		Empty city keys and null dates do not restrict the aggregated records.
+	 */
+	List<TemperatureAggregate> aggregateTemperatures(Collection<String> cityKeys, LocalDate from, LocalDate to, StatsGranularity granularity);
+}
@@ -0,0 +1,313 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.converter.BinaryTemperaturesConverter;
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherEntity;
+import org.hibernate.Session;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.zcorum.weather.constants.Constants.FIELD_DATE;
+import static com.zcorum.weather.constants.Constants.FIELD_GEOHASH;
+import static com.zcorum.weather.constants.Constants.FIELD_LAT;
+import static com.zcorum.weather.constants.Constants.FIELD_LON;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+public class WeatherRepositoryImpl implements WeatherRepositoryCustom {
+
+	// binary literal of the packed empty list
+	private static final String NO_TEMPERATURES = hexLiteral(new BinaryTemperaturesConverter().convertToDatabaseColumn(emptyList()));
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${weather.search.fetch-size:500}")
+	private int fetchSize;
+
+	@Value("${weather.ingest.flush-size:500}")
+	private int flushSize;
+
+	@Override
+	public Stream<WeatherEntity> stream(Specification<WeatherEntity> spec, Sort sort) {
+		return createQuery(spec, sort)
+				.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+				.setHint(QueryHints.HINT_READONLY, true)
+				.getResultStream();
+	}
+
+	@Override
+	public List<WeatherEntity> findAll(Specification<WeatherEntity> spec, Sort sort, int limit) {
+		return createQuery(spec, sort)
+				.setMaxResults(limit)
+				.getResultList();
+	}
+
+	@Override
+	public void detach(WeatherEntity entity) {
+		entityManager.detach(entity);
+	}
+
+	@Override
+	public List<Integer> persistAll(Iterator<WeatherEntity> entities) {
+		List<Integer> ids = new ArrayList<>();
+		while (entities.hasNext()) {
+			WeatherEntity entity = entities.next();
+			entityManager.persist(entity);
+			ids.add(entity.getId());
+			if (ids.size() % flushSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		entityManager.flush();
+		return ids;
+	}
+
+	/*
+		On MySQL the id of the stored record, inserted or not, is returned as the generated key of the statement through
+		LAST_INSERT_ID(expr), and the row count tells a corrected record (2) from a repeated one. Other databases, such
+		as H2 in the tests, read the id of the stored record by its natural key and take every repeated reading for a
+		correction, which costs a needless rollup recompute only.
+	 */
+	@Override
+	public UpsertOutcome upsert(WeatherEntity entity) {
+		// the generator of the entity, so that a native insert gets a shard encoded id like a persisted record
+		SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+		IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(WeatherEntity.class).getIdentifierGenerator();
+		Integer id = (Integer) generator.generate(session, entity);
+		boolean mysql = session.getFactory().getJdbcServices().getDialect() instanceof MySQLDialect;
+		return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+			int count;
+			Integer storedId = id;
+			try (PreparedStatement statement = mysql
+					? connection.prepareStatement(upsertStatement(true), Statement.RETURN_GENERATED_KEYS)
+					: connection.prepareStatement(upsertStatement(false))) {
+				int index = 0;
+				statement.setInt(++index, id);
+				statement.setObject(++index, entity.getVersion(), Types.INTEGER);
+				statement.setDate(++index, entity.getDate() == null ? null : Date.valueOf(entity.getDate()));
+				statement.setObject(++index, entity.getLat(), Types.DOUBLE);
+				statement.setObject(++index, entity.getLon(), Types.DOUBLE);
+				statement.setString(++index, entity.getGeohash());
+				statement.setString(++index, entity.getCity());
+				statement.setString(++index, entity.getCityKey());
+				statement.setString(++index, entity.getState());
+				statement.setString(++index, entity.getStateKey());
+				statement.setBytes(++index, new BinaryTemperaturesConverter().convertToDatabaseColumn(entity.getTemperatures()));
+				statement.setObject(++index, entity.getTemperatureMin(), Types.DOUBLE);
+				statement.setObject(++index, entity.getTemperatureMax(), Types.DOUBLE);
+				statement.setObject(++index, entity.getTemperatureSum(), Types.DOUBLE);
+				statement.setObject(++index, entity.getTemperatureCount(), Types.INTEGER);
+				count = statement.executeUpdate();
+				if (mysql) {
+					try (ResultSet keys = statement.getGeneratedKeys()) {
+						// the first key only, the driver counts one key per affected row
+						if (keys.next()) {
+							storedId = keys.getInt(1);
+						}
+					}
+				}
+			}
+			if (!mysql && entity.getCityKey() != null && entity.getDate() != null) {
+				storedId = findIdByNaturalKey(connection, entity);
+			}
+			entity.setId(storedId);
+			if (storedId.equals(id)) {
+				return UpsertOutcome.INSERTED;
+			}
+			return count == 2 || !mysql ? UpsertOutcome.CORRECTED : UpsertOutcome.UNCHANGED;
+		});
+	}
+
+	/*
+		The stored record takes the reading when it differs and gets a new version then. The version is assigned first,
+		MySQL evaluates later assignments with the updated columns. Cities are compared case sensitively, no temperatures
+		and an empty list are the same reading.
+	 */
+	private static String upsertStatement(boolean mysql) {
+		String sameCity = mysql
+				? sameValue("cast(city as binary)", "cast(values(city) as binary)", "city")
+				: sameValue("city", "values(city)", "city");
+		String sameTemperatures = "coalesce(temperatures_bin, " + NO_TEMPERATURES + ") = coalesce(values(temperatures_bin), " + NO_TEMPERATURES + ")";
+		String sameReading = sameCity
+				+ " and " + sameValue("lat", "values(lat)", "lat")
+				+ " and " + sameValue("lon", "values(lon)", "lon")
+				+ " and " + sameTemperatures;
+		return "insert into weather (id, version, date, lat, lon, geohash, city, city_key, state, state_key, temperatures_bin,"
+				+ " temp_min, temp_max, temp_sum, temp_count)"
+				+ " values (" + (mysql ? "last_insert_id(?)" : "?") + ", ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+				+ " on duplicate key update"
+				+ " version = case when " + sameReading + " then version else coalesce(version, 0) + 1 end,"
+				+ " temperatures_bin = case when " + sameTemperatures + " then temperatures_bin else values(temperatures_bin) end,"
+				+ " city = values(city), lat = values(lat), lon = values(lon), geohash = values(geohash),"
+				+ " temp_min = values(temp_min), temp_max = values(temp_max), temp_sum = values(temp_sum), temp_count = values(temp_count)"
+				+ (mysql ? ", id = last_insert_id(id)" : "");
+	}
+
+	private static String sameValue(String stored, String given, String column) {
+		return "(" + stored + " = " + given + " or " + column + " is null and values(" + column + ") is null)";
+	}
+
+	private static Integer findIdByNaturalKey(Connection connection, WeatherEntity entity) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"select id from weather where city_key = ? and state_key = ? and date = ?")) {
+			statement.setString(1, entity.getCityKey());
+			statement.setString(2, entity.getStateKey());
+			statement.setDate(3, Date.valueOf(entity.getDate()));
+			try (ResultSet ids = statement.executeQuery()) {
+				if (!ids.next()) {
+					throw new IllegalStateException("No record of the natural key of a duplicate " + entity);
+				}
+				return ids.getInt(1);
+			}
+		}
+	}
+
+	@Override
+	public List<GeohashLocation> findLocationsByGeohashPrefixes(Collection<String> prefixes, Collection<LocalDate> dates) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<GeohashLocation> cq = cb.createQuery(GeohashLocation.class);
+		Root<WeatherEntity> root = cq.from(WeatherEntity.class);
+		Path<String> geohash = root.get(FIELD_GEOHASH);
+		Path<Double> lat = root.get(FIELD_LAT);
+		Path<Double> lon = root.get(FIELD_LON);
+		List<Predicate> predicates = new ArrayList<>();
+		if (prefixes.isEmpty()) {
+			predicates.add(cb.isNotNull(geohash));
+		} else {
+			predicates.add(cb.or(prefixes.stream().map(prefix -> cb.like(geohash, prefix + "%")).toArray(Predicate[]::new)));
+		}
+		if (!dates.isEmpty()) {
+			predicates.add(root.get(FIELD_DATE).in(dates));
+		}
+		cq.select(cb.construct(GeohashLocation.class, geohash, lat, lon, cb.count(root)))
+				.where(predicates.toArray(new Predicate[0]))
+				.groupBy(geohash, lat, lon);
+		return entityManager.createQuery(cq).getResultList();
+	}
+
+	@Override
+	public List<WeatherEntity> findByGeohashes(Collection<String> geohashes, Collection<LocalDate> dates) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<WeatherEntity> cq = cb.createQuery(WeatherEntity.class);
+		Root<WeatherEntity> root = cq.from(WeatherEntity.class);
+		List<Predicate> predicates = new ArrayList<>();
+		predicates.add(root.get(FIELD_GEOHASH).in(geohashes));
+		if (!dates.isEmpty()) {
+			predicates.add(root.get(FIELD_DATE).in(dates));
+		}
+		cq.select(root).where(predicates.toArray(new Predicate[0]));
+		return entityManager.createQuery(cq)
+				.setHint(QueryHints.HINT_READONLY, true)
+				.getResultList();
+	}
+
+	@Override
+	public List<TemperatureAggregate> aggregateTemperatures(Collection<String> cityKeys, LocalDate from, LocalDate to, StatsGranularity granularity) {
+		String period;
+		switch (granularity) {
+			case DAY:
+				period = "w.date";
+				break;
+			case MONTH:
+				period = "year(w.date), month(w.date)";
+				break;
+			default:
+				period = "year(w.date)";
+		}
+		StringBuilder jpql = new StringBuilder("select w.cityKey, min(w.city), ").append(period)
+				.append(", min(w.temperatureMin), max(w.temperatureMax), sum(w.temperatureSum), sum(w.temperatureCount)")
+				.append(" from WeatherEntity w where w.temperatureCount > 0");
+		if (!cityKeys.isEmpty()) {
+			jpql.append(" and w.cityKey in :cityKeys");
+		}
+		if (from != null) {
+			jpql.append(" and w.date >= :from");
+		}
+		if (to != null) {
+			jpql.append(" and w.date <= :to");
+		}
+		jpql.append(" group by w.cityKey, ").append(period).append(" order by w.cityKey, ").append(period);
+
+		TypedQuery<Object[]> query = entityManager.createQuery(jpql.toString(), Object[].class);
+		if (!cityKeys.isEmpty()) {
+			query.setParameter("cityKeys", cityKeys);
+		}
+		if (from != null) {
+			query.setParameter("from", from);
+		}
+		if (to != null) {
+			query.setParameter("to", to);
+		}
+		return query.getResultList().stream()
+				.map(row -> toTemperatureAggregate(row, granularity))
+				.collect(toList());
+	}
+
+	private TemperatureAggregate toTemperatureAggregate(Object[] row, StatsGranularity granularity) {
+		int column = 2;
+		LocalDate periodStart;
+		switch (granularity) {
+			case DAY:
+				periodStart = (LocalDate) row[column++];
+				break;
+			case MONTH:
+				periodStart = LocalDate.of(((Number) row[column++]).intValue(), ((Number) row[column++]).intValue(), 1);
+				break;
+			default:
+				periodStart = LocalDate.of(((Number) row[column++]).intValue(), 1, 1);
+		}
+		return new TemperatureAggregate((String) row[0], (String) row[1], periodStart,
+				(Double) row[column++], (Double) row[column++], (Double) row[column++], ((Number) row[column]).longValue());
+	}
+
+	private static String hexLiteral(byte[] bytes) {
+		StringBuilder literal = new StringBuilder("X'");
+		for (byte b : bytes) {
+			literal.append(String.format("%02X", b));
+		}
+		return literal.append("'").toString();
+	}
+
+	private TypedQuery<WeatherEntity> createQuery(Specification<WeatherEntity> spec, Sort sort) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<WeatherEntity> cq = cb.createQuery(WeatherEntity.class);
+		Root<WeatherEntity> root = cq.from(WeatherEntity.class);
+		Predicate predicate = spec == null ? null : spec.toPredicate(root, cq, cb);
+		if (predicate != null) {
+			cq.where(predicate);
+		}
+		cq.select(root).orderBy(toOrders(sort, root, cb));
+		return entityManager.createQuery(cq);
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.entity.WeatherRollupEntity;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+
+public interface WeatherRollupRepository extends CrudRepository<WeatherRollupEntity, WeatherRollupEntity.Key>, WeatherRollupRepositoryCustom {
+
+	/*
+		Adds a summary of temperatures to the rollup of the period in a single statement, creating the rollup if needed,
+		so that concurrent writes of the same period neither lose updates nor fail on the primary key.
+	 */
+	@Modifying
+	@Query(nativeQuery = true, value = "insert into weather_rollup (granularity, city_key, period_start, city, temp_min, temp_max, temp_sum, temp_count)"
+			+ " values (:granularity, :cityKey, :periodStart, :city, :min, :max, :sum, :count)"
+			+ " on duplicate key update temp_min = least(temp_min, values(temp_min)), temp_max = greatest(temp_max, values(temp_max)),"
+			+ " temp_sum = temp_sum + values(temp_sum), temp_count = temp_count + values(temp_count)")
+	int addTemperatures(@Param("granularity") String granularity, @Param("cityKey") String cityKey,
+			@Param("periodStart") LocalDate periodStart, @Param("city") String city,
+			@Param("min") double min, @Param("max") double max, @Param("sum") double sum, @Param("count") long count);
+
+	@Modifying
+	@Query("delete from WeatherRollupEntity")
+	int deleteAllRollups();
+}
@@ -0,0 +1,28 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherRollupEntity;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface WeatherRollupRepositoryCustom {
+
+	/*
+		Persists new rollups, flushing and clearing the persistence context every weather.ingest.flush-size rollups.
+	 */
+	void insertAll(Collection<WeatherRollupEntity> rollups);
+
+	/*
+		Reads the rollup with a row lock, held until the end of the transaction.
+	 */
+	Optional<WeatherRollupEntity> findForUpdate(WeatherRollupEntity.Key key);
+
+	/*
+		Returns the rollups of periods starting within [from, to), ordered by city key and period.
+		Empty city keys and null dates do not restrict the returned rollups.
+	 */
+	List<TemperatureAggregate> findRollups(Collection<String> cityKeys, LocalDate from, LocalDate to, StatsGranularity granularity);
+}
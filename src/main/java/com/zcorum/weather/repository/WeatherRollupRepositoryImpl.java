@@ -0,0 +1,75 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherRollupEntity;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+public class WeatherRollupRepositoryImpl implements WeatherRollupRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${weather.ingest.flush-size:500}")
+	private int flushSize;
+
+	@Override
+	public void insertAll(Collection<WeatherRollupEntity> rollups) {
+		int count = 0;
+		for (WeatherRollupEntity rollup : rollups) {
+			entityManager.persist(rollup);
+			if (++count % flushSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		entityManager.flush();
+	}
+
+	@Override
+	public Optional<WeatherRollupEntity> findForUpdate(WeatherRollupEntity.Key key) {
+		return Optional.ofNullable(entityManager.find(WeatherRollupEntity.class, key, LockModeType.PESSIMISTIC_WRITE));
+	}
+
+	@Override
+	public List<TemperatureAggregate> findRollups(Collection<String> cityKeys, LocalDate from, LocalDate to, StatsGranularity granularity) {
+		StringBuilder jpql = new StringBuilder("select r from WeatherRollupEntity r where r.granularity = :granularity and r.temperatureCount > 0");
+		if (!cityKeys.isEmpty()) {
+			jpql.append(" and r.cityKey in :cityKeys");
+		}
+		if (from != null) {
+			jpql.append(" and r.periodStart >= :from");
+		}
+		if (to != null) {
+			jpql.append(" and r.periodStart < :to");
+		}
+		jpql.append(" order by r.cityKey, r.periodStart");
+
+		TypedQuery<WeatherRollupEntity> query = entityManager.createQuery(jpql.toString(), WeatherRollupEntity.class)
+				.setParameter("granularity", granularity);
+		if (!cityKeys.isEmpty()) {
+			query.setParameter("cityKeys", cityKeys);
+		}
+		if (from != null) {
+			query.setParameter("from", from);
+		}
+		if (to != null) {
+			query.setParameter("to", to);
+		}
+		return query.getResultList().stream()
+				.map(rollup -> new TemperatureAggregate(rollup.getCityKey(), rollup.getCity(), rollup.getPeriodStart(),
+						rollup.getTemperatureMin(), rollup.getTemperatureMax(), rollup.getTemperatureSum(), rollup.getTemperatureCount()))
+				.collect(toList());
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.zcorum.weather.rollup;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.entity.WeatherRollupEntity;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+	Temperature summaries of written records added up per rollup, so that a batch of records of the same city and
+	month updates each rollup once. Rollups are kept in key order, concurrent writers then lock them in the same order;
+	periods are compared as epoch days.
+ */
+public class RollupChanges {
+
+	static final StatsGranularity[] GRANULARITIES = {StatsGranularity.MONTH, StatsGranularity.YEAR};
+
+	private static final Comparator<WeatherRollupEntity> KEY_ORDER = Comparator
+			.comparing(WeatherRollupEntity::getGranularity)
+			.thenComparing(WeatherRollupEntity::getCityKey)
+			.thenComparingLong(rollup -> rollup.getPeriodStart().toEpochDay());
+
+	private final Map<WeatherRollupEntity, WeatherRollupEntity> rollups = new TreeMap<>(KEY_ORDER);
+
+	/*
+		Expects the temperature summary of the entity to be filled, records without a city, a date or readings are skipped.
+	 */
+	public void add(WeatherEntity entity) {
+		Integer count = entity.getTemperatureCount();
+		if (entity.getCityKey() == null || entity.getDate() == null || count == null || count == 0) {
+			return;
+		}
+		LocalDate date = entity.getDate();
+		for (StatsGranularity granularity : GRANULARITIES) {
+			WeatherRollupEntity key = new WeatherRollupEntity();
+			key.setGranularity(granularity);
+			key.setCityKey(entity.getCityKey());
+			key.setPeriodStart(granularity.periodStart(date));
+			WeatherRollupEntity rollup = rollups.computeIfAbsent(key, k -> {
+				k.setCity(entity.getCity());
+				k.setTemperatureMin(Double.POSITIVE_INFINITY);
+				k.setTemperatureMax(Double.NEGATIVE_INFINITY);
+				k.setTemperatureSum(0d);
+				k.setTemperatureCount(0L);
+				return k;
+			});
+			rollup.setTemperatureMin(Math.min(rollup.getTemperatureMin(), entity.getTemperatureMin()));
+			rollup.setTemperatureMax(Math.max(rollup.getTemperatureMax(), entity.getTemperatureMax()));
+			rollup.setTemperatureSum(rollup.getTemperatureSum() + entity.getTemperatureSum());
+			rollup.setTemperatureCount(rollup.getTemperatureCount() + count);
+		}
+	}
+
+	public boolean isEmpty() {
+		return rollups.isEmpty();
+	}
+
+	public Collection<WeatherRollupEntity> getRollups() {
+		return rollups.values();
+	}
+
+}
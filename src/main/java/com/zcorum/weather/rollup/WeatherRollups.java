@@ -0,0 +1,131 @@
+package com.zcorum.weather.rollup;
+
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.entity.WeatherRollupEntity;
+import com.zcorum.weather.repository.TemperatureAggregate;
+import com.zcorum.weather.repository.WeatherRepository;
+import com.zcorum.weather.repository.WeatherRollupRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/*
+	Maintains the monthly and yearly rollups of temperature summaries and answers aggregate queries from them.
+ */
+@Component
+@Transactional
+public class WeatherRollups {
+
+	private static final Comparator<TemperatureAggregate> AGGREGATE_ORDER = Comparator
+			.comparing(TemperatureAggregate::getCityKey)
+			.thenComparing(TemperatureAggregate::getPeriodStart);
+
+	private final WeatherRepository weatherRepository;
+
+	private final WeatherRollupRepository weatherRollupRepository;
+
+	public WeatherRollups(WeatherRepository weatherRepository, WeatherRollupRepository weatherRollupRepository) {
+		this.weatherRepository = weatherRepository;
+		this.weatherRollupRepository = weatherRollupRepository;
+	}
+
+	/*
+		Adds the changes to the rollups in the transaction that wrote the records.
+	 */
+	public void apply(RollupChanges changes) {
+		for (WeatherRollupEntity rollup : changes.getRollups()) {
+			weatherRollupRepository.addTemperatures(rollup.getGranularity().name(), rollup.getCityKey(), rollup.getPeriodStart(),
+					rollup.getCity(), rollup.getTemperatureMin(), rollup.getTemperatureMax(), rollup.getTemperatureSum(), rollup.getTemperatureCount());
+		}
+	}
+
+	/*
+		Recomputes the monthly and yearly rollups of the city around the date from the per-record summaries, after a record
+		was changed in place: a changed minimum or maximum cannot be taken back out of a rollup. Each rollup is locked before
+		its period is aggregated, so records added by concurrent transactions wait rather than get lost.
+	 */
+	public void recompute(String cityKey, LocalDate day) {
+		if (cityKey == null || day == null) {
+			return;
+		}
+		for (StatsGranularity granularity : RollupChanges.GRANULARITIES) {
+			LocalDate periodStart = granularity.periodStart(day);
+			Optional<WeatherRollupEntity> current = weatherRollupRepository.findForUpdate(
+					new WeatherRollupEntity.Key(granularity, cityKey, periodStart));
+			List<TemperatureAggregate> aggregates = weatherRepository.aggregateTemperatures(singletonList(cityKey),
+					periodStart, granularity.nextPeriodStart(periodStart).minusDays(1), granularity);
+			if (!aggregates.isEmpty()) {
+				weatherRollupRepository.save(toRollup(aggregates.get(0), granularity));
+			} else {
+				current.ifPresent(weatherRollupRepository::delete);
+			}
+		}
+	}
+
+	/*
+		Recomputes all rollups from the per-record summaries, returns the number of rollups written.
+	 */
+	public int rebuild() {
+		weatherRollupRepository.deleteAllRollups();
+		int count = 0;
+		for (StatsGranularity granularity : RollupChanges.GRANULARITIES) {
+			List<WeatherRollupEntity> rollups = weatherRepository.aggregateTemperatures(emptyList(), null, null, granularity).stream()
+					.filter(aggregate -> aggregate.getCityKey() != null && aggregate.getPeriodStart() != null)
+					.map(aggregate -> toRollup(aggregate, granularity))
+					.collect(toList());
+			weatherRollupRepository.insertAll(rollups);
+			count += rollups.size();
+		}
+		return count;
+	}
+
+	/*
+		Periods entirely within [from, to] are read from the rollups. A period cut by from or to only counts the records
+		within the range, so it is aggregated from the per-record summaries.
+	 */
+	@Transactional(readOnly = true)
+	public List<TemperatureAggregate> aggregate(List<String> cityKeys, LocalDate from, LocalDate to, StatsGranularity granularity) {
+		LocalDate firstFull = from == null ? null : granularity.nextPeriodStart(granularity.periodStart(from.minusDays(1)));
+		LocalDate afterLastFull = to == null ? null : granularity.periodStart(to.plusDays(1));
+		if (firstFull != null && afterLastFull != null && !firstFull.isBefore(afterLastFull)) {
+			return weatherRepository.aggregateTemperatures(cityKeys, from, to, granularity);
+		}
+		List<TemperatureAggregate> aggregates = new ArrayList<>(weatherRollupRepository.findRollups(cityKeys, firstFull, afterLastFull, granularity));
+		boolean partial = false;
+		if (from != null && from.isBefore(firstFull)) {
+			aggregates.addAll(weatherRepository.aggregateTemperatures(cityKeys, from, firstFull.minusDays(1), granularity));
+			partial = true;
+		}
+		if (to != null && !to.isBefore(afterLastFull)) {
+			aggregates.addAll(weatherRepository.aggregateTemperatures(cityKeys, afterLastFull, to, granularity));
+			partial = true;
+		}
+		if (partial) {
+			aggregates.sort(AGGREGATE_ORDER);
+		}
+		return aggregates;
+	}
+
+	private static WeatherRollupEntity toRollup(TemperatureAggregate aggregate, StatsGranularity granularity) {
+		WeatherRollupEntity rollup = new WeatherRollupEntity();
+		rollup.setGranularity(granularity);
+		rollup.setCityKey(aggregate.getCityKey());
+		rollup.setPeriodStart(aggregate.getPeriodStart());
+		rollup.setCity(aggregate.getCity());
+		rollup.setTemperatureMin(aggregate.getMin());
+		rollup.setTemperatureMax(aggregate.getMax());
+		rollup.setTemperatureSum(aggregate.getSum());
+		rollup.setTemperatureCount(aggregate.getCount());
+		return rollup;
+	}
+
+}
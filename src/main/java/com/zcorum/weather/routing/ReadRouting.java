@@ -0,0 +1,24 @@
+package com.zcorum.weather.routing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+	Tells whether the reads of the current thread are served by the primary: always without a replica, otherwise only
+	when ReadYourWrites pinned them. Data read from the replica may be older than the last committed change, so it must
+	not be cached or tagged as the current state.
+ */
+@Component
+public class ReadRouting {
+
+	private final boolean replica;
+
+	public ReadRouting(@Value("${weather.datasource.replica.url:}") String replicaUrl) {
+		this.replica = !replicaUrl.isEmpty();
+	}
+
+	public boolean isPrimary() {
+		return !replica || ReadYourWrites.isPinned();
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.zcorum.weather.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+	Sends the connections of read-only transactions to the replica and everything else to the primary. The read-only
+	flag of a transaction is only known after the transaction began, so this data source has to be wrapped in a
+	LazyConnectionDataSourceProxy, which asks for the connection when the first statement is run.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	public enum Route {
+		PRIMARY,
+		REPLICA
+	}
+
+	public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(Route.PRIMARY, primary);
+		targets.put(Route.REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+	}
+
+	public static Route currentRoute() {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReadYourWrites.isPinned()) {
+			return Route.REPLICA;
+		}
+		return Route.PRIMARY;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return currentRoute();
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.zcorum.weather.routing;
+
+/*
+	Pins the reads of the current thread to the primary, so that a client sees its own writes before the replica caught
+	up with them. Set by ReadYourWritesFilter for requests of clients that wrote recently.
+ */
+public final class ReadYourWrites {
+
+	private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+	private ReadYourWrites() {
+	}
+
+	public static void pin() {
+		PINNED.set(Boolean.TRUE);
+	}
+
+	public static void release() {
+		PINNED.remove();
+	}
+
+	public static boolean isPinned() {
+		return PINNED.get() != null;
+	}
+
+}
@@ -2,15 +2,83 @@ package com.zcorum.weather.service;
 
 
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.WeatherMultiGetDto;
+import com.zcorum.weather.dto.WeatherPageDto;
+import com.zcorum.weather.dto.WeatherStatsDto;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface WeatherService {
 
 
 	WeatherDto create(WeatherDto request);
 
+	/*
+		Creates all records in one transaction using batched inserts, null elements are skipped.
+		Returns the ids assigned to the records in the order they were given. With shards, every shard stores its records
+		in a transaction of its own; when only some of them fail, a PartialWriteException holds the ids of the stored records.
+	 */
+	List<Integer> createAll(Iterable<WeatherDto> requests);
+
+	/*
+		Creates the record unless one with the same city (case insensitive), state and date exists. An existing record is
+		kept as is when the request repeats it and corrected otherwise. Returns the stored record with its id.
+	 */
+	WeatherDto upsert(WeatherDto request);
+
+	/*
+		Upserts all records in one transaction, null elements are skipped.
+		Returns the ids of the stored records in the order they were given.
+	 */
+	List<Integer> upsertAll(Iterable<WeatherDto> requests);
+
 	WeatherDto findById(Integer id);
 
-	List<WeatherDto> search(String date, String city, String sort);
+	/*
+		Returns the version of the record with the given id, 0 for records stored before versions were kept, or null when
+		there is none. Cheaper than findById: a cached record is not read again, otherwise only the version is read.
+	 */
+	Integer findVersionById(Integer id);
+
+	/*
+		Returns the records of the given ids in the order of the ids and the ids without a record, each id once.
+		Null ids are skipped, at most 10000 ids are fetched at once.
+	 */
+	WeatherMultiGetDto findAllById(Collection<Integer> ids);
+
+	/*
+		Returns records matching all the given filters, each one is optional: date is one date or comma separated dates,
+		from and to are inclusive bounds of the date and city is one city or comma separated cities, case insensitive.
+	 */
+	List<WeatherDto> search(String date, String from, String to, String city, String sort);
+
+	/*
+		Same as search, but passes matching records to the consumer one by one instead of collecting them.
+		Returns the number of records passed.
+	 */
+	int search(String date, String from, String to, String city, String sort, Consumer<WeatherDto> consumer);
+
+	/*
+		Returns up to limit records following the record encoded in the after token, or the first page when it is empty.
+	 */
+	WeatherPageDto search(String date, String from, String to, String city, String sort, int limit, String after);
+
+	/*
+		Returns records located within radiusKm of the point, nearest first and then by date and id. The date is optional,
+		one date or comma separated dates.
+	 */
+	List<WeatherDto> near(double lat, double lon, double radiusKm, String date);
+
+	/*
+		Returns the k located records nearest to the point, ordered like near.
+	 */
+	List<WeatherDto> nearest(double lat, double lon, int k, String date);
+
+	/*
+		Returns min/max/mean temperatures per city and day, month or year, over the dates from and to inclusive.
+		All the parameters are optional, the granularity is a day by default.
+	 */
+	List<WeatherStatsDto> stats(String city, String from, String to, String granularity);
 }
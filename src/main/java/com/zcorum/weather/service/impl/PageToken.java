@@ -0,0 +1,64 @@
+package com.zcorum.weather.service.impl;
+
+import com.zcorum.weather.exception.WrongPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+	Opaque continuation token of a keyset page: the sort it was issued for, and the sort value and id of the last
+	record of the page. Encoded as url-safe base64 of `sort|id|value`, where value is prefixed with `=` and is
+	empty when the last record had no value for the sort field.
+ */
+final class PageToken {
+
+	private static final char SEPARATOR = '|';
+	private static final String VALUE_PREFIX = "=";
+
+	private final String sort;
+	private final int id;
+	private final String value;
+
+	PageToken(String sort, int id, String value) {
+		this.sort = sort;
+		this.id = id;
+		this.value = value;
+	}
+
+	static PageToken decode(String token) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new WrongPageRequestException("Malformed page token " + token, e);
+		}
+		String[] parts = decoded.split("\\|", 3);
+		if (parts.length != 3 || !(parts[2].isEmpty() || parts[2].startsWith(VALUE_PREFIX))) {
+			throw new WrongPageRequestException("Malformed page token " + token);
+		}
+		try {
+			String value = parts[2].isEmpty() ? null : parts[2].substring(VALUE_PREFIX.length());
+			return new PageToken(parts[0], Integer.parseInt(parts[1]), value);
+		} catch (NumberFormatException e) {
+			throw new WrongPageRequestException("Malformed page token " + token, e);
+		}
+	}
+
+	String encode() {
+		String decoded = sort + SEPARATOR + id + SEPARATOR + (value == null ? "" : VALUE_PREFIX + value);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+	}
+
+	String getSort() {
+		return sort;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	String getValue() {
+		return value;
+	}
+
+}
@@ -1,43 +1,136 @@
 package com.zcorum.weather.service.impl;
 
+import com.zcorum.weather.cache.CacheFillGuard;
+import com.zcorum.weather.cache.SearchCacheKeyGenerator;
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.dto.WeatherMultiGetDto;
+import com.zcorum.weather.dto.WeatherPageDto;
+import com.zcorum.weather.dto.WeatherStatsDto;
 import com.zcorum.weather.entity.WeatherEntity;
-import com.zcorum.weather.exception.WrongDateFormatException;
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.exception.PartialWriteException;
+import com.zcorum.weather.exception.WrongLocationRequestException;
+import com.zcorum.weather.exception.WrongMultiGetRequestException;
+import com.zcorum.weather.exception.WrongPageRequestException;
+import com.zcorum.weather.exception.WrongStatsRequestException;
 import com.zcorum.weather.mapper.WeatherEntityDtoMapper;
+import com.zcorum.weather.repository.GeohashLocation;
+import com.zcorum.weather.repository.TemperatureAggregate;
+import com.zcorum.weather.repository.UpsertOutcome;
 import com.zcorum.weather.repository.WeatherRepository;
+import com.zcorum.weather.rollup.RollupChanges;
+import com.zcorum.weather.rollup.WeatherRollups;
+import com.zcorum.weather.routing.ReadRouting;
 import com.zcorum.weather.service.WeatherService;
+import com.zcorum.weather.shard.ShardMerge;
+import com.zcorum.weather.shard.Shards;
+import com.zcorum.weather.util.Dates;
+import com.zcorum.weather.util.Geohash;
+import lombok.extern.slf4j.Slf4j;
 import org.mapstruct.factory.Mappers;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_SEARCH;
 import static com.zcorum.weather.constants.Constants.FIELD_CITY;
+import static com.zcorum.weather.constants.Constants.FIELD_CITY_KEY;
 import static com.zcorum.weather.constants.Constants.FIELD_DATE;
 import static com.zcorum.weather.constants.Constants.FIELD_ID;
-import static com.zcorum.weather.constants.Constants.yyyy_MM_dd;
+import static com.zcorum.weather.entity.WeatherEntity.toCityKey;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingDouble;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
+/*
+	Reads run in read-only transactions: Hibernate neither snapshots nor flushes the loaded records, and the connection
+	comes from the replica pool when one is configured (see ReplicaDataSourceConfig). With shards configured, work runs
+	on the shards of the given cities or id and results of several shards are merged in the requested order (see Shards).
+ */
+@Slf4j
 @Service
 @Transactional
 public class WeatherServiceImpl implements WeatherService {
 
+	private static final int MAX_PAGE_LIMIT = 1000;
+
+	private static final int MAX_NEAREST = 1000;
+
+	private static final int MAX_MULTI_GET = 10000;
+
+	// ids per IN query of a multi-get
+	private static final int MULTI_GET_CHUNK = 1000;
+
+	// cells of about 5 x 5 km, the first neighbourhood searched for the nearest records
+	private static final int NEAREST_START_PRECISION = 5;
+
+	private static final Comparator<Located> LOCATED_ORDER = Comparator.<Located>comparingDouble(located -> located.distanceKm)
+			.thenComparing(located -> located.entity.getDate(), nullsFirst(naturalOrder()))
+			.thenComparing(located -> located.entity.getId());
+
 	private final WeatherRepository weatherRepository;
 
+	private final WeatherRollups weatherRollups;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	private final Shards shards;
+
+	private final CacheManager cacheManager;
+
+	private final ReadRouting readRouting;
+
 	private final WeatherEntityDtoMapper mapper;
 
-	public WeatherServiceImpl(WeatherRepository weatherRepository) {
+	public WeatherServiceImpl(WeatherRepository weatherRepository, WeatherRollups weatherRollups, ApplicationEventPublisher eventPublisher,
+	                          Shards shards, CacheManager cacheManager, ReadRouting readRouting) {
 		this.weatherRepository = weatherRepository;
+		this.weatherRollups = weatherRollups;
+		this.eventPublisher = eventPublisher;
+		this.shards = shards;
+		this.cacheManager = cacheManager;
+		this.readRouting = readRouting;
 		this.mapper = Mappers.getMapper(WeatherEntityDtoMapper.class);
 	}
 
@@ -46,73 +139,641 @@ public class WeatherServiceImpl implements WeatherService {
 		if (request == null) {
 			return null;
 		}
+		request.checkReadings();
+		WeatherEntity entity = mapper.dtoToEntity(request);
+		return shards.execute(shards.shardOf(toCityKey(entity.getCity())), false, () -> {
+			WeatherEntity saved = weatherRepository.save(entity);
+			RollupChanges rollupChanges = new RollupChanges();
+			rollupChanges.add(saved);
+			weatherRollups.apply(rollupChanges);
+			WeatherChangedEvent event = new WeatherChangedEvent();
+			event.add(saved);
+			eventPublisher.publishEvent(event);
+			return mapper.entityToDto(saved);
+		});
+	}
+
+	@Override
+	public List<Integer> createAll(Iterable<WeatherDto> requests) {
+		long started = System.nanoTime();
+		Stream<WeatherEntity> entities = StreamSupport.stream(requests.spliterator(), false)
+				.filter(Objects::nonNull)
+				.map(this::toStoredEntity);
+		List<Integer> ids = shards.isSharded() ? persistAllSharded(entities) : persistAll(entities);
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		log.debug("Stored {} records in {} ms ({} rows/s)", ids.size(), elapsedMillis, ids.size() * 1000L / elapsedMillis);
+		return ids;
+	}
+
+	/*
+		The records of a batch are streamed, each is checked before it is mapped, within the transaction that stores the
+		batch, so a wrong record rolls back the records stored before it.
+	 */
+	private WeatherEntity toStoredEntity(WeatherDto request) {
+		request.checkReadings();
+		WeatherEntity entity = mapper.dtoToEntity(request);
+		// filled ahead of persist, the rollups need the summaries of records that are already cleared from the context
+		entity.fillDerivedColumns();
+		return entity;
+	}
+
+	private List<Integer> persistAll(Stream<WeatherEntity> entities) {
+		WeatherChangedEvent event = new WeatherChangedEvent();
+		RollupChanges rollupChanges = new RollupChanges();
+		List<Integer> ids = weatherRepository.persistAll(entities.peek(event::add).peek(rollupChanges::add).iterator());
+		weatherRollups.apply(rollupChanges);
+		if (!event.isEmpty()) {
+			eventPublisher.publishEvent(event);
+		}
+		return ids;
+	}
+
+	/*
+		Every shard stores its records in a transaction of its own, so the records are grouped by shard in memory and
+		a batch is atomic per shard only. When some shards fail, the ids of the records the others stored are reported
+		in a PartialWriteException.
+	 */
+	private List<Integer> persistAllSharded(Stream<WeatherEntity> entities) {
+		List<WeatherEntity> records = entities.collect(toList());
+		Map<Integer, List<WeatherEntity>> recordsByShard = records.stream()
+				.collect(groupingBy(entity -> shards.shardOf(entity.getCityKey()), TreeMap::new, toList()));
+		List<Integer> writtenShards = new ArrayList<>(recordsByShard.keySet());
+		List<RuntimeException> failures = shards.executeEach(writtenShards, false, shard -> persistAll(recordsByShard.get(shard).stream()));
+		Set<Integer> failedShards = new HashSet<>();
+		RuntimeException failure = null;
+		for (int i = 0; i < failures.size(); i++) {
+			if (failures.get(i) != null) {
+				failedShards.add(writtenShards.get(i));
+				failure = failure == null ? failures.get(i) : failure;
+			}
+		}
+		if (failure == null) {
+			return records.stream().map(WeatherEntity::getId).collect(toList());
+		}
+		if (failedShards.size() == writtenShards.size()) {
+			throw failure;
+		}
+		List<Integer> ids = records.stream()
+				.map(entity -> failedShards.contains(shards.shardOf(entity.getCityKey())) ? null : entity.getId())
+				.collect(toList());
+		throw new PartialWriteException("Records of shards " + failedShards + " were not stored", ids, failure);
+	}
+
+	/*
+		The version of a record that was not inserted is known to the database only, it is read for the returned record.
+	 */
+	@Override
+	public WeatherDto upsert(WeatherDto request) {
+		if (request == null) {
+			return null;
+		}
+		request.checkReadings();
+		request.checkNaturalKey();
 		WeatherEntity entity = mapper.dtoToEntity(request);
-		entity = weatherRepository.save(entity);
-		return mapper.entityToDto(entity);
+		return shards.execute(shards.shardOf(toCityKey(entity.getCity())), false, () -> {
+			if (upsertEntities(singletonList(entity)).get(0) != UpsertOutcome.INSERTED) {
+				entity.setVersion(weatherRepository.findVersionById(entity.getId()).orElse(0));
+			}
+			return mapper.entityToDto(entity);
+		});
 	}
 
 	@Override
+	public List<Integer> upsertAll(Iterable<WeatherDto> requests) {
+		List<WeatherDto> records = StreamSupport.stream(requests.spliterator(), false)
+				.filter(Objects::nonNull)
+				.collect(toList());
+		// all of them before any shard stores its records
+		for (WeatherDto record : records) {
+			record.checkReadings();
+			record.checkNaturalKey();
+		}
+		List<WeatherEntity> entities = records.stream().map(mapper::dtoToEntity).collect(toList());
+		if (!shards.isSharded()) {
+			upsertEntities(entities);
+			return entities.stream().map(WeatherEntity::getId).collect(toList());
+		}
+		Map<Integer, List<WeatherEntity>> recordsByShard = entities.stream()
+				.collect(groupingBy(entity -> shards.shardOf(toCityKey(entity.getCity())), TreeMap::new, toList()));
+		shards.executeAll(new ArrayList<>(recordsByShard.keySet()), false, shard -> upsertEntities(recordsByShard.get(shard)));
+		return entities.stream().map(WeatherEntity::getId).collect(toList());
+	}
+
+	/*
+		Each record costs a single statement that inserts it, or corrects the stored record of its natural key when the
+		reading differs, see WeatherRepositoryCustom.upsert. A repeated reading is left as it is. The records have a city
+		and a date, see WeatherDto.checkNaturalKey. The entities get the ids of the stored records, the outcomes are
+		returned in the same order.
+	 */
+	private List<UpsertOutcome> upsertEntities(List<WeatherEntity> entities) {
+		WeatherChangedEvent event = new WeatherChangedEvent();
+		RollupChanges rollupChanges = new RollupChanges();
+		List<WeatherEntity> corrected = new ArrayList<>();
+		List<UpsertOutcome> outcomes = new ArrayList<>(entities.size());
+		for (WeatherEntity entity : entities) {
+			entity.fillDerivedColumns();
+			UpsertOutcome outcome = weatherRepository.upsert(entity);
+			if (outcome == UpsertOutcome.INSERTED) {
+				rollupChanges.add(entity);
+				event.add(entity);
+			} else if (outcome == UpsertOutcome.CORRECTED) {
+				corrected.add(entity);
+				event.add(entity);
+			}
+			outcomes.add(outcome);
+		}
+		weatherRollups.apply(rollupChanges);
+		// after the additions, a recomputed rollup then counts every record of its period once
+		for (WeatherEntity record : corrected) {
+			weatherRollups.recompute(record.getCityKey(), record.getDate());
+		}
+		if (!event.isEmpty()) {
+			eventPublisher.publishEvent(event);
+		}
+		return outcomes;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = CACHE_WEATHER_BY_ID, key = "#id", condition = "#id != null",
+			unless = "#result == null || !@readRouting.isPrimary() || T(com.zcorum.weather.cache.CacheFillGuard).isStale()")
 	public WeatherDto findById(Integer id) {
 		if (id == null) {
 			return null;
 		}
-		Optional<WeatherEntity> entity = weatherRepository.findById(id);
-		return entity.map(mapper::entityToDto).orElse(null);
+		return shards.execute(shards.shardOfId(id), true, () -> {
+			Optional<WeatherEntity> entity = weatherRepository.findById(id);
+			return entity.map(mapper::entityToDto).orElse(null);
+		});
 	}
 
 	@Override
-	public List<WeatherDto> search(String date, String city, String sort) {
-		Specification<WeatherEntity> query = constructSearchQueryConditions(date, city);
+	@Transactional(readOnly = true)
+	public Integer findVersionById(Integer id) {
+		if (id == null) {
+			return null;
+		}
+		Cache cache = cacheManager.getCache(CACHE_WEATHER_BY_ID);
+		WeatherDto cached = cache == null ? null : cache.get(id, WeatherDto.class);
+		if (cached != null) {
+			return cached.getVersion() == null ? 0 : cached.getVersion();
+		}
+		return shards.execute(shards.shardOfId(id), true, () -> weatherRepository.findVersionById(id).orElse(null));
+	}
+
+	/*
+		Records in the cache of records by id are not read again. The others are read from the shards of their ids with
+		IN queries of at most MULTI_GET_CHUNK ids and cached like the records read by findById, that is only when read
+		from the primary and no change was committed meanwhile, see CacheFillGuard.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public WeatherMultiGetDto findAllById(Collection<Integer> ids) {
+		Set<Integer> requested = ids.stream().filter(Objects::nonNull).collect(toCollection(LinkedHashSet::new));
+		if (requested.size() > MAX_MULTI_GET) {
+			throw new WrongMultiGetRequestException("At most " + MAX_MULTI_GET + " ids can be fetched at once");
+		}
+		Cache cache = cacheManager.getCache(CACHE_WEATHER_BY_ID);
+		boolean cacheable = cache != null && readRouting.isPrimary();
+		Map<Integer, WeatherDto> found = new HashMap<>();
+		Map<Integer, List<Integer>> uncachedByShard = new TreeMap<>();
+		for (Integer id : requested) {
+			WeatherDto cached = cache == null ? null : cache.get(id, WeatherDto.class);
+			if (cached != null) {
+				found.put(id, cached);
+			} else {
+				uncachedByShard.computeIfAbsent(shards.shardOfId(id), shard -> new ArrayList<>()).add(id);
+			}
+		}
+		if (!uncachedByShard.isEmpty()) {
+			for (List<WeatherDto> records : shards.executeAll(new ArrayList<>(uncachedByShard.keySet()), true,
+					shard -> findAllByIdInChunks(uncachedByShard.get(shard)))) {
+				for (WeatherDto record : records) {
+					found.put(record.getId(), record);
+					if (cacheable && !CacheFillGuard.isStale()) {
+						cache.put(record.getId(), record);
+					}
+				}
+			}
+		}
+		List<WeatherDto> records = new ArrayList<>(found.size());
+		List<Integer> missingIds = new ArrayList<>();
+		for (Integer id : requested) {
+			WeatherDto record = found.get(id);
+			if (record != null) {
+				records.add(record);
+			} else {
+				missingIds.add(id);
+			}
+		}
+		return new WeatherMultiGetDto(records, missingIds);
+	}
+
+	private List<WeatherDto> findAllByIdInChunks(List<Integer> ids) {
+		List<WeatherDto> records = new ArrayList<>(ids.size());
+		for (int start = 0; start < ids.size(); start += MULTI_GET_CHUNK) {
+			List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + MULTI_GET_CHUNK));
+			for (WeatherEntity entity : weatherRepository.findAllById(chunk)) {
+				records.add(mapper.entityToDto(entity));
+			}
+		}
+		return records;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = CACHE_WEATHER_SEARCH, keyGenerator = SearchCacheKeyGenerator.NAME,
+			unless = "!@readRouting.isPrimary() || T(com.zcorum.weather.cache.CacheFillGuard).isStale()")
+	public List<WeatherDto> search(String date, String from, String to, String city, String sort) {
+		Specification<WeatherEntity> query = constructSearchQueryConditions(date, from, to, city);
+		Sort orderBy = constructOrderBy(sort);
+		List<List<WeatherDto>> results = shards.executeAll(searchedShards(city), true,
+				shard -> mapper.entitiesToDtos(weatherRepository.findAll(query, orderBy)));
+		return results.size() == 1 ? results.get(0) : ShardMerge.merge(results, constructDtoOrder(sort));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public int search(String date, String from, String to, String city, String sort, Consumer<WeatherDto> consumer) {
+		Specification<WeatherEntity> query = constructSearchQueryConditions(date, from, to, city);
+		Sort orderBy = constructOrderBy(sort);
+		AtomicInteger count = new AtomicInteger();
+		shards.stream(searchedShards(city), constructDtoOrder(sort), sink -> {
+			try (Stream<WeatherEntity> entities = weatherRepository.stream(query, orderBy)) {
+				Iterator<WeatherEntity> iterator = entities.iterator();
+				while (iterator.hasNext()) {
+					WeatherEntity entity = iterator.next();
+					sink.accept(mapper.entityToDto(entity));
+					// keep the persistence context empty so memory does not grow with the result size
+					weatherRepository.detach(entity);
+				}
+			}
+		}, record -> {
+			consumer.accept(record);
+			count.incrementAndGet();
+		});
+		return count.get();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public WeatherPageDto search(String date, String from, String to, String city, String sort, int limit, String after) {
+		if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+			throw new WrongPageRequestException("Limit must be between 1 and " + MAX_PAGE_LIMIT);
+		}
+		String pageSort = normalizeSort(sort);
+		Specification<WeatherEntity> query = constructSearchQueryConditions(date, from, to, city);
+		if (!StringUtils.isEmpty(after)) {
+			query = query.and(constructSeekConditions(pageSort, PageToken.decode(after)));
+		}
+		Specification<WeatherEntity> pageQuery = query;
 		Sort orderBy = constructOrderBy(sort);
-		return mapper.entitiesToDtos(weatherRepository.findAll(query, orderBy));
+		// one extra record tells whether there is a next page
+		List<List<WeatherEntity>> results = shards.executeAll(searchedShards(city), true,
+				shard -> weatherRepository.findAll(pageQuery, orderBy, limit + 1));
+		List<WeatherEntity> entities = results.size() == 1 ? results.get(0) : ShardMerge.merge(results, constructEntityOrder(sort));
+		String nextPageToken = null;
+		if (entities.size() > limit) {
+			entities = entities.subList(0, limit);
+			WeatherEntity last = entities.get(limit - 1);
+			nextPageToken = new PageToken(pageSort, last.getId(), sortValue(pageSort, last)).encode();
+		}
+		return new WeatherPageDto(mapper.entitiesToDtos(entities), nextPageToken);
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	public List<WeatherDto> near(double lat, double lon, double radiusKm, String date) {
+		checkLocation(lat, lon);
+		if (!(radiusKm > 0)) {
+			throw new WrongLocationRequestException("Radius must be positive");
+		}
+		List<LocalDate> dates = StringUtils.isEmpty(date) ? emptyList() : Dates.parseList(date);
+		List<Location> locations = findLocations(lat, lon, Geohash.covering(lat, lon, radiusKm), dates).stream()
+				.filter(location -> location.distanceKm <= radiusKm)
+				.collect(toList());
+		return findLocated(lat, lon, locations, dates, radiusKm).stream()
+				.map(located -> mapper.entityToDto(located.entity))
+				.collect(toList());
+	}
+
+	/*
+		Searches the neighbourhoods of ever coarser geohash cells until the nearest locations holding k records lie
+		within the radius a neighbourhood is sure to cover, any record outside the neighbourhood is then farther than
+		those. Only the distinct locations are read for that, then the records of the nearest ones, so the records read
+		grow with k rather than with the records around the point. Only a point with fewer than k records around it on
+		the globe reads every location.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<WeatherDto> nearest(double lat, double lon, int k, String date) {
+		checkLocation(lat, lon);
+		if (k < 1 || k > MAX_NEAREST) {
+			throw new WrongLocationRequestException("Number of records must be between 1 and " + MAX_NEAREST);
+		}
+		List<LocalDate> dates = StringUtils.isEmpty(date) ? emptyList() : Dates.parseList(date);
+		List<Location> nearest = null;
+		for (int precision = NEAREST_START_PRECISION; precision > 0 && nearest == null; precision--) {
+			List<Location> candidates = nearestLocations(findLocations(lat, lon, Geohash.neighbourhood(lat, lon, precision), dates), k);
+			if (candidates != null && candidates.get(candidates.size() - 1).distanceKm <= Geohash.coveredRadiusKm(lat, lon, precision)) {
+				nearest = candidates;
+			}
+		}
+		if (nearest == null) {
+			List<Location> all = findLocations(lat, lon, emptyList(), dates);
+			nearest = Optional.ofNullable(nearestLocations(all, k)).orElse(all);
+		}
+		double farthestKm = nearest.isEmpty() ? 0 : nearest.get(nearest.size() - 1).distanceKm;
+		return findLocated(lat, lon, nearest, dates, farthestKm).stream()
+				.limit(k)
+				.map(candidate -> mapper.entityToDto(candidate.entity))
+				.collect(toList());
+	}
+
+	/*
+		The nearest of the locations, ordered by distance, that hold at least k records, together with the locations as
+		near as the farthest of them, whose records tie with its records. Null when all of them hold fewer records.
+	 */
+	private static List<Location> nearestLocations(List<Location> locations, int k) {
+		long records = 0;
+		for (int i = 0; i < locations.size(); i++) {
+			records += locations.get(i).records;
+			if (records >= k) {
+				int end = i + 1;
+				while (end < locations.size() && locations.get(end).distanceKm == locations.get(i).distanceKm) {
+					end++;
+				}
+				return locations.subList(0, end);
+			}
+		}
+		return null;
+	}
+
+	private void checkLocation(double lat, double lon) {
+		if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+			throw new WrongLocationRequestException("Latitude must be between -90 and 90 and longitude between -180 and 180");
+		}
+	}
+
+	/*
+		Records of a city are on one shard, but nearby cities can be on any shard, so all shards are searched. The
+		locations are ordered by distance and know their shard.
+	 */
+	private List<Location> findLocations(double lat, double lon, List<String> cells, List<LocalDate> dates) {
+		List<Integer> searched = shards.all();
+		List<List<GeohashLocation>> results = shards.executeAll(searched, true, shard -> weatherRepository.findLocationsByGeohashPrefixes(cells, dates));
+		List<Location> locations = new ArrayList<>();
+		for (int i = 0; i < searched.size(); i++) {
+			for (GeohashLocation location : results.get(i)) {
+				locations.add(new Location(searched.get(i), location, Geohash.distanceKm(lat, lon, location.getLat(), location.getLon())));
+			}
+		}
+		locations.sort(comparingDouble(location -> location.distanceKm));
+		return locations;
+	}
+
+	/*
+		The records of the locations, read from their shards only. A geohash cell of full precision may hold records of
+		another location, which are dropped beyond maxKm.
+	 */
+	private List<Located> findLocated(double lat, double lon, List<Location> locations, List<LocalDate> dates, double maxKm) {
+		Map<Integer, Set<String>> geohashesByShard = locations.stream()
+				.collect(groupingBy(location -> location.shard, TreeMap::new, mapping(location -> location.geohash, toSet())));
+		List<Located> located = new ArrayList<>();
+		if (geohashesByShard.isEmpty()) {
+			return located;
+		}
+		for (List<WeatherEntity> entities : shards.executeAll(new ArrayList<>(geohashesByShard.keySet()), true,
+				shard -> weatherRepository.findByGeohashes(geohashesByShard.get(shard), dates))) {
+			for (WeatherEntity entity : entities) {
+				double distanceKm = Geohash.distanceKm(lat, lon, entity.getLat(), entity.getLon());
+				if (distanceKm <= maxKm) {
+					located.add(new Located(entity, distanceKm));
+				}
+			}
+		}
+		located.sort(LOCATED_ORDER);
+		return located;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<WeatherStatsDto> stats(String city, String from, String to, String granularity) {
+		StatsGranularity statsGranularity = parseGranularity(granularity);
+		List<String> cityKeys = StringUtils.isEmpty(city) ? emptyList() : splitCities(city);
+		LocalDate fromDate = StringUtils.isEmpty(from) ? null : Dates.parse(from);
+		LocalDate toDate = StringUtils.isEmpty(to) ? null : Dates.parse(to);
+		List<List<TemperatureAggregate>> results = shards.executeAll(shards.shardsOf(cityKeys), true, shard -> {
+			if (statsGranularity == StatsGranularity.DAY) {
+				return weatherRepository.aggregateTemperatures(cityKeys, fromDate, toDate, statsGranularity);
+			}
+			return weatherRollups.aggregate(cityKeys, fromDate, toDate, statsGranularity);
+		});
+		// a city is stored on one shard only, so the shards never return the same city and period
+		List<TemperatureAggregate> aggregates = results.size() == 1 ? results.get(0) : ShardMerge.merge(results,
+				comparing(TemperatureAggregate::getCityKey, nullsFirst(naturalOrder())).thenComparing(TemperatureAggregate::getPeriodStart));
+		return aggregates.stream()
+				.map(aggregate -> new WeatherStatsDto(
+						aggregate.getCity(),
+						statsGranularity.formatPeriod(aggregate.getPeriodStart()),
+						aggregate.getMin(),
+						aggregate.getMax(),
+						aggregate.getSum() / aggregate.getCount(),
+						aggregate.getCount()))
+				.collect(toList());
+	}
+
+	private StatsGranularity parseGranularity(String granularity) {
+		if (StringUtils.isEmpty(granularity)) {
+			return StatsGranularity.DAY;
+		}
+		try {
+			return StatsGranularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new WrongStatsRequestException("Unknown granularity " + granularity);
+		}
+	}
+
+	/*
+		Records are ordered by the sort field and then by id, so the one with the smaller id comes first on equal values.
+		Cities are ordered by their lower-cased key, so that the order does not depend on the case sensitivity of the
+		collation of the database.
+	 */
 	private Sort constructOrderBy(String sort) {
+		String normalized = normalizeSort(sort);
 		Sort orderBy = Sort.by(Sort.Direction.ASC, FIELD_ID);
-		if (!StringUtils.isEmpty(sort)) {
-			Sort.Direction direction = sort.startsWith("-") ? Sort.Direction.DESC : Sort.Direction.ASC;
-			sort = sort.replaceAll("-", "");
-			if (!sort.equals(FIELD_CITY) && !sort.equals(FIELD_DATE)) {
-				throw new RuntimeException("Unknown sort field " + sort);
-			}
-			orderBy = Sort.by(direction, sort);
+		if (!normalized.equals(FIELD_ID)) {
+			orderBy = Sort.by(directionOf(normalized), columnOf(normalized)).and(orderBy);
 		}
 		return orderBy;
 	}
 
-	private Specification<WeatherEntity> constructSearchQueryConditions(String date, String city) {
+	private Comparator<WeatherDto> constructDtoOrder(String sort) {
+		return constructOrder(sort, WeatherDto::getId, WeatherDto::getDate, dto -> toCityKey(dto.getCity()));
+	}
+
+	private Comparator<WeatherEntity> constructEntityOrder(String sort) {
+		return constructOrder(sort, WeatherEntity::getId, WeatherEntity::getDate, WeatherEntity::getCityKey);
+	}
+
+	/*
+		The ordering of constructOrderBy, used to merge the sorted results of several shards. Nulls sort before any value
+		as in MySQL and H2. City keys compare by their Java ordering, which is the one of lower-cased names in binary and
+		in the default MySQL collations as long as the names are ASCII; see the README for other names.
+	 */
+	private <T> Comparator<T> constructOrder(String sort, Function<T, Integer> id, Function<T, LocalDate> date, Function<T, String> cityKey) {
+		String normalized = normalizeSort(sort);
+		Comparator<T> byId = comparing(id);
+		if (normalized.equals(FIELD_ID)) {
+			return byId;
+		}
+		Comparator<T> byField = fieldOf(normalized).equals(FIELD_DATE)
+				? comparing(date, nullsFirst(naturalOrder()))
+				: comparing(cityKey, nullsFirst(naturalOrder()));
+		if (directionOf(normalized) == Sort.Direction.DESC) {
+			byField = byField.reversed();
+		}
+		return byField.thenComparing(byId);
+	}
+
+	private String normalizeSort(String sort) {
+		if (StringUtils.isEmpty(sort)) {
+			return FIELD_ID;
+		}
+		String field = fieldOf(sort);
+		if (!field.equals(FIELD_CITY) && !field.equals(FIELD_DATE)) {
+			throw new RuntimeException("Unknown sort field " + field);
+		}
+		return directionOf(sort) == Sort.Direction.DESC ? "-" + field : field;
+	}
+
+	private Sort.Direction directionOf(String sort) {
+		return sort.startsWith("-") ? Sort.Direction.DESC : Sort.Direction.ASC;
+	}
+
+	private String fieldOf(String sort) {
+		return sort.replaceAll("-", "");
+	}
+
+	// the attribute a sort field orders by
+	private String columnOf(String sort) {
+		String field = fieldOf(sort);
+		return field.equals(FIELD_CITY) ? FIELD_CITY_KEY : field;
+	}
+
+	private String sortValue(String sort, WeatherEntity entity) {
+		switch (fieldOf(sort)) {
+			case FIELD_DATE:
+				return entity.getDate() == null ? null : Dates.format(entity.getDate());
+			case FIELD_CITY:
+				return entity.getCityKey();
+			default:
+				return null;
+		}
+	}
+
+	/*
+		Seeks past the last record of the previous page using the (sort field, id) index instead of an OFFSET.
+		Nulls sort before any value, in the same way MySQL and H2 order them.
+	 */
+	@SuppressWarnings("unchecked")
+	private Specification<WeatherEntity> constructSeekConditions(String sort, PageToken token) {
+		if (!token.getSort().equals(sort)) {
+			throw new WrongPageRequestException("Page token was issued for sort " + token.getSort() + ", not " + sort);
+		}
+		Object value = token.getValue() == null || !fieldOf(sort).equals(FIELD_DATE) ? token.getValue() : Dates.parse(token.getValue());
 		return (root, cq, cb) -> {
-			Predicate predicate = null;
-			if (!StringUtils.isEmpty(date)) {
-				predicate = cb.equal(root.get(FIELD_DATE), convertStrToDate(date));
-			}
-			if (!StringUtils.isEmpty(city)) {
-				List<String> cities = splitCities(city);
-				Predicate condition;
-				if (cities.size() == 1) {
-					condition = cb.equal(cb.lower(root.get(FIELD_CITY)), city.toLowerCase());
-				} else {
-					condition = cb.lower(root.get(FIELD_CITY)).in(cities);
-				}
-				predicate = predicate == null ? condition : cb.and(predicate, condition);
+			Predicate idAfter = cb.greaterThan(root.get(FIELD_ID), token.getId());
+			if (sort.equals(FIELD_ID)) {
+				return idAfter;
+			}
+			Path<Comparable<Object>> field = root.get(columnOf(sort));
+			boolean descending = directionOf(sort) == Sort.Direction.DESC;
+			if (value == null) {
+				Predicate sameValue = cb.and(cb.isNull(field), idAfter);
+				return descending ? sameValue : cb.or(sameValue, cb.isNotNull(field));
 			}
-			return predicate;
+			Comparable<Object> comparable = (Comparable<Object>) value;
+			Predicate sameValue = cb.and(cb.equal(field, comparable), idAfter);
+			if (descending) {
+				return cb.or(cb.lessThan(field, comparable), sameValue, cb.isNull(field));
+			}
+			return cb.or(cb.greaterThan(field, comparable), sameValue);
 		};
 	}
 
+	/*
+		Dates turn into = / IN and the range into BETWEEN, so that both seek the (city_key, date, id) and (date, id) indexes.
+	 */
+	private Specification<WeatherEntity> constructSearchQueryConditions(String date, String from, String to, String city) {
+		// parsed eagerly so a wrong date is reported before any response is written
+		List<LocalDate> dates = StringUtils.isEmpty(date) ? emptyList() : Dates.parseList(date);
+		LocalDate fromDate = StringUtils.isEmpty(from) ? null : Dates.parse(from);
+		LocalDate toDate = StringUtils.isEmpty(to) ? null : Dates.parse(to);
+		List<String> cities = StringUtils.isEmpty(city) ? emptyList() : splitCities(city);
+		return (root, cq, cb) -> {
+			List<Predicate> predicates = new ArrayList<>();
+			Path<LocalDate> datePath = root.get(FIELD_DATE);
+			if (dates.size() == 1) {
+				predicates.add(cb.equal(datePath, dates.get(0)));
+			} else if (!dates.isEmpty()) {
+				predicates.add(datePath.in(dates));
+			}
+			if (fromDate != null && toDate != null) {
+				predicates.add(cb.between(datePath, fromDate, toDate));
+			} else if (fromDate != null) {
+				predicates.add(cb.greaterThanOrEqualTo(datePath, fromDate));
+			} else if (toDate != null) {
+				predicates.add(cb.lessThanOrEqualTo(datePath, toDate));
+			}
+			if (cities.size() == 1) {
+				predicates.add(cb.equal(root.get(FIELD_CITY_KEY), cities.get(0)));
+			} else if (!cities.isEmpty()) {
+				predicates.add(root.get(FIELD_CITY_KEY).in(cities));
+			}
+			return predicates.isEmpty() ? null : cb.and(predicates.toArray(new Predicate[0]));
+		};
+	}
+
+	private List<Integer> searchedShards(String city) {
+		return shards.shardsOf(StringUtils.isEmpty(city) ? emptyList() : splitCities(city));
+	}
+
 	private List<String> splitCities(String city) {
 		String[] split = city.split(",");
 		if (split.length == 1) {
-			return singletonList(city);
+			return singletonList(toCityKey(city));
 		}
-		return Arrays.stream(split).map(String::toLowerCase).collect(toList());
+		return Arrays.stream(split).map(WeatherEntity::toCityKey).collect(toList());
 	}
 
-	private Date convertStrToDate(String date) {
-		try {
-			return new SimpleDateFormat(yyyy_MM_dd).parse(date);
-		} catch (ParseException e) {
-			throw new WrongDateFormatException("Unable to parse str " + date + " to date", e);
+	private static class Location {
+
+		private final int shard;
+
+		private final String geohash;
+
+		private final long records;
+
+		private final double distanceKm;
+
+		private Location(int shard, GeohashLocation location, double distanceKm) {
+			this.shard = shard;
+			this.geohash = location.getGeohash();
+			this.records = location.getRecords();
+			this.distanceKm = distanceKm;
+		}
+	}
+
+	private static class Located {
+
+		private final WeatherEntity entity;
+
+		private final double distanceKm;
+
+		private Located(WeatherEntity entity, double distanceKm) {
+			this.entity = entity;
+			this.distanceKm = distanceKm;
 		}
 	}
 
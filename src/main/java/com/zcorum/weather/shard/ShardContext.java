@@ -0,0 +1,33 @@
+package com.zcorum.weather.shard;
+
+/*
+	The shard the current thread works on. Read by ShardRoutingDataSource when a connection is fetched and by
+	ShardedSequenceGenerator when an id is assigned, set through Shards.
+ */
+public final class ShardContext {
+
+	private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+	private ShardContext() {
+	}
+
+	public static int current() {
+		Integer shard = CURRENT.get();
+		return shard == null ? 0 : shard;
+	}
+
+	static Integer enter(int shard) {
+		Integer previous = CURRENT.get();
+		CURRENT.set(shard);
+		return previous;
+	}
+
+	static void exit(Integer previous) {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+
+}
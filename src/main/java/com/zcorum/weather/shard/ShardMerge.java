@@ -0,0 +1,77 @@
+package com.zcorum.weather.shard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/*
+	Merges results of several shards, each already sorted in the given order, into one sorted result.
+	Equal elements keep the order of their sources.
+ */
+public final class ShardMerge {
+
+	private ShardMerge() {
+	}
+
+	public static <T> List<T> merge(List<? extends List<? extends T>> sources, Comparator<? super T> order) {
+		List<Iterator<? extends T>> iterators = new ArrayList<>(sources.size());
+		int size = 0;
+		for (List<? extends T> source : sources) {
+			iterators.add(source.iterator());
+			size += source.size();
+		}
+		List<T> merged = new ArrayList<>(size);
+		mergeSorted(iterators, order).forEachRemaining(merged::add);
+		return merged;
+	}
+
+	public static <T> Iterator<T> mergeSorted(List<? extends Iterator<? extends T>> sources, Comparator<? super T> order) {
+		Comparator<Head<T>> headOrder = Comparator.comparing((Head<T> head) -> head.value, order).thenComparingInt(head -> head.source);
+		PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(1, sources.size()), headOrder);
+		for (int source = 0; source < sources.size(); source++) {
+			Iterator<? extends T> iterator = sources.get(source);
+			if (iterator.hasNext()) {
+				heads.add(new Head<>(iterator.next(), iterator, source));
+			}
+		}
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return !heads.isEmpty();
+			}
+
+			@Override
+			public T next() {
+				Head<T> head = heads.poll();
+				if (head == null) {
+					throw new NoSuchElementException();
+				}
+				T value = head.value;
+				if (head.iterator.hasNext()) {
+					heads.add(new Head<>(head.iterator.next(), head.iterator, head.source));
+				}
+				return value;
+			}
+		};
+	}
+
+	private static final class Head<T> {
+
+		private final T value;
+
+		private final Iterator<? extends T> iterator;
+
+		private final int source;
+
+		Head(T value, Iterator<? extends T> iterator, int source) {
+			this.value = value;
+			this.iterator = iterator;
+			this.source = source;
+		}
+
+	}
+
+}
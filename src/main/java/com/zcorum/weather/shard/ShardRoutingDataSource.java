@@ -0,0 +1,32 @@
+package com.zcorum.weather.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+	Hands out connections of the shard of the current thread, see ShardContext. Like the read/write routing, it has to be
+	wrapped in a LazyConnectionDataSourceProxy so that the shard is looked up when the first statement is run.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+	public ShardRoutingDataSource(List<? extends DataSource> shards) {
+		Map<Object, Object> targets = new HashMap<>();
+		for (int shard = 0; shard < shards.size(); shard++) {
+			targets.put(shard, shards.get(shard));
+		}
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(shards.get(0));
+		// a shard that is not configured is an error, not a fallback to the first one
+		setLenientFallback(false);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return ShardContext.current();
+	}
+
+}
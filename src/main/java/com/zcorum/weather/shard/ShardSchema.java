@@ -0,0 +1,46 @@
+package com.zcorum.weather.shard;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import java.util.Map;
+
+/*
+	Hibernate applies spring.jpa.hibernate.ddl-auto to the first shard only, the one its bootstrap connections go to.
+	Registered as an integrator to get hold of the mapping, so that the same schema action can be run on the other shards.
+ */
+public class ShardSchema implements Integrator {
+
+	private Metadata metadata;
+
+	private SessionFactoryServiceRegistry serviceRegistry;
+
+	@Override
+	public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+		this.metadata = metadata;
+		this.serviceRegistry = serviceRegistry;
+	}
+
+	@Override
+	public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+		this.metadata = null;
+		this.serviceRegistry = null;
+	}
+
+	public void applyToOtherShards(Shards shards) {
+		if (metadata == null) {
+			throw new IllegalStateException("The entity manager factory is not built yet");
+		}
+		Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+		for (int shard = 1; shard < shards.getCount(); shard++) {
+			// drops are not registered, the shards are left as they are on shutdown
+			shards.on(shard, () -> SchemaManagementToolCoordinator.process(metadata, serviceRegistry, settings, action -> {
+			}));
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.zcorum.weather.shard;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerationException;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/*
+	The pooled sequence generator with one optimizer per shard, each taking its values from the sequence of its shard.
+	Ids are encoded as value * shard count + shard, so that the shard of a record is known from its id alone. With a
+	single shard the ids are the plain sequence values. As the ids depend on the shard count, the shards can not be
+	resized in place, see ShardLayoutCheck.
+ */
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+	// hibernate property holding the number of shards, set by ShardingConfig
+	public static final String SHARD_COUNT = "weather.shard-count";
+
+	private SequenceStyleGenerator[] shardGenerators;
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		super.configure(type, params, serviceRegistry);
+		Object setting = serviceRegistry.getService(ConfigurationService.class).getSettings().get(SHARD_COUNT);
+		int count = setting == null ? 1 : Integer.parseInt(setting.toString());
+		shardGenerators = new SequenceStyleGenerator[count];
+		shardGenerators[0] = this;
+		for (int shard = 1; shard < count; shard++) {
+			shardGenerators[shard] = new SequenceStyleGenerator();
+			shardGenerators[shard].configure(type, params, serviceRegistry);
+		}
+	}
+
+	@Override
+	public void registerExportables(Database database) {
+		super.registerExportables(database);
+		// the sequence is already registered, the other shards only prepare their statements
+		for (int shard = 1; shard < shardGenerators.length; shard++) {
+			shardGenerators[shard].registerExportables(database);
+		}
+	}
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		if (shardGenerators.length == 1) {
+			return super.generate(session, object);
+		}
+		int shard = ShardContext.current();
+		Serializable value = shard == 0 ? super.generate(session, object) : shardGenerators[shard].generate(session, object);
+		long id = ((Number) value).longValue() * shardGenerators.length + shard;
+		if (id > Integer.MAX_VALUE) {
+			throw new IdentifierGenerationException("The ids of shard " + shard + " are exhausted: sequence value " + value
+					+ " gives the id " + id + ", larger than the largest integer id");
+		}
+		return (int) id;
+	}
+
+}
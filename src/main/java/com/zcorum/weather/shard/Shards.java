@@ -0,0 +1,328 @@
+package com.zcorum.weather.shard;
+
+import com.zcorum.weather.sql.SqlProfile;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/*
+	Records are spread over the configured shards by a hash of their city key, a record id tells its shard (see
+	ShardedSequenceGenerator). Work on a shard runs in a transaction of its own, started after the shard of the thread
+	is set, and work on several shards runs in parallel. With a single shard, work runs as is in the current transaction.
+	Work on the shard threads carries the SqlProfile and the statement origin of the calling thread.
+ */
+public class Shards implements DisposableBean {
+
+	// records of a streamed search waiting per shard for the merge
+	private static final int STREAM_BUFFER = 256;
+
+	private final int count;
+
+	private final TransactionTemplate readTransaction;
+
+	private final TransactionTemplate writeTransaction;
+
+	private final ExecutorService executor;
+
+	public Shards(int count, PlatformTransactionManager transactionManager) {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		this.count = count;
+		if (count == 1) {
+			this.readTransaction = null;
+			this.writeTransaction = null;
+			this.executor = null;
+			return;
+		}
+		// the caller's transaction has not fetched a connection, the shard work must not join it
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+		this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.readTransaction = new TransactionTemplate(transactionManager);
+		this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.readTransaction.setReadOnly(true);
+		AtomicInteger threads = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "shard-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = Executors.newCachedThreadPool(threadFactory);
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public boolean isSharded() {
+		return count > 1;
+	}
+
+	public List<Integer> all() {
+		List<Integer> shards = new ArrayList<>(count);
+		for (int shard = 0; shard < count; shard++) {
+			shards.add(shard);
+		}
+		return shards;
+	}
+
+	public int shardOf(String cityKey) {
+		return cityKey == null ? 0 : Math.floorMod(cityKey.hashCode(), count);
+	}
+
+	public int shardOfId(int id) {
+		return Math.floorMod(id, count);
+	}
+
+	/*
+		The shards holding the given cities, all shards when no city is given.
+	 */
+	public List<Integer> shardsOf(Collection<String> cityKeys) {
+		if (cityKeys.isEmpty()) {
+			return all();
+		}
+		return cityKeys.stream().map(this::shardOf).distinct().sorted().collect(toList());
+	}
+
+	/*
+		Runs the work with the shard of the current thread set, without starting a transaction.
+	 */
+	public void on(int shard, Runnable work) {
+		Integer previous = ShardContext.enter(shard);
+		try {
+			work.run();
+		} finally {
+			ShardContext.exit(previous);
+		}
+	}
+
+	public <T> T execute(int shard, boolean readOnly, Supplier<T> work) {
+		if (!isSharded()) {
+			return work.get();
+		}
+		Integer previous = ShardContext.enter(shard);
+		try {
+			return (readOnly ? readTransaction : writeTransaction).execute(status -> work.get());
+		} finally {
+			ShardContext.exit(previous);
+		}
+	}
+
+	/*
+		Runs the work on every given shard, in parallel when there are several, and returns the results in shard order.
+	 */
+	public <T> List<T> executeAll(List<Integer> shards, boolean readOnly, IntFunction<T> work) {
+		return runAll(shards, shard -> execute(shard, readOnly, () -> work.apply(shard)));
+	}
+
+	/*
+		Like executeAll, but the failure of a shard does not fail the others: returns the exception of every given shard,
+		null for the shards whose work committed, in shard order.
+	 */
+	public List<RuntimeException> executeEach(List<Integer> shards, boolean readOnly, IntConsumer work) {
+		return runAll(shards, shard -> {
+			try {
+				execute(shard, readOnly, () -> {
+					work.accept(shard);
+					return null;
+				});
+				return null;
+			} catch (RuntimeException e) {
+				return e;
+			}
+		});
+	}
+
+	private <T> List<T> runAll(List<Integer> shards, IntFunction<T> task) {
+		if (shards.size() == 1) {
+			return singletonList(task.apply(shards.get(0)));
+		}
+		SqlProfile.Context sqlProfile = SqlProfile.capture();
+		List<Future<T>> futures = shards.stream()
+				.map(shard -> executor.submit(() -> sqlProfile.run(() -> task.apply(shard))))
+				.collect(toList());
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(await(future));
+			}
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+		return results;
+	}
+
+	/*
+		Runs the producer on every given shard in parallel, each in a read-only transaction, and hands the produced
+		items to the consumer on the calling thread in the given order. Every producer must produce its items in that
+		order. Memory use is bounded by STREAM_BUFFER items per shard.
+	 */
+	public <T> void stream(List<Integer> shards, Comparator<? super T> order, Consumer<Consumer<T>> producer, Consumer<T> consumer) {
+		if (shards.size() == 1) {
+			execute(shards.get(0), true, () -> {
+				producer.accept(consumer);
+				return null;
+			});
+			return;
+		}
+		SqlProfile.Context sqlProfile = SqlProfile.capture();
+		List<ShardQueue<T>> queues = new ArrayList<>(shards.size());
+		for (int shard : shards) {
+			ShardQueue<T> queue = new ShardQueue<>();
+			queues.add(queue);
+			executor.execute(() -> {
+				try {
+					sqlProfile.run(() -> execute(shard, true, () -> {
+						producer.accept(queue::put);
+						return null;
+					}));
+					queue.finish(ShardQueue.END);
+				} catch (Throwable e) {
+					queue.finish(new Failure(e));
+				}
+			});
+		}
+		try {
+			ShardMerge.mergeSorted(queues, order).forEachRemaining(consumer);
+		} finally {
+			queues.forEach(ShardQueue::cancel);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a shard", e);
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IllegalStateException("Shard work failed", cause);
+	}
+
+	private static final class Failure {
+
+		private final Throwable cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause;
+		}
+
+	}
+
+	/*
+		Hands the items of a shard from its producer thread to the merging thread. A producer whose queue was cancelled,
+		because the merge failed or stopped, gets a CancellationException on its next item.
+	 */
+	private static final class ShardQueue<T> implements Iterator<T> {
+
+		private static final Object END = new Object();
+
+		private final BlockingQueue<Object> items = new ArrayBlockingQueue<>(STREAM_BUFFER);
+
+		private volatile boolean cancelled;
+
+		private Object next;
+
+		void put(T item) {
+			offer(item);
+		}
+
+		void finish(Object marker) {
+			try {
+				offer(marker);
+			} catch (CancellationException e) {
+				// nobody is waiting for the end of a cancelled queue
+			}
+		}
+
+		void cancel() {
+			cancelled = true;
+			items.clear();
+		}
+
+		private void offer(Object item) {
+			try {
+				do {
+					if (cancelled) {
+						throw new CancellationException("Shard stream was cancelled");
+					}
+				} while (!items.offer(item, 100, TimeUnit.MILLISECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Shard stream was interrupted");
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = items.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for a shard", e);
+				}
+			}
+			if (next instanceof Failure) {
+				throw rethrow(((Failure) next).cause);
+			}
+			return next != END;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T item = (T) next;
+			next = null;
+			return item;
+		}
+
+	}
+
+}
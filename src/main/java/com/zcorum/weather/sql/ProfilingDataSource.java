@@ -0,0 +1,234 @@
+package com.zcorum.weather.sql;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+	Times every statement executed through the data source, from execute until its result set is closed, so that the
+	fetch of streamed results is included. Connections, statements and result sets are wrapped in JDK proxies.
+ */
+public class ProfilingDataSource extends DelegatingDataSource {
+
+	private final SqlProfiler profiler;
+
+	public ProfilingDataSource(DataSource targetDataSource, SqlProfiler profiler) {
+		super(targetDataSource);
+		this.profiler = profiler;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(super.getConnection(username, password));
+	}
+
+	private Connection wrap(Connection connection) {
+		return proxy(Connection.class, new ConnectionHandler(connection));
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ProfilingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	/*
+		Proxies are equal only to themselves, Hibernate keeps statements and result sets in hash based collections.
+	 */
+	private abstract static class DelegatingHandler implements InvocationHandler {
+
+		@Override
+		public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return handle(method, args);
+			}
+		}
+
+		abstract Object handle(Method method, Object[] args) throws Throwable;
+
+	}
+
+	private final class ConnectionHandler extends DelegatingHandler {
+
+		private final Connection connection;
+
+		ConnectionHandler(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		Object handle(Method method, Object[] args) throws Throwable {
+			Object result = ProfilingDataSource.invoke(connection, method, args);
+			switch (method.getName()) {
+				case "prepareStatement":
+					return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+				case "prepareCall":
+					return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+				case "createStatement":
+					return proxy(Statement.class, new StatementHandler((Statement) result, null));
+				default:
+					return result;
+			}
+		}
+
+	}
+
+	private final class StatementHandler extends DelegatingHandler {
+
+		private final Statement statement;
+
+		private String sql;
+
+		private final Map<Integer, String> parameterTypes = new TreeMap<>();
+
+		private long started;
+
+		private long rows;
+
+		private boolean executing;
+
+		StatementHandler(Statement statement, String sql) {
+			this.statement = statement;
+			this.sql = sql;
+		}
+
+		@Override
+		Object handle(Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+				parameterTypes.put((Integer) args[0], name.substring(3));
+				return ProfilingDataSource.invoke(statement, method, args);
+			}
+			switch (name) {
+				case "clearParameters":
+					parameterTypes.clear();
+					return ProfilingDataSource.invoke(statement, method, args);
+				case "executeQuery":
+					return executeQuery(method, args);
+				case "execute":
+				case "executeUpdate":
+				case "executeLargeUpdate":
+				case "executeBatch":
+				case "executeLargeBatch":
+					return executeUpdate(method, args);
+				case "close":
+					finish();
+					return ProfilingDataSource.invoke(statement, method, args);
+				default:
+					return ProfilingDataSource.invoke(statement, method, args);
+			}
+		}
+
+		private Object executeQuery(Method method, Object[] args) throws Throwable {
+			start(args);
+			ResultSet resultSet;
+			try {
+				resultSet = (ResultSet) ProfilingDataSource.invoke(statement, method, args);
+			} catch (Throwable e) {
+				finish();
+				throw e;
+			}
+			return proxy(ResultSet.class, new ResultSetHandler(resultSet, this));
+		}
+
+		private Object executeUpdate(Method method, Object[] args) throws Throwable {
+			start(args);
+			try {
+				Object result = ProfilingDataSource.invoke(statement, method, args);
+				if (result instanceof Number) {
+					rows = ((Number) result).longValue();
+				} else if (result instanceof int[]) {
+					for (int count : (int[]) result) {
+						rows += Math.max(count, 0);
+					}
+				} else if (result instanceof long[]) {
+					for (long count : (long[]) result) {
+						rows += Math.max(count, 0);
+					}
+				} else if (Boolean.FALSE.equals(result)) {
+					rows = statement.getUpdateCount();
+				}
+				return result;
+			} finally {
+				finish();
+			}
+		}
+
+		private void start(Object[] args) {
+			finish();
+			if (args != null && args.length > 0 && args[0] instanceof String) {
+				sql = (String) args[0];
+			}
+			started = System.nanoTime();
+			rows = 0;
+			executing = true;
+		}
+
+		private void finish() {
+			if (executing) {
+				executing = false;
+				profiler.record(sql, String.join(", ", parameterTypes.values()), rows, System.nanoTime() - started);
+			}
+		}
+
+	}
+
+	private static final class ResultSetHandler extends DelegatingHandler {
+
+		private final ResultSet resultSet;
+
+		private final StatementHandler statement;
+
+		ResultSetHandler(ResultSet resultSet, StatementHandler statement) {
+			this.resultSet = resultSet;
+			this.statement = statement;
+		}
+
+		@Override
+		Object handle(Method method, Object[] args) throws Throwable {
+			Object result = ProfilingDataSource.invoke(resultSet, method, args);
+			switch (method.getName()) {
+				case "next":
+					if (Boolean.TRUE.equals(result)) {
+						statement.rows++;
+					}
+					break;
+				case "close":
+					statement.finish();
+					break;
+				default:
+			}
+			return result;
+		}
+
+	}
+
+}
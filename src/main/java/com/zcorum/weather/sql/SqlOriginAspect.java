@@ -0,0 +1,29 @@
+package com.zcorum.weather.sql;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/*
+	Names the WeatherService method as the origin of the statements it issues, including the flush on commit.
+	Ordered inside ServiceMetricsAspect and outside the caching and the transaction advice.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 4)
+public class SqlOriginAspect {
+
+	@Around("execution(public * com.zcorum.weather.service.WeatherService+.*(..))")
+	public Object enter(ProceedingJoinPoint joinPoint) throws Throwable {
+		String previous = SqlProfile.enter(joinPoint.getSignature().toShortString());
+		try {
+			return joinPoint.proceed();
+		} finally {
+			SqlProfile.exit(previous);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.zcorum.weather.sql;
+
+import java.util.function.Supplier;
+
+/*
+	Number and total time of the SQL statements issued by the current thread since start(), used for the per-request
+	summary. Also holds the service method the statements are issued from, so that slow statements can name it.
+	Work handed to other threads carries both with capture(), its statements are then added to the same profile.
+ */
+public final class SqlProfile {
+
+	private static final ThreadLocal<SqlProfile> CURRENT = new ThreadLocal<>();
+
+	private static final ThreadLocal<String> ORIGIN = new ThreadLocal<>();
+
+	private int statements;
+
+	private long nanos;
+
+	private SqlProfile() {
+	}
+
+	public static SqlProfile start() {
+		SqlProfile profile = new SqlProfile();
+		CURRENT.set(profile);
+		return profile;
+	}
+
+	public static void stop() {
+		CURRENT.remove();
+	}
+
+	/*
+		Sets the origin of the statements issued by the current thread, returns the previous one to be restored.
+	 */
+	public static String enter(String origin) {
+		String previous = ORIGIN.get();
+		ORIGIN.set(origin);
+		return previous;
+	}
+
+	public static void exit(String previous) {
+		if (previous == null) {
+			ORIGIN.remove();
+		} else {
+			ORIGIN.set(previous);
+		}
+	}
+
+	/*
+		The profile and the origin of the current thread, to be set on the thread running work on its behalf.
+	 */
+	public static Context capture() {
+		return new Context(CURRENT.get(), ORIGIN.get());
+	}
+
+	static String origin() {
+		return ORIGIN.get();
+	}
+
+	static void add(long statementNanos) {
+		SqlProfile profile = CURRENT.get();
+		if (profile != null) {
+			synchronized (profile) {
+				profile.statements++;
+				profile.nanos += statementNanos;
+			}
+		}
+	}
+
+	public synchronized int getStatements() {
+		return statements;
+	}
+
+	public synchronized long getNanos() {
+		return nanos;
+	}
+
+	public static final class Context {
+
+		private final SqlProfile profile;
+
+		private final String origin;
+
+		private Context(SqlProfile profile, String origin) {
+			this.profile = profile;
+			this.origin = origin;
+		}
+
+		/*
+			Runs the work with the captured profile and origin set on the current thread, then restores its own.
+		 */
+		public <T> T run(Supplier<T> work) {
+			SqlProfile previousProfile = CURRENT.get();
+			String previousOrigin = enter(origin);
+			set(profile);
+			try {
+				return work.get();
+			} finally {
+				exit(previousOrigin);
+				set(previousProfile);
+			}
+		}
+
+		private static void set(SqlProfile profile) {
+			if (profile == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(profile);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.zcorum.weather.sql;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+	Receives the timing of every executed statement: adds it to the SqlProfile of the thread and logs statements slower
+	than the threshold with the shape of their bind parameters (types, never values), row count and origin.
+ */
+@Slf4j
+public class SqlProfiler {
+
+	private final long thresholdNanos;
+
+	public SqlProfiler(Duration threshold) {
+		this.thresholdNanos = threshold.toNanos();
+	}
+
+	void record(String sql, String parameterShape, long rows, long nanos) {
+		SqlProfile.add(nanos);
+		if (nanos >= thresholdNanos) {
+			String origin = SqlProfile.origin();
+			log.warn("Slow SQL: {} ms, {} rows, parameters ({}), from {}: {}", TimeUnit.NANOSECONDS.toMillis(nanos), rows,
+					parameterShape, origin == null ? "unknown" : origin, sql);
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.zcorum.weather.util;
+
+import com.zcorum.weather.exception.WrongDateFormatException;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+	Dates in the yyyy-MM-dd format. The exact format is parsed and written by hand, without allocating more than the
+	result. Other input goes through a shared formatter that accepts what the former SimpleDateFormat accepted: years,
+	months and days of any number of digits, out of range months and days rolled over and text after the day ignored.
+ */
+public final class Dates {
+
+	// thread safe, unlike SimpleDateFormat, so a single instance serves every request
+	private static final DateTimeFormatter LENIENT_FORMAT = new DateTimeFormatterBuilder()
+			.appendValue(ChronoField.YEAR, 1, 9, SignStyle.NORMAL)
+			.appendLiteral('-')
+			.appendValue(ChronoField.MONTH_OF_YEAR, 1, 9, SignStyle.NORMAL)
+			.appendLiteral('-')
+			.appendValue(ChronoField.DAY_OF_MONTH, 1, 9, SignStyle.NORMAL)
+			.toFormatter()
+			.withResolverStyle(ResolverStyle.LENIENT);
+
+	private Dates() {
+	}
+
+	public static LocalDate parse(String date) {
+		if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+			int year = digits(date, 0, 4);
+			int month = digits(date, 5, 7);
+			int day = digits(date, 8, 10);
+			if (year >= 1 && month >= 1 && month <= 12 && day >= 1
+					&& (day <= 28 || day <= Month.of(month).length(Year.isLeap(year)))) {
+				return LocalDate.of(year, month, day);
+			}
+		}
+		try {
+			return LENIENT_FORMAT.parse(date, new ParsePosition(0)).query(LocalDate::from);
+		} catch (DateTimeException e) {
+			throw new WrongDateFormatException("Unable to parse str " + date + " to date", e);
+		}
+	}
+
+	/*
+		Parses comma separated dates, e.g. 2023-03-20,2023-03-22.
+	 */
+	public static List<LocalDate> parseList(String dates) {
+		String[] split = dates.split(",");
+		List<LocalDate> parsed = new ArrayList<>(split.length);
+		for (String date : split) {
+			parsed.add(parse(date.trim()));
+		}
+		return parsed;
+	}
+
+	public static String format(LocalDate date) {
+		int year = date.getYear();
+		if (year < 0 || year > 9999) {
+			return date.toString();
+		}
+		char[] chars = new char[10];
+		write(chars, 0, year, 4);
+		chars[4] = '-';
+		write(chars, 5, date.getMonthValue(), 2);
+		chars[7] = '-';
+		write(chars, 8, date.getDayOfMonth(), 2);
+		return new String(chars);
+	}
+
+	// -1 unless every character is a digit
+	private static int digits(String text, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static void write(char[] chars, int offset, int value, int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+}
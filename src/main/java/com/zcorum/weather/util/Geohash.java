@@ -0,0 +1,146 @@
+package com.zcorum.weather.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.emptyList;
+
+/*
+	Geohashes interleave the bits of the longitude and latitude of a point, so points in the same cell share a prefix and
+	a cell is searched with a prefix range of an ordinary index. A cell of precision p is 360 / 2^ceil(5p/2) degrees of
+	longitude wide and 180 / 2^floor(5p/2) degrees of latitude high, e.g. about 1.2 km x 0.6 km for p = 6.
+ */
+public final class Geohash {
+
+	public static final int MAX_PRECISION = 12;
+
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+	private static final double EARTH_RADIUS_KM = 6371.0088;
+
+	private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+	private Geohash() {
+	}
+
+	public static String encode(double lat, double lon, int precision) {
+		double minLat = -90;
+		double maxLat = 90;
+		double minLon = -180;
+		double maxLon = 180;
+		char[] hash = new char[precision];
+		boolean lonBit = true;
+		int bits = 0;
+		int value = 0;
+		int length = 0;
+		while (length < precision) {
+			if (lonBit) {
+				double mid = (minLon + maxLon) / 2;
+				value <<= 1;
+				if (lon >= mid) {
+					value |= 1;
+					minLon = mid;
+				} else {
+					maxLon = mid;
+				}
+			} else {
+				double mid = (minLat + maxLat) / 2;
+				value <<= 1;
+				if (lat >= mid) {
+					value |= 1;
+					minLat = mid;
+				} else {
+					maxLat = mid;
+				}
+			}
+			lonBit = !lonBit;
+			if (++bits == 5) {
+				hash[length++] = BASE32[value];
+				bits = 0;
+				value = 0;
+			}
+		}
+		return new String(hash);
+	}
+
+	/*
+		Great-circle distance between two points, in kilometers.
+	 */
+	public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	/*
+		The cell of the point at the given precision and its 8 neighbours. Every point within coveredRadiusKm of the given
+		point lies in one of them.
+	 */
+	public static List<String> neighbourhood(double lat, double lon, int precision) {
+		double width = cellWidth(precision);
+		double height = cellHeight(precision);
+		double minLat = cellStart(lat + 90, height) - 90;
+		double minLon = cellStart(lon + 180, width) - 180;
+		Set<String> cells = new LinkedHashSet<>();
+		for (int row = -1; row <= 1; row++) {
+			double cellLat = minLat + height * (row + 0.5);
+			if (cellLat < -90 || cellLat > 90) {
+				continue;
+			}
+			for (int column = -1; column <= 1; column++) {
+				// cells across the antimeridian continue on the other side
+				double cellLon = minLon + width * (column + 0.5);
+				cellLon = cellLon >= 180 ? cellLon - 360 : cellLon < -180 ? cellLon + 360 : cellLon;
+				cells.add(encode(cellLat, cellLon, precision));
+			}
+		}
+		return new ArrayList<>(cells);
+	}
+
+	/*
+		Radius around the point that the neighbourhood of the given precision is sure to contain: one cell in every
+		direction, measured at the latitude where the cells are narrowest. Zero when the neighbourhood reaches a pole,
+		as points beyond the pole are not in it.
+	 */
+	public static double coveredRadiusKm(double lat, double lon, int precision) {
+		double height = cellHeight(precision);
+		double minLat = cellStart(lat + 90, height) - 90;
+		double southmost = minLat - height;
+		double northmost = minLat + 2 * height;
+		if (southmost <= -90 || northmost >= 90) {
+			return 0;
+		}
+		double narrowest = Math.max(Math.abs(southmost), Math.abs(northmost));
+		return Math.min(height * KM_PER_DEGREE, cellWidth(precision) * KM_PER_DEGREE * Math.cos(Math.toRadians(narrowest)));
+	}
+
+	/*
+		The prefixes of the cells to search for the points within radiusKm of the given point: the neighbourhood of the
+		finest precision that covers the radius. Empty when no precision does, then every point has to be searched.
+	 */
+	public static List<String> covering(double lat, double lon, double radiusKm) {
+		for (int precision = MAX_PRECISION; precision > 0; precision--) {
+			if (coveredRadiusKm(lat, lon, precision) >= radiusKm) {
+				return neighbourhood(lat, lon, precision);
+			}
+		}
+		return emptyList();
+	}
+
+	private static double cellStart(double offset, double size) {
+		return Math.floor(offset / size) * size;
+	}
+
+	private static double cellWidth(int precision) {
+		return 360 / Math.pow(2, (5 * precision + 1) / 2);
+	}
+
+	private static double cellHeight(int precision) {
+		return 180 / Math.pow(2, 5 * precision / 2);
+	}
+
+}
@@ -1,9 +1,29 @@
 package com.zcorum.weather.web.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zcorum.weather.cache.WeatherChanges;
+import com.zcorum.weather.dto.ImportReportDto;
+import com.zcorum.weather.dto.IngestStatusDto;
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.WeatherPageDto;
+import com.zcorum.weather.dto.WeatherStatsDto;
+import com.zcorum.weather.export.ExportFormat;
+import com.zcorum.weather.export.RecordExport;
+import com.zcorum.weather.ingest.BulkImport;
+import com.zcorum.weather.ingest.ImportFormat;
+import com.zcorum.weather.ingest.WriteBehindIngest;
+import com.zcorum.weather.routing.ReadRouting;
 import com.zcorum.weather.service.WeatherService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -11,11 +31,25 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static com.zcorum.weather.constants.Constants.HEADER_NEXT_PAGE_TOKEN;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_CBOR;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_CSV;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_NDJSON;
 
 @RestController
 @RequestMapping("/weather")
@@ -23,8 +57,33 @@ public class WeatherController {
 
 	private final WeatherService weatherService;
 
-	public WeatherController(WeatherService weatherService) {
+	private final ObjectMapper objectMapper;
+
+	private final ObjectMapper cborMapper;
+
+	// flushing after every record would turn each one into a separate network write
+	private final ObjectWriter recordWriter;
+
+	// present in write-behind mode only
+	private final ObjectProvider<WriteBehindIngest> writeBehindIngest;
+
+	private final BulkImport bulkImport;
+
+	private final WeatherChanges weatherChanges;
+
+	private final ReadRouting readRouting;
+
+	public WeatherController(WeatherService weatherService, ObjectMapper objectMapper, ObjectProvider<WriteBehindIngest> writeBehindIngest,
+	                         BulkImport bulkImport, WeatherChanges weatherChanges, ReadRouting readRouting,
+	                         MappingJackson2CborHttpMessageConverter cborConverter) {
 		this.weatherService = weatherService;
+		this.objectMapper = objectMapper;
+		this.cborMapper = cborConverter.getObjectMapper();
+		this.writeBehindIngest = writeBehindIngest;
+		this.bulkImport = bulkImport;
+		this.weatherChanges = weatherChanges;
+		this.readRouting = readRouting;
+		this.recordWriter = objectMapper.writerFor(WeatherDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
 	}
 
 	/*
@@ -33,36 +92,156 @@ public class WeatherController {
 	- expects a valid weather data object as its body payload, except that it does not have an id property; you can assume that the given object is always valid
 	- adds the given object to the collection and assigns a unique integer id to it
 	- the response code is 201 and the response body is the created record, including its unique id
+	- in write-behind mode (weather.ingest.write-behind.enabled), the record is queued and stored later in a batch: the
+	response code is 202, the response body is the ingest status and the Location header points to the status; when
+	the queue is full, the response code is 429
+	- the record is sent and returned as JSON by default, or as CBOR (`application/cbor`) with its temperatures packed
+	into a little-endian float64 typed array, see PackedTemperatures; the GET requests below answer CBOR too when it is
+	the accepted type
+	- when a record with the same city, state and date exists, the response code is 409
+	- with `?upsert=true`, a record with the same city (case insensitive), state and date is not created again: it is kept
+	when the given object repeats it, corrected otherwise, and the response code is 200 with the stored record as its
+	body; upserts are stored right away, in write-behind mode too
 	 */
 
 	@PostMapping
-	public ResponseEntity<?> create(@RequestBody WeatherDto request) {
+	public ResponseEntity<?> create(@RequestBody WeatherDto request,
+	                                @RequestParam(value = "upsert", defaultValue = "false") boolean upsert) {
+		if (upsert) {
+			return ResponseEntity.ok(weatherService.upsert(request));
+		}
+		WriteBehindIngest ingest = writeBehindIngest.getIfAvailable();
+		if (ingest != null) {
+			IngestStatusDto status = ingest.submit(request);
+			URI location = ServletUriComponentsBuilder.fromCurrentRequestUri().path("/ingest/{ticket}").buildAndExpand(status.getTicket()).toUri();
+			return ResponseEntity.accepted().location(location).body(status);
+		}
 		WeatherDto createdRecord = weatherService.create(request);
 		return ResponseEntity.status(HttpStatus.CREATED).body(createdRecord);
 	}
 
+	/*
+	GET request to `/weather/ingest/<ticket>`:
+	- returns the ingest status of a record queued in write-behind mode: QUEUED, then STORED with the id of the record or
+	FAILED with the error
+	- if the ticket is unknown or its status expired (weather.ingest.write-behind.status-retention), the response code is 404
+	 */
+
+	@GetMapping("/ingest/{ticket}")
+	public ResponseEntity<?> ingestStatus(@PathVariable("ticket") String ticket) {
+		WriteBehindIngest ingest = writeBehindIngest.getIfAvailable();
+		Optional<IngestStatusDto> status = ingest == null ? Optional.empty() : ingest.status(ticket);
+		return status.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+	}
+
+	/*
+	POST request to `/weather/batch`:
+	- creates many weather data records in one transaction
+	- expects either a JSON array of weather data objects (`application/json`), one object per line (`application/x-ndjson`)
+	or a CBOR array or sequence of objects (`application/cbor`)
+	- the body is read and stored record by record, so its size is not limited by memory
+	- the response code is 201 and the response body is the array of assigned ids, in the order of the given records
+	- with `?upsert=true`, every record is upserted as by `POST /weather?upsert=true`: the response code is 200 and the
+	response body is the array of the ids of the stored records, an id appears more than once for repeated records
+	 */
+
+	@PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MEDIA_TYPE_NDJSON, MEDIA_TYPE_CBOR})
+	public ResponseEntity<?> createAll(HttpServletRequest request,
+	                                   @RequestParam(value = "upsert", defaultValue = "false") boolean upsert) throws IOException {
+		ObjectMapper mapper = MediaType.valueOf(MEDIA_TYPE_CBOR).includes(MediaType.valueOf(request.getContentType())) ? cborMapper : objectMapper;
+		try (MappingIterator<WeatherDto> records = mapper.readerFor(WeatherDto.class).readValues(request.getInputStream())) {
+			if (upsert) {
+				return ResponseEntity.ok(weatherService.upsertAll(() -> records));
+			}
+			List<Integer> ids = weatherService.createAll(() -> records);
+			return ResponseEntity.status(HttpStatus.CREATED).body(ids);
+		}
+	}
+
+	/*
+	POST request to `/weather/import`:
+	- imports records from one JSON object per line (`application/x-ndjson`) or CSV lines with a header (`text/csv`),
+	see ImportFormat
+	- the body is parsed in parallel chunks and stored one transaction per chunk, so its size is not limited by memory
+	- lines that cannot be parsed or lack a date or a city are rejected, the other lines are stored
+	- the response code is 200 and the response body is the import report, with the number of stored records, the
+	rejected lines and the throughput
+	- when storing fails, the response code is 500 and the report tells the last committed line; sending the body again
+	with `?skipLines=<committedLines>` resumes the import
+	 */
+
+	@PostMapping(value = "/import", consumes = {MEDIA_TYPE_NDJSON, MEDIA_TYPE_CSV})
+	public ResponseEntity<?> importRecords(HttpServletRequest request,
+	                                       @RequestParam(value = "skipLines", defaultValue = "0") long skipLines) throws IOException {
+		ImportFormat format = MediaType.valueOf(MEDIA_TYPE_CSV).includes(MediaType.valueOf(request.getContentType()))
+				? ImportFormat.CSV
+				: ImportFormat.NDJSON;
+		ImportReportDto report = bulkImport.importStream(request.getInputStream(), format, skipLines);
+		HttpStatus status = report.getError() == null ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+		return ResponseEntity.status(status).body(report);
+	}
+
 	/*
 	GET request to `/weather/<id>`:
 	- returns a record with the given id
 	- if the matching record exists, the response code is 200 and the response body is the matching object
 	- if there is no record in the collection with the given id, the response code is 404
+	- the weak ETag response header is derived from the id and the version of the record; when the If-None-Match request
+	header holds it, the response code is 304 without a body. The 304 is decided from the version alone, before the
+	record is read: the version is taken from the cache of records by id, so revalidating a hot record reads nothing
+	from the database, or else read on its own
 	 */
 
 	@GetMapping("/{id}")
-	public ResponseEntity<?> findOneById(@PathVariable("id") Integer id) {
+	public ResponseEntity<?> findOneById(@PathVariable("id") Integer id, WebRequest request) {
+		if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+			Integer version = weatherService.findVersionById(id);
+			if (version == null) {
+				return ResponseEntity.notFound().build();
+			}
+			// when the record changes in between, the tag is older than the body and only costs a full response later
+			if (request.checkNotModified(recordTag(id, version))) {
+				return null;
+			}
+		}
 		WeatherDto record = weatherService.findById(id);
 		if (record == null) {
 			return ResponseEntity.notFound().build();
 		}
+		if (request.checkNotModified(recordTag(record))) {
+			return null;
+		}
 		return ResponseEntity.ok(record);
 	}
 
+	/*
+	GET request to `/weather?ids=<id>,<id>,...` and POST request to `/weather/_mget`:
+	- returns the records with the given ids, read with a few queries instead of one request per id; the POST request
+	takes a JSON or CBOR array of ids as its body, so that thousands of ids fit in one request
+	- the response code is 200 and the response body holds the records in the order of the given ids and the given ids
+	without a record (`missingIds`); an id given more than once is returned once
+	- if more than 10000 ids are given, the response code is 400
+	 */
+
+	@GetMapping(params = "ids")
+	public ResponseEntity<?> findAllById(@RequestParam(value = "ids") List<Integer> ids) {
+		return ResponseEntity.ok(weatherService.findAllById(ids));
+	}
+
+	@PostMapping(value = "/_mget", consumes = {MediaType.APPLICATION_JSON_VALUE, MEDIA_TYPE_CBOR})
+	public ResponseEntity<?> findAllByIdInBody(@RequestBody List<Integer> ids) {
+		return ResponseEntity.ok(weatherService.findAllById(ids));
+	}
+
 	/*
 	GET request to `/weather`:
 	- the response code is 200
 	- the response body is an array of matching records, ordered by their ids in increasing order
 	- accepts an optional query string parameter, date, in the format YYYY-MM-DD, for example /weather/?date=2019-06-11.
-		When this parameter is present, only the records with the matching date are returned.
+		When this parameter is present, only the records with the matching date are returned. It might contain several
+		dates, separated by commas (e.g. date=2019-06-11,2019-06-13), meaning that records with any of these dates are returned.
+	- accepts optional query string parameters, from and to, in the format YYYY-MM-DD. When present, only the records
+	dated from and/or to the given dates inclusive are returned, so that a whole week is fetched in one request.
 	- accepts an optional query string parameter, city, and when this parameter is present, only the records with the
 	matching city are returned. The value of this parameter is case insensitive, so "London" and "london" are equivalent.
 	Moreover, it might contain several values, separated by commas (e.g. city=london,Kyiv), meaning that records with the
@@ -70,16 +249,187 @@ public class WeatherController {
 	- accepts an optional query string parameter, sort, that can take one of two values: either "date" or "-date". If the
 	value is "date", then the ordering is by date in ascending order. If it is "-date", then the ordering is by date in
 	descending order. If there are two records with the same date, the one with the smaller id must come first.
+	- the weak ETag response header tags the state of the whole collection; when the If-None-Match request header holds it,
+	no record changed since and the response code is 304 without a body, answered before any search is run. Searches
+	read from a replica may miss the last changes, they are not tagged and always run
 	 */
 
 	@GetMapping
 	public ResponseEntity<?> search(@RequestParam(value = "date", required = false) String date,
+	                                @RequestParam(value = "from", required = false) String from,
+	                                @RequestParam(value = "to", required = false) String to,
 	                                @RequestParam(value = "city", required = false) String city,
-	                                @RequestParam(value = "sort", required = false) String sort) {
-		List<WeatherDto> searchResult = weatherService.search(date, decode(city), sort);
+	                                @RequestParam(value = "sort", required = false) String sort,
+	                                WebRequest request) {
+		if (isTagged() && request.checkNotModified(weakTag(weatherChanges.tag()))) {
+			return null;
+		}
+		List<WeatherDto> searchResult = weatherService.search(date, from, to, decode(city), sort);
 		return ResponseEntity.ok(searchResult);
 	}
 
+	/*
+	GET request to `/weather?stream=true`:
+	- accepts the same parameters and returns the same body as the search above
+	- records are written to the response as they are read from the database, so memory use does not depend on the
+	number of matching records
+	 */
+
+	@GetMapping(params = {"stream=true", "!limit"})
+	public void searchStream(@RequestParam(value = "date", required = false) String date,
+	                         @RequestParam(value = "from", required = false) String from,
+	                         @RequestParam(value = "to", required = false) String to,
+	                         @RequestParam(value = "city", required = false) String city,
+	                         @RequestParam(value = "sort", required = false) String sort,
+	                         HttpServletResponse response) throws IOException {
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		// not closed on failure: buffered output is dropped so that a search error can still be reported as an error response
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+		generator.writeStartArray();
+		weatherService.search(date, from, to, decode(city), sort, record -> writeRecord(generator, record));
+		generator.writeEndArray();
+		generator.close();
+	}
+
+	/*
+	GET request to `/weather/export`:
+	- accepts the same filters and sort as the search above
+	- accepts an optional query string parameter, format: ndjson (default, one JSON object per line), csv (with a header
+	line, the format of `POST /weather/import`) or columnar (row groups of little-endian arrays, temperatures as
+	contiguous float64 arrays, see ColumnarRecordWriter)
+	- with `gzip=true`, the body is gzip compressed (`Content-Encoding: gzip`)
+	- records are written as they are read from a database cursor, so memory use does not depend on their number
+	 */
+
+	@GetMapping("/export")
+	public void export(@RequestParam(value = "date", required = false) String date,
+	                   @RequestParam(value = "from", required = false) String from,
+	                   @RequestParam(value = "to", required = false) String to,
+	                   @RequestParam(value = "city", required = false) String city,
+	                   @RequestParam(value = "sort", required = false) String sort,
+	                   @RequestParam(value = "format", defaultValue = "ndjson") String format,
+	                   @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+	                   HttpServletResponse response) throws IOException {
+		ExportFormat exportFormat = ExportFormat.of(format);
+		RecordExport export = new RecordExport(exportFormat, objectMapper, () -> {
+			response.setContentType(exportFormat.getMediaType());
+			response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"weather." + exportFormat.getExtension() + "\"");
+			if (!gzip) {
+				return response.getOutputStream();
+			}
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			return new GZIPOutputStream(response.getOutputStream(), 64 * 1024);
+		});
+		weatherService.search(date, from, to, decode(city), sort, export);
+		export.finish();
+	}
+
+	/*
+	GET request to `/weather?limit=<n>`:
+	- accepts the same parameters and returns the same body as the search above, limited to at most n records
+	- when there are more records, the `X-Next-Page-Token` response header holds a token; passing it back as the `after`
+	parameter together with the same filters and sort returns the next page
+	- every page costs the same, no matter how deep it is
+	- pages are tagged and revalidated like the search above
+	 */
+
+	@GetMapping(params = "limit")
+	public ResponseEntity<?> searchPage(@RequestParam(value = "date", required = false) String date,
+	                                    @RequestParam(value = "from", required = false) String from,
+	                                    @RequestParam(value = "to", required = false) String to,
+	                                    @RequestParam(value = "city", required = false) String city,
+	                                    @RequestParam(value = "sort", required = false) String sort,
+	                                    @RequestParam(value = "limit") int limit,
+	                                    @RequestParam(value = "after", required = false) String after,
+	                                    WebRequest request) {
+		if (isTagged() && request.checkNotModified(weakTag(weatherChanges.tag()))) {
+			return null;
+		}
+		WeatherPageDto page = weatherService.search(date, from, to, decode(city), sort, limit, after);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (page.getNextPageToken() != null) {
+			response.header(HEADER_NEXT_PAGE_TOKEN, page.getNextPageToken());
+		}
+		return response.body(page.getRecords());
+	}
+
+	/*
+	GET request to `/weather/near`:
+	- the response code is 200
+	- the response body is an array of the records located within radiusKm kilometers of lat/lon, nearest first, then
+	ordered by date and id
+	- with k instead of radiusKm, the response body is an array of the k records nearest to lat/lon, ordered the same way
+	- accepts an optional query string parameter, date, one date or comma separated dates like in the search
+	- only the cells of a geohash index around the point are read, not the whole collection
+	 */
+
+	@GetMapping(value = "/near", params = "!k")
+	public ResponseEntity<?> near(@RequestParam(value = "lat") double lat,
+	                              @RequestParam(value = "lon") double lon,
+	                              @RequestParam(value = "radiusKm") double radiusKm,
+	                              @RequestParam(value = "date", required = false) String date) {
+		List<WeatherDto> records = weatherService.near(lat, lon, radiusKm, date);
+		return ResponseEntity.ok(records);
+	}
+
+	@GetMapping(value = "/near", params = "k")
+	public ResponseEntity<?> nearest(@RequestParam(value = "lat") double lat,
+	                                 @RequestParam(value = "lon") double lon,
+	                                 @RequestParam(value = "k") int k,
+	                                 @RequestParam(value = "date", required = false) String date) {
+		List<WeatherDto> records = weatherService.nearest(lat, lon, k, date);
+		return ResponseEntity.ok(records);
+	}
+
+	/*
+	GET request to `/weather/stats`:
+	- the response code is 200
+	- the response body is an array of temperature statistics (min, max, mean and the number of readings) per city and
+	period, ordered by city and period
+	- accepts optional query string parameters: city (case insensitive, comma separated like in the search), from and to
+	(inclusive, in the format YYYY-MM-DD) and granularity, one of day (default), month or year
+	 */
+
+	@GetMapping("/stats")
+	public ResponseEntity<?> stats(@RequestParam(value = "city", required = false) String city,
+	                               @RequestParam(value = "from", required = false) String from,
+	                               @RequestParam(value = "to", required = false) String to,
+	                               @RequestParam(value = "granularity", required = false) String granularity) {
+		List<WeatherStatsDto> stats = weatherService.stats(decode(city), from, to, granularity);
+		return ResponseEntity.ok(stats);
+	}
+
+	/*
+		The change count only tags data read from the primary, a replica may not have applied the counted changes yet.
+	 */
+	private boolean isTagged() {
+		return readRouting.isPrimary();
+	}
+
+	private static String recordTag(WeatherDto record) {
+		return recordTag(record.getId(), record.getVersion() == null ? 0 : record.getVersion());
+	}
+
+	private static String recordTag(Integer id, int version) {
+		return weakTag(id + "." + version);
+	}
+
+	/*
+		The tags are weak: the JSON, CBOR and gzip compressed bodies of the same records carry the same tag, which would
+		be wrong for a strong one. Conditional requests only use the weak comparison.
+	 */
+	private static String weakTag(String tag) {
+		return "W/\"" + tag + "\"";
+	}
+
+	private void writeRecord(JsonGenerator generator, WeatherDto record) {
+		try {
+			recordWriter.writeValue(generator, record);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write record " + record.getId(), e);
+		}
+	}
+
 	private String decode(String value) {
 		if (value == null) {
 			return null;
@@ -0,0 +1,93 @@
+package com.zcorum.weather.web.filter;
+
+import com.zcorum.weather.routing.ReadYourWrites;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+
+/*
+	Read-your-writes stickiness for the replica routing. A write request hands the client a cookie holding the time
+	until which its reads go to the primary, weather.datasource.replica.read-your-writes after the write (0 turns the
+	stickiness off). The time is kept in the cookie value as well, clients that ignore Max-Age are unpinned too.
+	Every request other than GET, HEAD and OPTIONS is taken as a write, except the POST requests that only read.
+ */
+@Component
+@ConditionalOnProperty("weather.datasource.replica.url")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	public static final String COOKIE_PRIMARY_UNTIL = "weather-primary-until";
+
+	// POST requests that carry a query in their body and write nothing
+	private static final Set<String> READ_ONLY_POSTS = Collections.singleton("/weather/_mget");
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	private final Duration window;
+
+	public ReadYourWritesFilter(@Value("${weather.datasource.replica.read-your-writes:5s}") Duration window) {
+		this.window = window;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return window.isZero() || window.isNegative();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		long now = System.currentTimeMillis();
+		if (isWrite(request)) {
+			// added up front, the response may be committed by the time the write completes
+			Cookie cookie = new Cookie(COOKIE_PRIMARY_UNTIL, Long.toString(now + window.toMillis()));
+			cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+			cookie.setMaxAge((int) Math.max(1, (window.toMillis() + 999) / 1000));
+			cookie.setHttpOnly(true);
+			response.addCookie(cookie);
+		}
+		if (primaryUntil(request) <= now) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		ReadYourWrites.pin();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			ReadYourWrites.release();
+		}
+	}
+
+	private boolean isWrite(HttpServletRequest request) {
+		String method = request.getMethod();
+		if ("POST".equals(method)) {
+			return !READ_ONLY_POSTS.contains(urlPathHelper.getPathWithinApplication(request));
+		}
+		return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+	}
+
+	private long primaryUntil(HttpServletRequest request) {
+		Cookie cookie = WebUtils.getCookie(request, COOKIE_PRIMARY_UNTIL);
+		if (cookie == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(cookie.getValue());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
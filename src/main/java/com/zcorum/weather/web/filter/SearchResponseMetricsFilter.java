@@ -0,0 +1,150 @@
+package com.zcorum.weather.web.filter;
+
+import com.zcorum.weather.metrics.SearchShape;
+import com.zcorum.weather.web.controller.WeatherController;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+	Records the size of the response bodies of the WeatherController searches as `weather.search.bytes`, tagged like
+	`weather.search`. The search is told by the handler the request was mapped to, since other handlers share its path.
+	Bytes are counted as they pass to the container, so streamed responses are not buffered.
+ */
+@Component
+public class SearchResponseMetricsFilter extends OncePerRequestFilter {
+
+	private static final Set<String> SEARCH_METHODS = new HashSet<>(Arrays.asList("search", "searchStream", "searchPage"));
+
+	private final MeterRegistry meterRegistry;
+
+	private final ConcurrentMap<Tags, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+	public SearchResponseMetricsFilter(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !HttpMethod.GET.matches(request.getMethod());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		CountingResponse countingResponse = new CountingResponse(response);
+		try {
+			filterChain.doFilter(request, countingResponse);
+		} finally {
+			String method = searchMethod(request);
+			if (method != null) {
+				Tags tags = SearchShape.of(request.getParameter("date"), request.getParameter("from"), request.getParameter("to"),
+						request.getParameter("city"), request.getParameter("sort")).toTags().and("method", method);
+				summaries.computeIfAbsent(tags, key -> DistributionSummary.builder("weather.search.bytes")
+						.description("Size of search response bodies")
+						.baseUnit("bytes")
+						.tags(key)
+						.register(meterRegistry))
+						.record(countingResponse.getCount());
+			}
+		}
+	}
+
+	/*
+		The name of the search handler the request was mapped to, null for the other handlers.
+	 */
+	private String searchMethod(HttpServletRequest request) {
+		Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+		if (!(handler instanceof HandlerMethod) || ((HandlerMethod) handler).getBeanType() != WeatherController.class) {
+			return null;
+		}
+		String method = ((HandlerMethod) handler).getMethod().getName();
+		return SEARCH_METHODS.contains(method) ? method : null;
+	}
+
+	private static final class CountingResponse extends HttpServletResponseWrapper {
+
+		private CountingOutputStream outputStream;
+
+		CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null) {
+				outputStream = new CountingOutputStream(super.getOutputStream());
+			}
+			return outputStream;
+		}
+
+		long getCount() {
+			return outputStream == null ? 0 : outputStream.count;
+		}
+
+	}
+
+	private static final class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream delegate;
+
+		private long count;
+
+		CountingOutputStream(ServletOutputStream delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			delegate.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			delegate.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+
+		@Override
+		public boolean isReady() {
+			return delegate.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			delegate.setWriteListener(writeListener);
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.zcorum.weather.web.filter;
+
+import com.zcorum.weather.sql.SqlProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/*
+	When weather.sql.server-timing is enabled, reports the number and the total time of the SQL statements of a request
+	in a `Server-Timing: db;dur=<ms>;desc="<n> statements"` response header. Headers can not change once the body is
+	being written, so statements issued while a streamed body is written are not counted.
+ */
+@Component
+public class SqlProfileFilter extends OncePerRequestFilter {
+
+	public static final String HEADER_SERVER_TIMING = "Server-Timing";
+
+	private final boolean enabled;
+
+	public SqlProfileFilter(@Value("${weather.sql.server-timing:false}") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !enabled;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		SqlProfile profile = SqlProfile.start();
+		ProfileHeaderResponse profileResponse = new ProfileHeaderResponse(response, profile);
+		try {
+			filterChain.doFilter(request, profileResponse);
+		} finally {
+			profileResponse.addProfileHeader();
+			SqlProfile.stop();
+		}
+	}
+
+	private static final class ProfileHeaderResponse extends HttpServletResponseWrapper {
+
+		private final SqlProfile profile;
+
+		private boolean added;
+
+		ProfileHeaderResponse(HttpServletResponse response, SqlProfile profile) {
+			super(response);
+			this.profile = profile;
+		}
+
+		void addProfileHeader() {
+			if (!added && !isCommitted()) {
+				added = true;
+				addHeader(HEADER_SERVER_TIMING, String.format(Locale.ROOT, "db;dur=%.1f;desc=\"%d statements\"",
+						profile.getNanos() / 1_000_000.0, profile.getStatements()));
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			addProfileHeader();
+			return super.getOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			addProfileHeader();
+			return super.getWriter();
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			addProfileHeader();
+			super.flushBuffer();
+		}
+
+	}
+
+}
@@ -1,17 +1,71 @@
 package com.zcorum.weather.web.handler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.zcorum.weather.exception.IngestQueueFullException;
 import com.zcorum.weather.exception.WrongDateFormatException;
+import com.zcorum.weather.exception.WrongExportRequestException;
+import com.zcorum.weather.exception.WrongLocationRequestException;
+import com.zcorum.weather.exception.WrongMultiGetRequestException;
+import com.zcorum.weather.exception.WrongPageRequestException;
+import com.zcorum.weather.exception.WrongRecordException;
+import com.zcorum.weather.exception.WrongStatsRequestException;
+import com.zcorum.weather.maintenance.NaturalKeyIndex;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import java.sql.SQLException;
+import java.util.Locale;
+
 @ControllerAdvice
 public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionHandler {
 
-	@ExceptionHandler(value = {WrongDateFormatException.class})
-	protected ResponseEntity<WrongDateFormatException> handleEvvEnvironmentException(WrongDateFormatException ex) {
+	@ExceptionHandler(value = {WrongDateFormatException.class, WrongPageRequestException.class, WrongStatsRequestException.class,
+			WrongLocationRequestException.class, WrongExportRequestException.class, WrongMultiGetRequestException.class,
+			WrongRecordException.class})
+	protected ResponseEntity<RuntimeException> handleWrongRequestException(RuntimeException ex) {
 		return new ResponseEntity<>(ex, HttpStatus.BAD_REQUEST);
 	}
+
+	@ExceptionHandler(value = {IngestQueueFullException.class})
+	protected ResponseEntity<String> handleIngestQueueFullException(IngestQueueFullException ex) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+	}
+
+	// a record repeating the city, state and date of a stored one, see POST /weather?upsert=true; other violations are
+	// rethrown and answered as before
+	@ExceptionHandler(value = {DataIntegrityViolationException.class})
+	protected ResponseEntity<String> handleDataIntegrityViolationException(DataIntegrityViolationException ex) {
+		if (!violatesNaturalKey(ex)) {
+			throw ex;
+		}
+		return new ResponseEntity<>("Record conflicts with a stored record", HttpStatus.CONFLICT);
+	}
+
+	private static boolean violatesNaturalKey(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String constraint = ((ConstraintViolationException) cause).getConstraintName();
+				SQLException sqlException = ((ConstraintViolationException) cause).getSQLException();
+				String message = sqlException == null ? null : sqlException.getMessage();
+				return containsIgnoreCase(constraint, NaturalKeyIndex.NAME) || containsIgnoreCase(message, NaturalKeyIndex.NAME);
+			}
+		}
+		return false;
+	}
+
+	private static boolean containsIgnoreCase(String value, String part) {
+		return value != null && value.toLowerCase(Locale.ROOT).contains(part.toLowerCase(Locale.ROOT));
+	}
+
+	@ExceptionHandler(value = {JsonProcessingException.class, RuntimeJsonMappingException.class})
+	protected ResponseEntity<String> handleMalformedBodyException(Exception ex) {
+		return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+	}
 }
@@ -0,0 +1,170 @@
+package com.zcorum.weather;
+
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.util.Dates;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static com.zcorum.weather.web.filter.ReadYourWritesFilter.COOKIE_PRIMARY_UNTIL;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+	Two H2 databases stand in for the primary and the replica. Replication is simulated by copying the primary into the
+	replica with replicate(), so records created afterwards are only on the primary.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.port=0",
+		"spring.cache.type=none",
+		"spring.datasource.url=jdbc:h2:mem:routing-primary;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"weather.datasource.replica.url=" + ReadReplicaRoutingIntegrationTest.REPLICA_URL,
+		"weather.datasource.replica.username=root",
+		"weather.datasource.replica.password=root",
+		"weather.datasource.replica.read-your-writes=1m"
+})
+public class ReadReplicaRoutingIntegrationTest {
+
+	static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	@LocalServerPort
+	private int serverPort;
+
+	private String controllerUrl;
+
+	@Autowired
+	private TestRestTemplate testRestTemplate;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@BeforeEach
+	public void before() throws IOException {
+		controllerUrl = "http://localhost:" + serverPort + "/weather";
+		new JdbcTemplate(dataSource).execute("DELETE FROM weather");
+		replicate();
+	}
+
+	@Test
+	public void testReadsGoToReplica() throws IOException {
+		Integer id = create("Pittsburgh").getBody().getId();
+		assertEquals(HttpStatus.NOT_FOUND, testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class).getStatusCode());
+		replicate();
+		assertEquals(HttpStatus.OK, testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class).getStatusCode());
+	}
+
+	@Test
+	public void testSearchReadsReplica() throws IOException {
+		Integer replicated = create("Pittsburgh").getBody().getId();
+		replicate();
+		create("Pittsburgh", "2023-05-02");
+		assertEquals(singletonList(replicated), searchIds(new HttpHeaders()));
+	}
+
+	@Test
+	public void testReadYourWritesAfterCreate() {
+		ResponseEntity<WeatherDto> created = create("Pittsburgh");
+		String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+		assertNotNull(cookie);
+		assertTrue(cookie.startsWith(COOKIE_PRIMARY_UNTIL + "="));
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+		Integer id = created.getBody().getId();
+		ResponseEntity<WeatherDto> found = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET,
+				new HttpEntity<>(headers), WeatherDto.class);
+		assertEquals(HttpStatus.OK, found.getStatusCode());
+		assertEquals(singletonList(id), searchIds(headers));
+	}
+
+	@Test
+	public void testExpiredStickinessReadsReplica() {
+		Integer id = create("Pittsburgh").getBody().getId();
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.COOKIE, COOKIE_PRIMARY_UNTIL + "=" + (System.currentTimeMillis() - 1));
+		ResponseEntity<WeatherDto> found = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET,
+				new HttpEntity<>(headers), WeatherDto.class);
+		assertEquals(HttpStatus.NOT_FOUND, found.getStatusCode());
+	}
+
+	@Test
+	public void testMultiGetDoesNotPin() {
+		ResponseEntity<String> found = testRestTemplate.postForEntity(controllerUrl + "/_mget", singletonList(1), String.class);
+		assertEquals(HttpStatus.OK, found.getStatusCode());
+		assertNull(found.getHeaders().getFirst(HttpHeaders.SET_COOKIE));
+	}
+
+	@Test
+	public void testOnlySearchesOfThePrimaryAreTagged() {
+		ResponseEntity<WeatherDto> created = create("Pittsburgh");
+		assertNull(testRestTemplate.getForEntity(controllerUrl + "?city=pittsburgh", WeatherDto[].class).getHeaders().getETag());
+		String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.COOKIE, cookie.substring(0, cookie.indexOf(';')));
+		ResponseEntity<WeatherDto[]> pinned = testRestTemplate.exchange(controllerUrl + "?city=pittsburgh", HttpMethod.GET,
+				new HttpEntity<>(headers), WeatherDto[].class);
+		assertNotNull(pinned.getHeaders().getETag());
+	}
+
+	private ResponseEntity<WeatherDto> create(String city) {
+		return create(city, "2023-05-01");
+	}
+
+	private ResponseEntity<WeatherDto> create(String city, String date) {
+		WeatherDto dto = new WeatherDto();
+		dto.setCity(city);
+		dto.setDate(Dates.parse(date));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.postForEntity(controllerUrl, dto, WeatherDto.class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		return responseEntity;
+	}
+
+	private List<Integer> searchIds(HttpHeaders headers) {
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.exchange(controllerUrl + "?city=pittsburgh",
+				HttpMethod.GET, new HttpEntity<>(headers), WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		return Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList());
+	}
+
+	/*
+		Copies the schema and the data of the primary into the replica.
+	 */
+	private void replicate() throws IOException {
+		File script = File.createTempFile("replica", ".sql");
+		try {
+			new JdbcTemplate(dataSource).execute("SCRIPT TO '" + script.getAbsolutePath() + "'");
+			JdbcDataSource replica = new JdbcDataSource();
+			replica.setURL(REPLICA_URL);
+			replica.setUser("root");
+			replica.setPassword("root");
+			JdbcTemplate replicaTemplate = new JdbcTemplate(replica);
+			replicaTemplate.execute("DROP ALL OBJECTS");
+			replicaTemplate.execute("RUNSCRIPT FROM '" + script.getAbsolutePath() + "'");
+		} finally {
+			script.delete();
+		}
+	}
+
+}
@@ -0,0 +1,239 @@
+package com.zcorum.weather;
+
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.WeatherMultiGetDto;
+import com.zcorum.weather.dto.WeatherStatsDto;
+import com.zcorum.weather.util.Dates;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import static com.zcorum.weather.constants.Constants.HEADER_NEXT_PAGE_TOKEN;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+
+/*
+	Three H2 databases as shards. Laredo is stored on shard 0, London and Kyiv on shard 1 and Austin on shard 2.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.port=0",
+		"spring.cache.type=none",
+		"weather.datasource.shards[0].url=jdbc:h2:mem:shard0;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"weather.datasource.shards[0].username=root",
+		"weather.datasource.shards[1].url=jdbc:h2:mem:shard1;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"weather.datasource.shards[1].username=root",
+		"weather.datasource.shards[2].url=jdbc:h2:mem:shard2;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"weather.datasource.shards[2].username=root"
+})
+public class ShardedWeatherIntegrationTest {
+
+	private static final int SHARDS = 3;
+
+	@LocalServerPort
+	private int serverPort;
+
+	private String controllerUrl;
+
+	@Autowired
+	private TestRestTemplate testRestTemplate;
+
+	@BeforeEach
+	public void before() {
+		controllerUrl = "http://localhost:" + serverPort + "/weather";
+		for (int shard = 0; shard < SHARDS; shard++) {
+			shard(shard).execute("DELETE FROM weather");
+			shard(shard).execute("DELETE FROM weather_rollup");
+		}
+	}
+
+	@Test
+	public void testRecordsAreStoredOnTheShardOfTheirCity() {
+		assertStoredOn(create("Laredo", "2023-03-20"), 0);
+		assertStoredOn(create("London", "2023-03-20"), 1);
+		assertStoredOn(create("KYIV", "2023-03-20"), 1);
+		assertStoredOn(create("Austin", "2023-03-20"), 2);
+	}
+
+	@Test
+	public void testUpsertBatchOnEveryShard() {
+		List<WeatherDto> batch = new ArrayList<>();
+		for (String city : asList("Laredo", "London", "Austin", "laredo")) {
+			WeatherDto dto = dto(city, "2023-03-20");
+			dto.setState("State");
+			batch.add(dto);
+		}
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch?upsert=true", batch, Integer[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		Integer[] ids = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(ids[0], ids[3]);
+		WeatherDto stored = new WeatherDto();
+		stored.setId(ids[0]);
+		assertStoredOn(stored, 0);
+		stored.setId(ids[1]);
+		assertStoredOn(stored, 1);
+		stored.setId(ids[2]);
+		assertStoredOn(stored, 2);
+	}
+
+	@Test
+	public void testFindByIdOnEveryShard() {
+		for (String city : asList("Laredo", "London", "Austin")) {
+			Integer id = create(city, "2023-03-20").getId();
+			ResponseEntity<WeatherDto> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class);
+			assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+			assertEquals(city, responseEntity.getBody().getCity());
+		}
+	}
+
+	@Test
+	public void testSearchMergesShards() {
+		List<WeatherDto> created = createSample();
+		List<Integer> byId = created.stream().map(WeatherDto::getId).sorted().collect(toList());
+		assertEquals(byId, searchIds(""));
+		assertEquals(ids(created, Comparator.comparing(WeatherDto::getDate).thenComparing(WeatherDto::getId)), searchIds("sort=date"));
+		assertEquals(ids(created, Comparator.comparing(WeatherDto::getDate).reversed().thenComparing(WeatherDto::getId)), searchIds("sort=-date"));
+		assertEquals(ids(created, Comparator.comparing(WeatherDto::getCity).thenComparing(WeatherDto::getId)), searchIds("sort=city"));
+		List<Integer> laredoAndAustin = created.stream()
+				.filter(dto -> !dto.getCity().equals("London"))
+				.sorted(Comparator.comparing(WeatherDto::getDate).thenComparing(WeatherDto::getId))
+				.map(WeatherDto::getId)
+				.collect(toList());
+		assertEquals(laredoAndAustin, searchIds("city=austin,LAREDO&sort=date"));
+	}
+
+	@Test
+	public void testStreamedAndPagedSearchesMergeShards() {
+		createSample();
+		List<Integer> expected = searchIds("sort=-date");
+		assertEquals(expected, searchIds("sort=-date&stream=true"));
+		List<Integer> paged = new ArrayList<>();
+		String url = controllerUrl + "?sort=-date&limit=2";
+		String token = null;
+		do {
+			ResponseEntity<WeatherDto[]> page = testRestTemplate.getForEntity(token == null ? url : url + "&after=" + token, WeatherDto[].class);
+			Arrays.stream(Objects.requireNonNull(page.getBody())).map(WeatherDto::getId).forEach(paged::add);
+			token = page.getHeaders().getFirst(HEADER_NEXT_PAGE_TOKEN);
+		} while (token != null);
+		assertEquals(expected, paged);
+	}
+
+	@Test
+	public void testCitySortIgnoresCaseAcrossShards() {
+		List<Integer> expected = asList(create("austin", "2023-03-20").getId(), create("KYIV", "2023-03-20").getId(),
+				create("laredo", "2023-03-20").getId(), create("London", "2023-03-20").getId());
+		assertEquals(expected, searchIds("sort=city"));
+		assertEquals(expected, searchIds("sort=city&stream=true"));
+		List<Integer> paged = new ArrayList<>();
+		String url = controllerUrl + "?sort=city&limit=1";
+		String token = null;
+		do {
+			ResponseEntity<WeatherDto[]> page = testRestTemplate.getForEntity(token == null ? url : url + "&after=" + token, WeatherDto[].class);
+			Arrays.stream(Objects.requireNonNull(page.getBody())).map(WeatherDto::getId).forEach(paged::add);
+			token = page.getHeaders().getFirst(HEADER_NEXT_PAGE_TOKEN);
+		} while (token != null);
+		assertEquals(expected, paged);
+	}
+
+	@Test
+	public void testBatchIsSplitByShard() {
+		List<WeatherDto> records = asList(dto("Austin", "2023-03-20"), dto("Laredo", "2023-03-20"), dto("London", "2023-03-20"),
+				dto("Austin", "2023-03-21"));
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch", records, Integer[].class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		Integer[] ids = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(4, ids.length);
+		int[] expectedShards = {2, 0, 1, 2};
+		for (int i = 0; i < ids.length; i++) {
+			assertStoredOn(testRestTemplate.getForObject(controllerUrl + "/" + ids[i], WeatherDto.class), expectedShards[i]);
+			assertEquals(records.get(i).getCity(), testRestTemplate.getForObject(controllerUrl + "/" + ids[i], WeatherDto.class).getCity());
+		}
+	}
+
+	@Test
+	public void testStatsMergeShards() {
+		createSample();
+		WeatherStatsDto[] stats = testRestTemplate.getForObject(controllerUrl + "/stats?granularity=month", WeatherStatsDto[].class);
+		assertEquals(asList("austin", "laredo", "london"), Arrays.stream(stats).map(stat -> stat.getCity().toLowerCase()).collect(toList()));
+		// two records of three readings
+		assertEquals(Long.valueOf(6), stats[1].getCount());
+	}
+
+	@Test
+	public void testMultiGetReadsTheShardsOfTheIds() {
+		List<Integer> requested = ids(createSample(), Comparator.comparing(WeatherDto::getId).reversed());
+		int missingId = requested.get(0) + SHARDS * 1000;
+		requested.add(2, missingId);
+		ResponseEntity<WeatherMultiGetDto> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/_mget", requested, WeatherMultiGetDto.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		WeatherMultiGetDto result = Objects.requireNonNull(responseEntity.getBody());
+		requested.remove(Integer.valueOf(missingId));
+		assertEquals(requested, result.getRecords().stream().map(WeatherDto::getId).collect(toList()));
+		assertEquals(singletonList(missingId), result.getMissingIds());
+	}
+
+	private List<WeatherDto> createSample() {
+		List<WeatherDto> created = new ArrayList<>();
+		created.add(create("London", "2023-03-21"));
+		created.add(create("Laredo", "2023-03-22"));
+		created.add(create("Austin", "2023-03-20"));
+		created.add(create("Laredo", "2023-03-20"));
+		created.add(create("London", "2023-03-23"));
+		created.add(create("Austin", "2023-03-22"));
+		return created;
+	}
+
+	private List<Integer> ids(List<WeatherDto> records, Comparator<WeatherDto> order) {
+		return records.stream().sorted(order).map(WeatherDto::getId).collect(toList());
+	}
+
+	private List<Integer> searchIds(String query) {
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "?" + query, WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		return Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList());
+	}
+
+	private void assertStoredOn(WeatherDto record, int expectedShard) {
+		assertEquals(expectedShard, Math.floorMod(record.getId(), SHARDS));
+		for (int shard = 0; shard < SHARDS; shard++) {
+			Integer count = shard(shard).queryForObject("SELECT COUNT(*) FROM weather WHERE id = ?", Integer.class, record.getId());
+			assertEquals(shard == expectedShard ? Integer.valueOf(1) : Integer.valueOf(0), count);
+		}
+	}
+
+	private WeatherDto create(String city, String date) {
+		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.postForEntity(controllerUrl, dto(city, date), WeatherDto.class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		return responseEntity.getBody();
+	}
+
+	private WeatherDto dto(String city, String date) {
+		WeatherDto dto = new WeatherDto();
+		dto.setCity(city);
+		dto.setDate(Dates.parse(date));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		return dto;
+	}
+
+	private JdbcTemplate shard(int shard) {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:shard" + shard + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		dataSource.setUser("root");
+		return new JdbcTemplate(dataSource);
+	}
+
+}
@@ -1,6 +1,24 @@
 package com.zcorum.weather;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.zcorum.weather.cache.SearchCacheKey;
+import com.zcorum.weather.converter.BinaryTemperaturesConverter;
+import com.zcorum.weather.dto.ImportReportDto;
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.WeatherMultiGetDto;
+import com.zcorum.weather.dto.StatsGranularity;
+import com.zcorum.weather.dto.WeatherStatsDto;
+import com.zcorum.weather.entity.WeatherRollupEntity;
+import com.zcorum.weather.maintenance.DuplicateReadings;
+import com.zcorum.weather.maintenance.IdSequenceSeeding;
+import com.zcorum.weather.maintenance.LegacyDataMigration;
+import com.zcorum.weather.maintenance.NaturalKeyIndex;
+import com.zcorum.weather.repository.WeatherRollupRepository;
+import com.zcorum.weather.rollup.WeatherRollups;
+import com.zcorum.weather.util.Dates;
+import com.zcorum.weather.web.filter.SqlProfileFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -8,27 +26,52 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.DefaultApplicationArguments;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_SEARCH;
+import static com.zcorum.weather.constants.Constants.HEADER_NEXT_PAGE_TOKEN;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_CBOR;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_CSV;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_NDJSON;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Sql(scripts = {"/create-default-db-data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
@@ -42,9 +85,31 @@ public class WeatherApiIntegrationTest {
 	@Autowired
 	private TestRestTemplate testRestTemplate;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private LegacyDataMigration legacyDataMigration;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private IdSequenceSeeding idSequenceSeeding;
+
+	@Autowired
+	private WeatherRollups weatherRollups;
+
+	@Autowired
+	private WeatherRollupRepository weatherRollupRepository;
+
 	@BeforeEach
 	public void before() {
 		controllerUrl = "http://localhost:" + serverPort + "/weather";
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
 	}
 
 	private static Stream<Arguments> testData() {
@@ -60,10 +125,38 @@ public class WeatherApiIntegrationTest {
 				Arguments.of("2023-03-21", null, "-city", asList(2, 6)),
 				Arguments.of(null, "London", "-city", emptyList()),
 				Arguments.of("2024-01-01", "Laredo", "city", emptyList()),
-				Arguments.of(null, "Laredo,Los Angeles", "city", asList(1, 2, 3, 4, 9, 10, 11, 12))
+				Arguments.of(null, "Laredo,Los Angeles", "city", asList(1, 2, 3, 4, 9, 10, 11, 12)),
+				Arguments.of("2023-03-20,2023-04-12,2023-03-22", null, null, asList(1, 3, 5, 7, 10)),
+				Arguments.of("2023-03-23,2023-03-21", "Laredo", "-date", asList(4, 2))
+		);
+	}
+
+	private static Stream<Arguments> dateRangeTestData() {
+		return Stream.of(
+				Arguments.of("2023-03-21", "2023-03-22", null, asList(2, 3, 6, 7)),
+				Arguments.of("2023-03-23", null, "Laredo,los angeles", asList(4, 9, 10, 11, 12)),
+				Arguments.of(null, "2023-03-20", null, asList(1, 5)),
+				Arguments.of("2023-03-24", "2023-04-10", null, emptyList())
 		);
 	}
 
+	@ParameterizedTest
+	@MethodSource("dateRangeTestData")
+	public void testDateRange(String from, String to, String city, List<Integer> expectedIds) {
+		String url = constructSearchUrl(null, city, null);
+		url += (url.contains("?") ? "&" : "?") + (from == null ? "" : "from=" + from + "&") + (to == null ? "" : "to=" + to);
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(url, WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		List<Integer> foundIds = Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList());
+		assertEquals(expectedIds, foundIds);
+	}
+
+	@Test
+	public void testWrongDateRangeFormat() {
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(controllerUrl + "?from=2023/03/21", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST.value(), responseEntity.getStatusCodeValue());
+	}
+
 	@ParameterizedTest
 	@MethodSource("testData")
 	public void test(String date, String city, String sort, List<Integer> expectedIds) {
@@ -74,6 +167,50 @@ public class WeatherApiIntegrationTest {
 		assertEquals(expectedIds, foundIds);
 	}
 
+	@ParameterizedTest
+	@MethodSource("testData")
+	public void testStream(String date, String city, String sort, List<Integer> expectedIds) {
+		String url = constructSearchUrl(date, city, sort, true);
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(url, WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		List<Integer> foundIds = Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList());
+		assertEquals(expectedIds, foundIds);
+	}
+
+	@ParameterizedTest
+	@MethodSource("testData")
+	public void testPages(String date, String city, String sort, List<Integer> expectedIds) {
+		for (int limit : asList(1, 5, 100)) {
+			List<Integer> foundIds = new ArrayList<>();
+			String after = null;
+			do {
+				String url = constructSearchUrl(date, city, sort);
+				url += (url.contains("?") ? "&" : "?") + "limit=" + limit + (after == null ? "" : "&after=" + after);
+				ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(url, WeatherDto[].class);
+				assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+				WeatherDto[] page = Objects.requireNonNull(responseEntity.getBody());
+				assertTrue(page.length <= limit);
+				Arrays.stream(page).map(WeatherDto::getId).forEach(foundIds::add);
+				after = responseEntity.getHeaders().getFirst(HEADER_NEXT_PAGE_TOKEN);
+			} while (after != null);
+			assertEquals(expectedIds, foundIds);
+		}
+	}
+
+	@Test
+	public void testWrongPageToken() {
+		String url = constructSearchUrl(null, null, "date") + "&limit=2&after=bm90IGEgdG9rZW4";
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(url, String.class);
+		assertEquals(HttpStatus.BAD_REQUEST.value(), responseEntity.getStatusCodeValue());
+	}
+
+	@Test
+	public void testWrongDateFormatStream() {
+		String url = constructSearchUrl("January 1st, 2023", null, null, true);
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(url, String.class);
+		assertEquals(HttpStatus.BAD_REQUEST.value(), responseEntity.getStatusCodeValue());
+	}
+
 	@Test
 	public void testWrongDateFormatSearch() {
 		String url = constructSearchUrl("January 1st, 2023", null, null);
@@ -87,6 +224,70 @@ public class WeatherApiIntegrationTest {
 		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class);
 		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
 		assertEquals(id, responseEntity.getBody().getId());
+		// record inserted in the legacy comma separated format
+		assertEquals(24, responseEntity.getBody().getTemperatures().size());
+		assertEquals(Double.valueOf(17.2), responseEntity.getBody().getTemperatures().get(0));
+	}
+
+	@Test
+	public void testLegacyTemperaturesAreRewritten() {
+		legacyDataMigration.run(null);
+		assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM weather WHERE temperatures_bin IS NULL AND temperatures IS NOT NULL", Integer.class));
+		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/1", WeatherDto.class);
+		assertEquals(24, responseEntity.getBody().getTemperatures().size());
+		assertEquals(Double.valueOf(17.2), responseEntity.getBody().getTemperatures().get(0));
+	}
+
+	@Test
+	public void testIdSequenceIsMovedPastStoredIds() {
+		jdbcTemplate.update("INSERT INTO weather (id, city, state, date) VALUES (5000, 'Laredo', 'Texas', '2023-01-01')");
+		idSequenceSeeding.afterPropertiesSet();
+		Long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR weather_id_seq", Long.class);
+		// the pooled optimizer hands out the 50 ids up to the value taken from the sequence
+		assertTrue(next - 49 > 5000);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testGetRecordByIdIsCached() {
+		Cache<Object, Object> cache = (Cache<Object, Object>) cacheManager.getCache(CACHE_WEATHER_BY_ID).getNativeCache();
+		long hits = cache.stats().hitCount();
+		testRestTemplate.getForEntity(controllerUrl + "/1", WeatherDto.class);
+		assertTrue(cache.asMap().containsKey(1));
+		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/1", WeatherDto.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals(Integer.valueOf(1), responseEntity.getBody().getId());
+		assertEquals(hits + 1, cache.stats().hitCount());
+	}
+
+	@Test
+	public void testCreateEvictsOnlyMatchingSearches() {
+		org.springframework.cache.Cache cache = cacheManager.getCache(CACHE_WEATHER_SEARCH);
+		testRestTemplate.getForEntity(constructSearchUrl(null, "laredo,Jacksonville", null), WeatherDto[].class);
+		testRestTemplate.getForEntity(constructSearchUrl("2023-03-21", null, null), WeatherDto[].class);
+		testRestTemplate.getForEntity(constructSearchUrl(null, "Los Angeles", null), WeatherDto[].class);
+		assertNotNull(cache.get(SearchCacheKey.of(null, null, null, "Jacksonville,Laredo", null)));
+
+		WeatherDto dto = generateDto();
+		dto.setCity("Laredo");
+		dto.setDate(Dates.parse("2023-03-21"));
+		Integer id = testRestTemplate.postForEntity(controllerUrl, dto, WeatherDto.class).getBody().getId();
+
+		assertNull(cache.get(SearchCacheKey.of(null, null, null, "Jacksonville,Laredo", null)));
+		assertNull(cache.get(SearchCacheKey.of("2023-03-21", null, null, null, null)));
+		assertNotNull(cache.get(SearchCacheKey.of(null, null, null, "Los Angeles", null)));
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(constructSearchUrl(null, "LAREDO", null), WeatherDto[].class);
+		List<Integer> foundIds = Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList());
+		assertEquals(asList(1, 2, 3, 4, id), foundIds);
+	}
+
+	@Test
+	public void testSqlProfileHeader() {
+		ResponseEntity<WeatherDto> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/1", WeatherDto.class);
+		String serverTiming = responseEntity.getHeaders().getFirst(SqlProfileFilter.HEADER_SERVER_TIMING);
+		assertNotNull(serverTiming);
+		assertTrue(serverTiming, serverTiming.matches("db;dur=\\d+\\.\\d;desc=\"1 statements\""));
 	}
 
 	@Test
@@ -114,6 +315,7 @@ public class WeatherApiIntegrationTest {
 		ResponseEntity<WeatherDto> getWeatherResponse = testRestTemplate.getForEntity(controllerUrl + "/" + responseEntity.getBody().getId(), WeatherDto.class);
 		assertEquals(HttpStatus.OK, getWeatherResponse.getStatusCode());
 		assertEquals(responseEntity.getBody().getId(), getWeatherResponse.getBody().getId());
+		assertEquals(dto.getTemperatures(), getWeatherResponse.getBody().getTemperatures());
 	}
 
 	@Test
@@ -132,9 +334,576 @@ public class WeatherApiIntegrationTest {
 		assertTrue(getWeatherResponse.getBody().getTemperatures().isEmpty());
 	}
 
+	@Test
+	public void testCreateBatch() {
+		List<WeatherDto> dtos = generateDtos(120);
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch", dtos, Integer[].class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		Integer[] ids = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(dtos.size(), ids.length);
+		assertEquals(dtos.size(), Arrays.stream(ids).distinct().count());
+
+		ResponseEntity<WeatherDto> getWeatherResponse = testRestTemplate.getForEntity(controllerUrl + "/" + ids[ids.length - 1], WeatherDto.class);
+		assertEquals(HttpStatus.OK, getWeatherResponse.getStatusCode());
+		assertEquals(dtos.get(0).getTemperatures(), getWeatherResponse.getBody().getTemperatures());
+	}
+
+	@Test
+	public void testCreateBatchFromNdjson() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (WeatherDto dto : generateDtos(3)) {
+			body.append(objectMapper.writeValueAsString(dto)).append('\n');
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(MEDIA_TYPE_NDJSON));
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch", new HttpEntity<>(body.toString(), headers), Integer[].class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		assertEquals(3, Objects.requireNonNull(responseEntity.getBody()).length);
+	}
+
+	@Test
+	public void testCreateRepeatedRecord() {
+		WeatherDto dto = generateDto();
+		assertEquals(HttpStatus.CREATED, testRestTemplate.postForEntity(controllerUrl, dto, WeatherDto.class).getStatusCode());
+		assertEquals(HttpStatus.CONFLICT, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+	}
+
+	@Test
+	public void testUpsertRepeatedRecord() {
+		WeatherDto dto = generateDto();
+		dto.setDate(Dates.parse("2023-05-01"));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		ResponseEntity<WeatherDto> first = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		assertEquals(HttpStatus.OK, first.getStatusCode());
+		dto.setCity("PITTSBURGH");
+		ResponseEntity<WeatherDto> retry = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		assertEquals(HttpStatus.OK, retry.getStatusCode());
+		assertEquals(first.getBody().getId(), retry.getBody().getId());
+
+		ResponseEntity<WeatherDto[]> found = testRestTemplate.getForEntity(constructSearchUrl(null, "pittsburgh", null), WeatherDto[].class);
+		assertEquals(1, Objects.requireNonNull(found.getBody()).length);
+		assertEquals("PITTSBURGH", found.getBody()[0].getCity());
+		WeatherStatsDto[] stats = testRestTemplate.getForEntity(controllerUrl + "/stats?city=pittsburgh&granularity=month", WeatherStatsDto[].class).getBody();
+		assertEquals(Long.valueOf(3), Objects.requireNonNull(stats)[0].getCount());
+	}
+
+	@Test
+	public void testUpsertRecordWithoutState() {
+		WeatherDto dto = generateDto();
+		dto.setCity("Kyiv");
+		dto.setState(null);
+		Integer id = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class).getBody().getId();
+		ResponseEntity<WeatherDto> retry = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		assertEquals(id, retry.getBody().getId());
+		// the version is not part of the body, only of the ETag
+		assertEquals("W/\"" + id + ".0\"", testRestTemplate.getForEntity(controllerUrl + "/" + id, String.class).getHeaders().getETag());
+		assertEquals(HttpStatus.CONFLICT, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+		assertEquals(1, Objects.requireNonNull(testRestTemplate.getForEntity(constructSearchUrl(null, "kyiv", null), WeatherDto[].class).getBody()).length);
+	}
+
+	@Test
+	public void testDuplicatesAreRemovedOnlyWhenRequested() {
+		jdbcTemplate.execute("DROP INDEX IF EXISTS " + NaturalKeyIndex.NAME);
+		// stored before the keys were filled
+		jdbcTemplate.update("INSERT INTO weather (id, city, state, date, temperatures) VALUES"
+				+ " (5001, 'LAREDO', 'Texas', '2023-03-20', '40.0'), (5002, 'Kyiv', NULL, '2023-03-20', '1.0'), (5003, 'kyiv', NULL, '2023-03-20', '2.0')");
+		IllegalStateException failure = assertThrows(IllegalStateException.class, () -> legacyDataMigration.run(null));
+		assertTrue(failure.getMessage().contains("(kyiv, , 2023-03-20) x2"));
+		assertTrue(failure.getMessage().contains("(laredo, Texas, 2023-03-20) x2"));
+		assertEquals(4, jdbcTemplate.queryForList(
+				"SELECT id FROM weather WHERE date = '2023-03-20' AND city_key IN ('laredo', 'kyiv')", Integer.class).size());
+
+		legacyDataMigration.run(new DefaultApplicationArguments("--" + DuplicateReadings.OPTION));
+		// the last stored reading is kept
+		assertEquals(asList(5001, 5003), jdbcTemplate.queryForList(
+				"SELECT id FROM weather WHERE date = '2023-03-20' AND city_key IN ('laredo', 'kyiv') ORDER BY id", Integer.class));
+		WeatherStatsDto[] stats = testRestTemplate.getForEntity(controllerUrl + "/stats?city=laredo&granularity=month", WeatherStatsDto[].class).getBody();
+		assertEquals(Long.valueOf(73), Objects.requireNonNull(stats)[0].getCount());
+		WeatherDto dto = generateDto();
+		dto.setCity("KYIV");
+		dto.setState(null);
+		dto.setDate(Dates.parse("2023-03-20"));
+		assertEquals(HttpStatus.CONFLICT, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+	}
+
+	@Test
+	public void testUpsertCorrectsRecord() {
+		WeatherDto dto = generateDto();
+		dto.setDate(Dates.parse("2023-05-01"));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		Integer id = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class).getBody().getId();
+		WeatherDto other = generateDto();
+		other.setDate(Dates.parse("2023-05-02"));
+		other.setTemperatures(asList(20.0));
+		testRestTemplate.postForEntity(controllerUrl, other, WeatherDto.class);
+		// cached by id, the correction must evict it
+		testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class);
+
+		dto.setTemperatures(asList(11.0, 13.0));
+		ResponseEntity<WeatherDto> corrected = testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		assertEquals(id, corrected.getBody().getId());
+		assertEquals(asList(11.0, 13.0), corrected.getBody().getTemperatures());
+		assertEquals(asList(11.0, 13.0), testRestTemplate.getForEntity(controllerUrl + "/" + id, WeatherDto.class).getBody().getTemperatures());
+
+		WeatherRollupEntity month = weatherRollupRepository.findById(new WeatherRollupEntity.Key(
+				StatsGranularity.MONTH, "pittsburgh", Dates.parse("2023-05-01"))).orElseThrow(AssertionError::new);
+		assertEquals(11.0, month.getTemperatureMin(), 1e-9);
+		assertEquals(20.0, month.getTemperatureMax(), 1e-9);
+		assertEquals(44.0, month.getTemperatureSum(), 1e-9);
+		assertEquals(Long.valueOf(3), month.getTemperatureCount());
+		WeatherRollupEntity year = weatherRollupRepository.findById(new WeatherRollupEntity.Key(
+				StatsGranularity.YEAR, "pittsburgh", Dates.parse("2023-01-01"))).orElseThrow(AssertionError::new);
+		assertEquals(Long.valueOf(3), year.getTemperatureCount());
+	}
+
+	@Test
+	public void testUpsertBatch() {
+		List<WeatherDto> dtos = generateDtos(3);
+		testRestTemplate.postForEntity(controllerUrl, dtos.get(1), WeatherDto.class);
+		List<WeatherDto> batch = new ArrayList<>(dtos);
+		batch.add(dtos.get(0));
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch?upsert=true", batch, Integer[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		Integer[] ids = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(4, ids.length);
+		assertEquals(3, Arrays.stream(ids).distinct().count());
+		assertEquals(ids[0], ids[3]);
+		ResponseEntity<WeatherDto[]> found = testRestTemplate.getForEntity(constructSearchUrl(null, "pittsburgh", null), WeatherDto[].class);
+		assertEquals(3, Objects.requireNonNull(found.getBody()).length);
+	}
+
+	@Test
+	public void testImportCsv() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(MEDIA_TYPE_CSV));
+		String csv = "date,lat,lon,city,state,temperatures\n"
+				+ "2023-05-01,40.44,-79.99,Pittsburgh,Pennsylvania,\"10.5,12.5,8.0\"\n"
+				+ "2023-05-02,40.44,-79.99,Pittsburgh,Pennsylvania,\"20.0\"\n"
+				+ "05/03/2023,40.44,-79.99,Pittsburgh,Pennsylvania,\"20.0\"\n";
+		ResponseEntity<ImportReportDto> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/import", new HttpEntity<>(csv, headers), ImportReportDto.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		ImportReportDto report = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(2, report.getStored());
+		assertEquals(1, report.getRejected());
+		assertEquals(4, report.getRejections().get(0).getLine());
+
+		ResponseEntity<WeatherDto[]> found = testRestTemplate.getForEntity(constructSearchUrl(null, "pittsburgh", "date"), WeatherDto[].class);
+		assertEquals(2, Objects.requireNonNull(found.getBody()).length);
+		assertEquals(asList(10.5, 12.5, 8.0), found.getBody()[0].getTemperatures());
+		WeatherStatsDto[] stats = testRestTemplate.getForEntity(controllerUrl + "/stats?city=pittsburgh&granularity=month", WeatherStatsDto[].class).getBody();
+		assertEquals(Long.valueOf(4), Objects.requireNonNull(stats)[0].getCount());
+	}
+
+	@Test
+	public void testExportCsv() {
+		legacyDataMigration.run(null);
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/export?format=csv&city=laredo&sort=-date", String.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals(MEDIA_TYPE_CSV, Objects.requireNonNull(responseEntity.getHeaders().getContentType()).toString());
+		assertEquals("attachment; filename=\"weather.csv\"", responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+		String[] lines = Objects.requireNonNull(responseEntity.getBody()).split("\n");
+		assertEquals(5, lines.length);
+		assertEquals("id,date,lat,lon,city,state,temperatures", lines[0]);
+		assertTrue(lines[1].startsWith("4,2023-03-23,41.396318548377,-74.757369084359,Laredo,Texas,\"18.5,17.4,"));
+	}
+
+	@Test
+	public void testExportGzipNdjson() throws IOException {
+		legacyDataMigration.run(null);
+		ResponseEntity<byte[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/export?gzip=true&from=2023-03-21&to=2023-03-22", byte[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("gzip", responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		List<WeatherDto> records = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(Objects.requireNonNull(responseEntity.getBody()))), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				records.add(objectMapper.readValue(line, WeatherDto.class));
+			}
+		}
+		assertEquals(asList(2, 3, 6, 7), records.stream().map(WeatherDto::getId).collect(toList()));
+		assertEquals(24, records.get(0).getTemperatures().size());
+	}
+
+	@Test
+	public void testExportWithWrongRequest() {
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.getForEntity(controllerUrl + "/export?format=xml", String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.getForEntity(controllerUrl + "/export?date=yesterday", String.class).getStatusCode());
+	}
+
+	@Test
+	public void testSearchNotModified() {
+		String url = constructSearchUrl(null, "laredo", null);
+		ResponseEntity<String> first = testRestTemplate.getForEntity(url, String.class);
+		String eTag = first.getHeaders().getETag();
+		assertNotNull(eTag);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> unchanged = testRestTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+		assertNull(unchanged.getBody());
+		assertTrue(unchanged.getHeaders().getVary().contains(HttpHeaders.ACCEPT));
+
+		testRestTemplate.postForEntity(controllerUrl, generateDto(), WeatherDto.class);
+		ResponseEntity<String> changed = testRestTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertEquals(first.getBody(), changed.getBody());
+		assertNotEquals(eTag, changed.getHeaders().getETag());
+	}
+
+	@Test
+	public void testSearchChangedByAnotherInstance() {
+		String url = constructSearchUrl(null, "laredo", null);
+		String eTag = testRestTemplate.getForEntity(url, String.class).getHeaders().getETag();
+
+		// the way another instance writes, the search stays cached here
+		jdbcTemplate.update("INSERT INTO weather (id, city, state, date, city_key, state_key) VALUES (5010, 'Laredo', 'Texas', '2023-05-01', 'laredo', 'Texas')");
+		jdbcTemplate.update("UPDATE weather_changes SET changes = changes + 1");
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<String> changed = testRestTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertNotEquals(eTag, changed.getHeaders().getETag());
+		assertTrue(changed.getBody().contains("\"id\":5010"));
+	}
+
+	@Test
+	public void testFindByIdNotModified() {
+		List<WeatherDto> dtos = generateDtos(2);
+		WeatherDto dto = dtos.get(0);
+		dto.setTemperatures(asList(10.5, 12.5));
+		Integer id = testRestTemplate.postForEntity(controllerUrl, dto, WeatherDto.class).getBody().getId();
+		String eTag = testRestTemplate.getForEntity(controllerUrl + "/" + id, String.class).getHeaders().getETag();
+		assertEquals("W/\"" + id + ".0\"", eTag);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		// another record leaves the tag of this one valid
+		testRestTemplate.postForEntity(controllerUrl, dtos.get(1), WeatherDto.class);
+		ResponseEntity<WeatherDto> unchanged = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET, new HttpEntity<>(headers), WeatherDto.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+		// repeating the reading keeps the version
+		testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		ResponseEntity<WeatherDto> repeated = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET, new HttpEntity<>(headers), WeatherDto.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, repeated.getStatusCode());
+
+		dto.setTemperatures(asList(11.0));
+		testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, WeatherDto.class);
+		ResponseEntity<WeatherDto> corrected = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET, new HttpEntity<>(headers), WeatherDto.class);
+		assertEquals(HttpStatus.OK, corrected.getStatusCode());
+		assertEquals("W/\"" + id + ".1\"", corrected.getHeaders().getETag());
+		assertEquals(singletonList(11.0), corrected.getBody().getTemperatures());
+	}
+
+	@Test
+	public void testCompressedSearch() throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		ResponseEntity<byte[]> responseEntity = testRestTemplate.exchange(constructSearchUrl(null, null, null), HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals("gzip", responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Objects.requireNonNull(responseEntity.getBody())))) {
+			assertEquals(12, objectMapper.readValue(in, WeatherDto[].class).length);
+		}
+	}
+
+	@Test
+	public void testCborRecord() throws IOException {
+		ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+		WeatherDto dto = generateDto();
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(MEDIA_TYPE_CBOR));
+		headers.setAccept(singletonList(MediaType.valueOf(MEDIA_TYPE_CBOR)));
+		ResponseEntity<byte[]> created = testRestTemplate.postForEntity(controllerUrl, new HttpEntity<>(cborMapper.writeValueAsBytes(dto), headers), byte[].class);
+		assertEquals(HttpStatus.CREATED, created.getStatusCode());
+		assertEquals(MEDIA_TYPE_CBOR, Objects.requireNonNull(created.getHeaders().getContentType()).toString());
+		Integer id = cborMapper.readValue(created.getBody(), WeatherDto.class).getId();
+
+		ResponseEntity<byte[]> found = testRestTemplate.exchange(controllerUrl + "/" + id, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+		WeatherDto record = cborMapper.readValue(found.getBody(), WeatherDto.class);
+		assertTrue(found.getHeaders().getVary().contains(HttpHeaders.ACCEPT));
+		assertEquals(dto.getTemperatures(), record.getTemperatures());
+		assertEquals(dto.getCity(), record.getCity());
+		// JSON without an Accept header
+		assertEquals(MediaType.APPLICATION_JSON, testRestTemplate.getForEntity(controllerUrl + "/" + id, String.class).getHeaders().getContentType());
+	}
+
+	@Test
+	public void testCreateBatchFromCbor() throws IOException {
+		ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		// a CBOR sequence, one record after the other
+		for (WeatherDto dto : generateDtos(3)) {
+			body.write(cborMapper.writeValueAsBytes(dto));
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(MEDIA_TYPE_CBOR));
+		ResponseEntity<Integer[]> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch", new HttpEntity<>(body.toByteArray(), headers), Integer[].class);
+		assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
+		assertEquals(3, Objects.requireNonNull(responseEntity.getBody()).length);
+		assertEquals(24, testRestTemplate.getForEntity(controllerUrl + "/" + responseEntity.getBody()[2], WeatherDto.class).getBody().getTemperatures().size());
+	}
+
+	@Test
+	public void testUpsertRecordWithoutCity() {
+		WeatherDto dto = generateDto();
+		dto.setCity(null);
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.postForEntity(controllerUrl + "/batch?upsert=true", singletonList(dto), String.class).getStatusCode());
+	}
+
+	@Test
+	public void testOnlyRepeatedReadingsConflict() {
+		WeatherDto dto = generateDto();
+		dto.setState(String.join("", Collections.nCopies(300, "x")));
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+	}
+
+	@Test
+	public void testCreateWithTooManyReadings() {
+		WeatherDto dto = generateDto();
+		dto.setTemperatures(Collections.nCopies(BinaryTemperaturesConverter.MAX_READINGS + 1, 20.5));
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.postForEntity(controllerUrl + "?upsert=true", dto, String.class).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, testRestTemplate.postForEntity(controllerUrl + "/batch", asList(generateDto(), dto), String.class).getStatusCode());
+
+		dto.setTemperatures(Collections.nCopies(BinaryTemperaturesConverter.MAX_READINGS, 20.5));
+		assertEquals(HttpStatus.CREATED, testRestTemplate.postForEntity(controllerUrl, dto, String.class).getStatusCode());
+	}
+
+	@Test
+	public void testCreateMalformedBatch() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/batch", new HttpEntity<>("[{\"city\": \"Pittsburgh\"}, {\"city\"", headers), String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+	}
+
+	@Test
+	public void testDailyStats() {
+		// summaries of the records inserted in the legacy format are filled by the migration
+		legacyDataMigration.run(null);
+		ResponseEntity<WeatherStatsDto[]> responseEntity = testRestTemplate.getForEntity(
+				controllerUrl + "/stats?city=laredo&from=2023-03-21&to=2023-03-22", WeatherStatsDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		WeatherStatsDto[] stats = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(2, stats.length);
+		assertEquals("Laredo", stats[0].getCity());
+		assertEquals("2023-03-21", stats[0].getPeriod());
+		assertEquals(15.1, stats[0].getMin(), 1e-9);
+		assertEquals(19.9, stats[0].getMax(), 1e-9);
+		assertEquals(411.8 / 24, stats[0].getMean(), 1e-9);
+		assertEquals(Long.valueOf(24), stats[0].getCount());
+		assertEquals("2023-03-22", stats[1].getPeriod());
+		assertEquals(20.0, stats[1].getMax(), 1e-9);
+	}
+
+	@Test
+	public void testMonthlyAndYearlyStats() {
+		legacyDataMigration.run(null);
+		ResponseEntity<WeatherStatsDto[]> monthly = testRestTemplate.getForEntity(
+				controllerUrl + "/stats?city=Jacksonville,Los%20Angeles&granularity=month", WeatherStatsDto[].class);
+		assertEquals(HttpStatus.OK, monthly.getStatusCode());
+		WeatherStatsDto[] stats = Objects.requireNonNull(monthly.getBody());
+		assertEquals(2, stats.length);
+		assertEquals("Jacksonville", stats[0].getCity());
+		assertEquals("2023-03", stats[0].getPeriod());
+		assertEquals(25.0, stats[0].getMin(), 1e-9);
+		assertEquals(30.0, stats[0].getMax(), 1e-9);
+		assertEquals((659.9 + 662.9 + 669.9 + 658.9) / 96, stats[0].getMean(), 1e-9);
+		assertEquals(Long.valueOf(96), stats[0].getCount());
+		assertEquals("Los Angeles", stats[1].getCity());
+		assertEquals("2023-04", stats[1].getPeriod());
+
+		ResponseEntity<WeatherStatsDto[]> yearly = testRestTemplate.getForEntity(controllerUrl + "/stats?granularity=year", WeatherStatsDto[].class);
+		stats = Objects.requireNonNull(yearly.getBody());
+		assertEquals(3, stats.length);
+		assertEquals("2023", stats[2].getPeriod());
+		assertEquals(30.0, stats[2].getMin(), 1e-9);
+		assertEquals(35.0, stats[2].getMax(), 1e-9);
+		assertEquals(Long.valueOf(96), stats[2].getCount());
+	}
+
+	@Test
+	public void testStatsOfCreatedRecord() {
+		WeatherDto dto = generateDto();
+		dto.setCity("Pittsburgh");
+		dto.setDate(Dates.parse("2023-05-01"));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		testRestTemplate.postForEntity(controllerUrl, dto, WeatherDto.class);
+		ResponseEntity<WeatherStatsDto[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/stats?city=pittsburgh", WeatherStatsDto[].class);
+		WeatherStatsDto[] stats = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(1, stats.length);
+		assertEquals("2023-05-01", stats[0].getPeriod());
+		assertEquals(8.0, stats[0].getMin(), 1e-9);
+		assertEquals(12.5, stats[0].getMax(), 1e-9);
+		assertEquals(31.0 / 3, stats[0].getMean(), 1e-9);
+	}
+
+	@Test
+	public void testMonthlyStatsOfPartialMonths() {
+		legacyDataMigration.run(null);
+		ResponseEntity<WeatherStatsDto[]> responseEntity = testRestTemplate.getForEntity(
+				controllerUrl + "/stats?city=laredo,los%20angeles&from=2023-03-21&to=2023-04-12&granularity=month", WeatherStatsDto[].class);
+		WeatherStatsDto[] stats = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(2, stats.length);
+		assertEquals("Laredo", stats[0].getCity());
+		assertEquals("2023-03", stats[0].getPeriod());
+		assertEquals(15.1, stats[0].getMin(), 1e-9);
+		assertEquals(Long.valueOf(72), stats[0].getCount());
+		assertEquals("Los Angeles", stats[1].getCity());
+		assertEquals(Long.valueOf(48), stats[1].getCount());
+		assertEquals((790.0 + 775.1) / 48, stats[1].getMean(), 1e-9);
+	}
+
+	@Test
+	public void testRollupsOfCreatedRecords() {
+		WeatherDto first = generateDto();
+		first.setCity("Pittsburgh");
+		first.setDate(Dates.parse("2023-05-01"));
+		first.setTemperatures(asList(10.5, 12.5, 8.0));
+		testRestTemplate.postForEntity(controllerUrl, first, WeatherDto.class);
+		WeatherDto second = generateDto();
+		second.setCity("pittsburgh");
+		second.setDate(Dates.parse("2023-05-31"));
+		second.setTemperatures(asList(20.0, 4.0));
+		WeatherDto third = generateDto();
+		third.setCity("Pittsburgh");
+		third.setDate(Dates.parse("2023-06-01"));
+		third.setTemperatures(asList(30.0));
+		testRestTemplate.postForEntity(controllerUrl + "/batch", asList(second, third), Integer[].class);
+
+		WeatherRollupEntity month = weatherRollupRepository.findById(new WeatherRollupEntity.Key(
+				StatsGranularity.MONTH, "pittsburgh", Dates.parse("2023-05-01"))).orElseThrow(AssertionError::new);
+		assertEquals(4.0, month.getTemperatureMin(), 1e-9);
+		assertEquals(20.0, month.getTemperatureMax(), 1e-9);
+		assertEquals(55.0, month.getTemperatureSum(), 1e-9);
+		assertEquals(Long.valueOf(5), month.getTemperatureCount());
+		WeatherRollupEntity year = weatherRollupRepository.findById(new WeatherRollupEntity.Key(
+				StatsGranularity.YEAR, "pittsburgh", Dates.parse("2023-01-01"))).orElseThrow(AssertionError::new);
+		assertEquals(30.0, year.getTemperatureMax(), 1e-9);
+		assertEquals(Long.valueOf(6), year.getTemperatureCount());
+
+		ResponseEntity<WeatherStatsDto[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/stats?city=pittsburgh&granularity=month", WeatherStatsDto[].class);
+		WeatherStatsDto[] stats = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(2, stats.length);
+		assertEquals("2023-05", stats[0].getPeriod());
+		assertEquals(11.0, stats[0].getMean(), 1e-9);
+		assertEquals("2023-06", stats[1].getPeriod());
+	}
+
+	@Test
+	public void testRebuiltRollupsMatchIncrementalOnes() {
+		legacyDataMigration.run(null);
+		WeatherStatsDto[] incremental = testRestTemplate.getForEntity(controllerUrl + "/stats?granularity=month", WeatherStatsDto[].class).getBody();
+		weatherRollupRepository.deleteAll();
+		assertEquals(0, Objects.requireNonNull(testRestTemplate.getForEntity(controllerUrl + "/stats?granularity=year", WeatherStatsDto[].class).getBody()).length);
+
+		assertEquals(6, weatherRollups.rebuild());
+		WeatherStatsDto[] rebuilt = Objects.requireNonNull(testRestTemplate.getForEntity(controllerUrl + "/stats?granularity=month", WeatherStatsDto[].class).getBody());
+		assertEquals(Objects.requireNonNull(incremental).length, rebuilt.length);
+		for (int i = 0; i < rebuilt.length; i++) {
+			assertEquals(incremental[i].getPeriod(), rebuilt[i].getPeriod());
+			assertEquals(incremental[i].getCount(), rebuilt[i].getCount());
+			assertEquals(incremental[i].getMean(), rebuilt[i].getMean(), 1e-9);
+		}
+	}
+
+	@Test
+	public void testSearchMetricsArePublished() {
+		legacyDataMigration.run(null);
+		testRestTemplate.getForEntity(constructSearchUrl("2023-03-20,2023-03-21", "Laredo", "-date"), WeatherDto[].class);
+		// served from the cache, so no more rows are fetched
+		testRestTemplate.getForEntity(constructSearchUrl("2023-03-20,2023-03-21", "Laredo", "-date"), WeatherDto[].class);
+		// a multi-get on the search path is not a search
+		testRestTemplate.getForEntity(controllerUrl + "?ids=1&city=a,b,c,d,e,f&from=2023-01-01&sort=-city", WeatherMultiGetDto.class);
+		String scrape = testRestTemplate.getForObject("http://localhost:" + serverPort + "/actuator/prometheus", String.class);
+		assertTrue(scrape.contains("weather_service_seconds_count{exception=\"none\",method=\"search\",}"));
+		assertTrue(scrape.contains("weather_search_seconds_bucket{cities=\"1\",date=\"days\",method=\"search\",sort=\"-date\","));
+		assertTrue(scrape.contains("weather_search_rows_sum{cities=\"1\",date=\"days\",method=\"search\",sort=\"-date\",} 2.0"));
+		assertTrue(scrape.contains("weather_search_bytes_count{cities=\"1\",date=\"days\",method=\"search\",sort=\"-date\",} 2.0"));
+		assertFalse(scrape.contains("weather_search_bytes_count{cities=\"6+\",date=\"range\""));
+		assertTrue(scrape.contains("weather_search_coalescing_total{role=\"leader\",}"));
+		assertFalse(scrape.contains("weather_search_coalescing_total{role=\"leader\",} 0.0"));
+		assertTrue(scrape.contains("weather_temperatures_decode_seconds_count{format=\"text\",}"));
+		assertTrue(scrape.contains("http_server_requests_seconds_bucket{"));
+	}
+
+	@Test
+	public void testNear() {
+		legacyDataMigration.run(null);
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=41.4&lon=-74.75&radiusKm=10", WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals(asList(1, 2, 3, 4), Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList()));
+
+		responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=41.4&lon=-74.75&radiusKm=10&date=2023-03-21,2023-03-23", WeatherDto[].class);
+		assertEquals(asList(2, 4), Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList()));
+	}
+
+	@Test
+	public void testNearest() {
+		legacyDataMigration.run(null);
+		ResponseEntity<WeatherDto[]> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=40.4&lon=-121.5&k=2&date=2023-03-20", WeatherDto[].class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		assertEquals(asList(5, 1), Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList()));
+
+		responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=41.4&lon=-74.75&k=5", WeatherDto[].class);
+		assertEquals(asList(1, 2, 3, 4, 5), Arrays.stream(Objects.requireNonNull(responseEntity.getBody())).map(WeatherDto::getId).collect(toList()));
+	}
+
+	@Test
+	public void testNearWithWrongLocation() {
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=100&lon=0&radiusKm=10", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+		responseEntity = testRestTemplate.getForEntity(controllerUrl + "/near?lat=10&lon=0&radiusKm=-1", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+	}
+
+	@Test
+	public void testStatsWithWrongGranularity() {
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/stats?granularity=week", String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+	}
+
+	@Test
+	public void testMultiGet() {
+		Integer[] ids = Objects.requireNonNull(testRestTemplate.postForEntity(controllerUrl + "/batch", generateDtos(3), Integer[].class).getBody());
+		int missingId = ids[2] + 1000;
+		String url = controllerUrl + "?ids=" + ids[2] + "," + missingId + "," + ids[0] + "," + ids[2];
+		ResponseEntity<WeatherMultiGetDto> responseEntity = testRestTemplate.getForEntity(url, WeatherMultiGetDto.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		WeatherMultiGetDto result = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(asList(ids[2], ids[0]), result.getRecords().stream().map(WeatherDto::getId).collect(toList()));
+		assertEquals(singletonList(missingId), result.getMissingIds());
+	}
+
+	@Test
+	public void testMultiGetThousandsOfIds() {
+		Integer[] ids = Objects.requireNonNull(testRestTemplate.postForEntity(controllerUrl + "/batch", generateDtos(2500), Integer[].class).getBody());
+		List<Integer> requested = new ArrayList<>(asList(ids));
+		Collections.reverse(requested);
+		ResponseEntity<WeatherMultiGetDto> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/_mget", requested, WeatherMultiGetDto.class);
+		assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+		WeatherMultiGetDto result = Objects.requireNonNull(responseEntity.getBody());
+		assertEquals(requested, result.getRecords().stream().map(WeatherDto::getId).collect(toList()));
+		assertEquals(emptyList(), result.getMissingIds());
+	}
+
+	@Test
+	public void testMultiGetTooManyIds() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 10001; id++) {
+			ids.add(id);
+		}
+		ResponseEntity<String> responseEntity = testRestTemplate.postForEntity(controllerUrl + "/_mget", ids, String.class);
+		assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+	}
+
 	private WeatherDto generateDto() {
 		WeatherDto dto = new WeatherDto();
-		dto.setDate(new Date());
+		dto.setDate(LocalDate.now());
 		dto.setCity("Pittsburgh");
 		dto.setState("Pennsylvania");
 		dto.setLat(-2.78587);
@@ -143,7 +912,22 @@ public class WeatherApiIntegrationTest {
 		return dto;
 	}
 
+	// one record per day back from today, the city, state and date of a record are unique
+	private List<WeatherDto> generateDtos(int count) {
+		List<WeatherDto> dtos = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			WeatherDto dto = generateDto();
+			dto.setDate(LocalDate.now().minusDays(i));
+			dtos.add(dto);
+		}
+		return dtos;
+	}
+
 	private String constructSearchUrl(String date, String city, String sort) {
+		return constructSearchUrl(date, city, sort, false);
+	}
+
+	private String constructSearchUrl(String date, String city, String sort, boolean stream) {
 		UriComponentsBuilder urlBuilder = UriComponentsBuilder.fromHttpUrl(controllerUrl);
 		if (date != null) {
 			urlBuilder = urlBuilder.queryParam("date", date);
@@ -154,6 +938,9 @@ public class WeatherApiIntegrationTest {
 		if (sort != null) {
 			urlBuilder = urlBuilder.queryParam("sort", sort);
 		}
+		if (stream) {
+			urlBuilder = urlBuilder.queryParam("stream", true);
+		}
 		return urlBuilder.toUriString();
 	}
 
@@ -0,0 +1,72 @@
+package com.zcorum.weather;
+
+import com.zcorum.weather.dto.IngestStatusDto;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.util.Dates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+
+import static com.zcorum.weather.dto.IngestStatusDto.State.QUEUED;
+import static com.zcorum.weather.dto.IngestStatusDto.State.STORED;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.port=0",
+		"spring.datasource.url=jdbc:h2:mem:write-behind;MODE=MySQL;DB_CLOSE_DELAY=-1",
+		"weather.ingest.write-behind.enabled=true",
+		"weather.ingest.write-behind.linger=10ms"
+})
+public class WriteBehindIngestIntegrationTest {
+
+	@LocalServerPort
+	private int serverPort;
+
+	private String controllerUrl;
+
+	@Autowired
+	private TestRestTemplate testRestTemplate;
+
+	@BeforeEach
+	public void before() {
+		controllerUrl = "http://localhost:" + serverPort + "/weather";
+	}
+
+	@Test
+	public void testCreateIsAcceptedAndStoredLater() throws InterruptedException {
+		WeatherDto dto = new WeatherDto();
+		dto.setCity("Pittsburgh");
+		dto.setDate(Dates.parse("2023-05-01"));
+		dto.setTemperatures(asList(10.5, 12.5, 8.0));
+		ResponseEntity<IngestStatusDto> accepted = testRestTemplate.postForEntity(controllerUrl, dto, IngestStatusDto.class);
+		assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+		URI location = accepted.getHeaders().getLocation();
+		assertNotNull(location);
+		assertEquals(controllerUrl + "/ingest/" + accepted.getBody().getTicket(), location.toString());
+
+		IngestStatusDto status = accepted.getBody();
+		for (int attempt = 0; attempt < 100 && status.getState() == QUEUED; attempt++) {
+			Thread.sleep(20);
+			status = testRestTemplate.getForObject(location, IngestStatusDto.class);
+		}
+		assertEquals(STORED, status.getState());
+		WeatherDto stored = testRestTemplate.getForObject(controllerUrl + "/" + status.getId(), WeatherDto.class);
+		assertEquals("Pittsburgh", stored.getCity());
+	}
+
+	@Test
+	public void testUnknownTicket() {
+		ResponseEntity<String> responseEntity = testRestTemplate.getForEntity(controllerUrl + "/ingest/unknown", String.class);
+		assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.zcorum.weather.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheFillGuardTest {
+
+	@Mock
+	private WeatherChanges weatherChanges;
+
+	@Mock
+	private ProceedingJoinPoint joinPoint;
+
+	@Test
+	public void testReadWithoutChangeIsNotStale() throws Throwable {
+		given(weatherChanges.count()).willReturn(3L);
+		given(joinPoint.proceed()).willAnswer(invocation -> CacheFillGuard.isStale());
+		assertEquals(false, new CacheFillGuard(weatherChanges).track(joinPoint));
+	}
+
+	@Test
+	public void testReadOverlappingChangeIsStale() throws Throwable {
+		given(weatherChanges.count()).willReturn(3L, 4L);
+		given(joinPoint.proceed()).willAnswer(invocation -> CacheFillGuard.isStale());
+		assertEquals(true, new CacheFillGuard(weatherChanges).track(joinPoint));
+		// not tracked after the read
+		assertFalse(CacheFillGuard.isStale());
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.zcorum.weather.cache;
+
+import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.exception.WrongDateFormatException;
+import com.zcorum.weather.util.Dates;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCacheKeyTest {
+
+	@Test
+	public void testCitiesAreNormalized() {
+		assertEquals(SearchCacheKey.of(null, null, null, "London,kyiv", null), SearchCacheKey.of(null, null, null, "kyiv,london,LONDON", ""));
+		assertEquals(SearchCacheKey.of("2023-03-20", null, null, "Kyiv", "date"), SearchCacheKey.of("2023-03-20", null, null, "kyiv", "date"));
+		assertNotEquals(SearchCacheKey.of(null, null, null, "kyiv", "date"), SearchCacheKey.of(null, null, null, "kyiv", "-date"));
+		assertNotEquals(SearchCacheKey.of("2023-03-20", null, null, "kyiv", null), SearchCacheKey.of("2023-03-21", null, null, "kyiv", null));
+	}
+
+	@Test
+	public void testDatesAreNormalized() {
+		assertEquals(SearchCacheKey.of("2023-03-22,2023-03-20", null, null, null, null), SearchCacheKey.of("2023-03-20,2023-03-22,2023-03-20", null, null, null, null));
+		assertNotEquals(SearchCacheKey.of(null, "2023-03-20", null, null, null), SearchCacheKey.of(null, null, "2023-03-20", null, null));
+	}
+
+	@Test
+	public void testMayContainDateRange() {
+		WeatherChangedEvent event = event("Kyiv", "2023-03-20");
+		assertTrue(SearchCacheKey.of(null, "2023-03-20", "2023-03-26", null, null).mayContain(event));
+		assertTrue(SearchCacheKey.of(null, null, "2023-03-20", "kyiv", null).mayContain(event));
+		assertTrue(SearchCacheKey.of("2023-03-19,2023-03-20", null, null, null, null).mayContain(event));
+		assertFalse(SearchCacheKey.of(null, "2023-03-21", null, null, null).mayContain(event));
+		assertFalse(SearchCacheKey.of(null, null, "2023-03-19", null, null).mayContain(event));
+		assertFalse(SearchCacheKey.of("2023-03-19,2023-03-20", "2023-03-01", "2023-03-19", null, null).mayContain(event));
+	}
+
+	@Test(expected = WrongDateFormatException.class)
+	public void testWrongDate() {
+		SearchCacheKey.of("January 1st, 2023", null, null, null, null);
+	}
+
+	@Test
+	public void testMayContain() {
+		WeatherChangedEvent event = event("Kyiv", "2023-03-20");
+		assertTrue(SearchCacheKey.of(null, null, null, null, null).mayContain(event));
+		assertTrue(SearchCacheKey.of(null, null, null, "london,KYIV", null).mayContain(event));
+		assertTrue(SearchCacheKey.of("2023-03-20", null, null, null, null).mayContain(event));
+		assertTrue(SearchCacheKey.of("2023-03-20", null, null, "kyiv", "-date").mayContain(event));
+		assertFalse(SearchCacheKey.of(null, null, null, "london", null).mayContain(event));
+		assertFalse(SearchCacheKey.of("2023-03-21", null, null, "kyiv", null).mayContain(event));
+		assertFalse(SearchCacheKey.of("2023-03-21", null, null, null, null).mayContain(event));
+	}
+
+	private WeatherChangedEvent event(String city, String date) {
+		WeatherEntity entity = new WeatherEntity();
+		entity.setId(1);
+		entity.setCity(city);
+		entity.setDate(Dates.parse(date));
+		WeatherChangedEvent event = new WeatherChangedEvent();
+		event.add(entity);
+		return event;
+	}
+
+}
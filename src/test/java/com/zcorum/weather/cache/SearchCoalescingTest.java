@@ -0,0 +1,118 @@
+package com.zcorum.weather.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchCoalescingTest {
+
+	private static final Object[] KYIV = {"2023-03-20", null, null, "Kyiv", null};
+
+	@Mock
+	private WeatherChanges weatherChanges;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final ExecutorService callers = Executors.newCachedThreadPool();
+
+	private final CountDownLatch started = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final AtomicInteger executions = new AtomicInteger();
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void testSameSearchRunsOnce() throws Exception {
+		SearchCoalescing coalescing = new SearchCoalescing(weatherChanges, meterRegistry, Duration.ofSeconds(10));
+		Future<Object> leader = callers.submit(() -> coalesce(coalescing, KYIV));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// the same query written differently
+		Future<Object> follower = callers.submit(() -> coalesce(coalescing, new Object[]{"2023-03-20", null, null, "kyiv", ""}));
+		Thread.sleep(200);
+		release.countDown();
+		assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, executions.get());
+		assertEquals(1.0, count("leader"), 0);
+		assertEquals(1.0, count("follower"), 0);
+	}
+
+	@Test
+	public void testSearchAfterChangeRunsAgain() throws Exception {
+		given(weatherChanges.count()).willReturn(0L, 1L);
+		SearchCoalescing coalescing = new SearchCoalescing(weatherChanges, meterRegistry, Duration.ofSeconds(10));
+		Future<Object> leader = callers.submit(() -> coalesce(coalescing, KYIV));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Future<Object> next = callers.submit(() -> coalesce(coalescing, KYIV));
+		Thread.sleep(200);
+		release.countDown();
+		leader.get(5, TimeUnit.SECONDS);
+		next.get(5, TimeUnit.SECONDS);
+		assertEquals(2, executions.get());
+		assertEquals(2.0, count("leader"), 0);
+		assertEquals(0.0, count("follower"), 0);
+	}
+
+	@Test
+	public void testWaitIsBounded() throws Exception {
+		SearchCoalescing coalescing = new SearchCoalescing(weatherChanges, meterRegistry, Duration.ofMillis(50));
+		callers.submit(() -> coalesce(coalescing, KYIV));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// runs the search itself while the leader is still blocked
+		coalesce(coalescing, KYIV);
+		assertEquals(2, executions.get());
+		assertEquals(1.0, count("timeout"), 0);
+	}
+
+	private Object coalesce(SearchCoalescing coalescing, Object[] args) throws Exception {
+		ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+		given(joinPoint.getArgs()).willReturn(args);
+		try {
+			given(joinPoint.proceed()).willAnswer(invocation -> search());
+			return coalescing.coalesce(joinPoint);
+		} catch (Exception e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private List<String> search() throws InterruptedException {
+		if (executions.incrementAndGet() == 1) {
+			started.countDown();
+			release.await(5, TimeUnit.SECONDS);
+		}
+		return singletonList("result " + executions.get());
+	}
+
+	private double count(String role) {
+		return meterRegistry.get("weather.search.coalescing").tag("role", role).counter().count();
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.zcorum.weather.converter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryTemperaturesConverterTest {
+
+	private final BinaryTemperaturesConverter converter = new BinaryTemperaturesConverter();
+
+	@Test
+	public void testNullRoundTrip() {
+		assertNull(converter.convertToDatabaseColumn(null));
+		assertNull(converter.convertToEntityAttribute(null));
+	}
+
+	@Test
+	public void testEmptyRoundTrip() {
+		byte[] packed = converter.convertToDatabaseColumn(asList());
+		assertEquals(3, packed.length);
+		assertTrue(converter.convertToEntityAttribute(packed).isEmpty());
+	}
+
+	@Test
+	public void testMaxReadingsFitTheColumn() {
+		double[] values = new double[BinaryTemperaturesConverter.MAX_READINGS];
+		Arrays.fill(values, 0.1234);
+		assertTrue(converter.convertToDatabaseColumn(TemperatureList.wrap(values)).length <= BinaryTemperaturesConverter.COLUMN_LENGTH);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyReadings() {
+		converter.convertToDatabaseColumn(TemperatureList.wrap(new double[BinaryTemperaturesConverter.MAX_READINGS + 1]));
+	}
+
+	@Test
+	public void testCentiDegreesAreStoredAsInt16() {
+		List<Double> temperatures = asList(17.3, -16.85, 0.0, 25.7, 327.67, -327.68);
+		byte[] packed = converter.convertToDatabaseColumn(temperatures);
+		assertEquals(BinaryTemperaturesConverter.VERSION_INT16_CENTI, packed[0]);
+		assertEquals(3 + temperatures.size() * 2, packed.length);
+		assertEquals(temperatures, converter.convertToEntityAttribute(packed));
+	}
+
+	@Test
+	public void testNotScalableValuesAreStoredAsFloat64() {
+		List<Double> temperatures = asList(17.3, 16.123, 400.5);
+		byte[] packed = converter.convertToDatabaseColumn(temperatures);
+		assertEquals(BinaryTemperaturesConverter.VERSION_FLOAT64, packed[0]);
+		assertEquals(3 + temperatures.size() * 8, packed.length);
+		assertEquals(temperatures, converter.convertToEntityAttribute(packed));
+	}
+
+	@Test
+	public void testNullReadingsAreSkipped() {
+		byte[] packed = converter.convertToDatabaseColumn(asList(1.5, null, 2.5));
+		assertEquals(asList(1.5, 2.5), converter.convertToEntityAttribute(packed));
+	}
+
+	@Test
+	public void testLegacyCommaSeparatedValues() {
+		CommaSeparatedListConverter legacyConverter = new CommaSeparatedListConverter();
+		assertEquals(asList(17.2, 18.4, 17.0), legacyConverter.convertToEntityAttribute("17.2,18.4,17"));
+		assertEquals(asList(17.2, 18.4), legacyConverter.convertToEntityAttribute("17.2,x,18.4,"));
+		assertTrue(legacyConverter.convertToEntityAttribute("").isEmpty());
+		assertTrue(legacyConverter.convertToEntityAttribute(null).isEmpty());
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.zcorum.weather.converter;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.zcorum.weather.dto.WeatherDto;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackedTemperaturesTest {
+
+	private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+	private final ObjectMapper jsonMapper = new ObjectMapper();
+
+	@Test
+	public void testCborRoundTrip() throws IOException {
+		WeatherDto dto = new WeatherDto();
+		dto.setCity("Laredo");
+		dto.setTemperatures(asList(17.2, -3.25, 18.4));
+		byte[] cbor = cborMapper.writeValueAsBytes(dto);
+		// tag 86 then a byte string of 24 bytes
+		assertTrue(indexOf(cbor, new byte[]{(byte) 0xd8, 86, 0x58, 24}) >= 0);
+		WeatherDto read = cborMapper.readValue(cbor, WeatherDto.class);
+		assertTrue(read.getTemperatures() instanceof TemperatureList);
+		assertEquals(dto.getTemperatures(), read.getTemperatures());
+	}
+
+	@Test
+	public void testPackedIsSmallerThanNumbers() throws IOException {
+		WeatherDto dto = new WeatherDto();
+		dto.setTemperatures(Collections.nCopies(24, 17.2));
+		byte[] packed = cborMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL).writeValueAsBytes(dto);
+		byte[] numbers = cborMapper.writeValueAsBytes(Collections.singletonMap("temperatures", dto.getTemperatures()));
+		assertTrue(packed.length < numbers.length);
+	}
+
+	@Test
+	public void testCborNumberArrayIsRead() throws IOException {
+		byte[] cbor = cborMapper.writeValueAsBytes(Collections.singletonMap("temperatures", asList(1.5, 2.0)));
+		assertEquals(asList(1.5, 2.0), cborMapper.readValue(cbor, WeatherDto.class).getTemperatures());
+	}
+
+	@Test
+	public void testJsonKeepsNumberArray() throws IOException {
+		WeatherDto dto = new WeatherDto();
+		dto.setTemperatures(TemperatureList.wrap(new double[]{17.2, 18.0}));
+		Map<?, ?> json = jsonMapper.readValue(jsonMapper.writeValueAsString(dto), Map.class);
+		assertEquals(asList(17.2, 18.0), json.get("temperatures"));
+		assertEquals(asList(17.2, 18.0), jsonMapper.readValue("{\"temperatures\": [17.2, \"18\"]}", WeatherDto.class).getTemperatures());
+	}
+
+	private static int indexOf(byte[] bytes, byte[] part) {
+		for (int i = 0; i + part.length <= bytes.length; i++) {
+			boolean found = true;
+			for (int j = 0; j < part.length && found; j++) {
+				found = bytes[i + j] == part[j];
+			}
+			if (found) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.zcorum.weather.export;
+
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.util.Dates;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarRecordWriterTest {
+
+	@Test
+	public void testRowGroups() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ColumnarRecordWriter writer = new ColumnarRecordWriter(out, 2);
+		writer.write(record(1, "2023-03-20", "Laredo", 17.2, 18.4, 17.3));
+		writer.write(record(2, "2023-03-21", "Los Angeles"));
+		writer.write(record(3, null, "Kyiv", 5.5));
+		writer.finish();
+
+		ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] magic = new byte[4];
+		buffer.get(magic);
+		assertArrayEquals(ColumnarRecordWriter.MAGIC, magic);
+		assertEquals(ColumnarRecordWriter.VERSION, buffer.getInt());
+
+		assertEquals(2, buffer.getInt());
+		assertEquals(3, buffer.getInt());
+		assertEquals("LaredoLos Angeles".length(), buffer.getInt());
+		assertEquals("TexasTexas".length(), buffer.getInt());
+		assertArrayEquals(new int[]{1, 2}, ints(buffer, 2));
+		assertArrayEquals(new int[]{(int) LocalDate.of(2023, 3, 20).toEpochDay(), (int) LocalDate.of(2023, 3, 21).toEpochDay()}, ints(buffer, 2));
+		assertArrayEquals(new double[]{41.4, 41.4}, doubles(buffer, 2), 0);
+		assertArrayEquals(new double[]{-74.8, -74.8}, doubles(buffer, 2), 0);
+		assertArrayEquals(new int[]{0, 3, 3}, ints(buffer, 3));
+		// the temperatures start at a multiple of 8 bytes, so they can be viewed in place
+		assertEquals(0, buffer.position() % 8);
+		assertArrayEquals(new double[]{17.2, 18.4, 17.3}, doubles(buffer, 3), 0);
+		assertArrayEquals(new int[]{0, 6, 17}, ints(buffer, 3));
+		assertEquals("LaredoLos Angeles", string(buffer, 17));
+		assertArrayEquals(new int[]{0, 5, 10}, ints(buffer, 3));
+		assertEquals("TexasTexas", string(buffer, 10));
+
+		assertEquals(1, buffer.getInt());
+		assertEquals(1, buffer.getInt());
+		assertEquals(4, buffer.getInt());
+		assertEquals(5, buffer.getInt());
+		assertArrayEquals(new int[]{3}, ints(buffer, 1));
+		assertArrayEquals(new int[]{ColumnarRecordWriter.MISSING_DATE}, ints(buffer, 1));
+		doubles(buffer, 2);
+		assertArrayEquals(new int[]{0, 1}, ints(buffer, 2));
+		assertArrayEquals(new double[]{5.5}, doubles(buffer, 1), 0);
+		assertArrayEquals(new int[]{0, 4}, ints(buffer, 2));
+		assertEquals("Kyiv", string(buffer, 4));
+		assertArrayEquals(new int[]{0, 5}, ints(buffer, 2));
+		assertEquals("Texas", string(buffer, 5));
+
+		// end of file
+		assertEquals(0, buffer.getInt());
+		assertEquals(0, buffer.getInt());
+		assertEquals(0, buffer.getInt());
+		assertEquals(0, buffer.getInt());
+		assertEquals(0, buffer.remaining());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ColumnarRecordWriter(out).finish();
+		assertEquals(24, out.size());
+	}
+
+	private static WeatherDto record(int id, String date, String city, double... temperatures) {
+		WeatherDto record = new WeatherDto();
+		record.setId(id);
+		record.setDate(date == null ? null : Dates.parse(date));
+		record.setLat(41.4);
+		record.setLon(-74.8);
+		record.setCity(city);
+		record.setState("Texas");
+		record.setTemperatures(temperatures.length == 0 ? Collections.emptyList() : asList(box(temperatures)));
+		return record;
+	}
+
+	private static Double[] box(double[] values) {
+		Double[] boxed = new Double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			boxed[i] = values[i];
+		}
+		return boxed;
+	}
+
+	private static int[] ints(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		skipPadded(buffer, count * Integer.BYTES);
+		return values;
+	}
+
+	private static double[] doubles(ByteBuffer buffer, int count) {
+		assertEquals(0, buffer.position() % 8);
+		double[] values = new double[count];
+		buffer.asDoubleBuffer().get(values);
+		skipPadded(buffer, count * Double.BYTES);
+		return values;
+	}
+
+	private static String string(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		buffer.position(buffer.position() - length);
+		skipPadded(buffer, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipPadded(ByteBuffer buffer, int bytes) {
+		buffer.position(buffer.position() + ((bytes + 7) & ~7));
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.zcorum.weather.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zcorum.weather.dto.ImportReportDto;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.service.WeatherService;
+import com.zcorum.weather.util.Dates;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkImportTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Mock
+	private WeatherService weatherService;
+
+	@Test
+	public void testCsvImport() throws Exception {
+		List<List<WeatherDto>> chunks = recordChunks();
+		String csv = "city,state,date,lat,lon,temperatures\n"
+				+ "Laredo,Texas,2023-03-20,41.39,-74.75,\"17.2, 18.4\"\n"
+				+ "\"Washington, D.C.\",,2023-03-21,,,\n"
+				+ "Laredo,Texas,2023/03/22,41.39,-74.75,17.2\n"
+				+ "\n"
+				+ ",Texas,2023-03-23,41.39,-74.75,17.2\n";
+		ImportReportDto report = bulkImport(10).importStream(stream(csv), ImportFormat.CSV, 0);
+
+		assertNull(report.getError());
+		assertEquals(6, report.getLines());
+		assertEquals(6, report.getCommittedLines());
+		assertEquals(2, report.getStored());
+		assertEquals(2, report.getRejected());
+		assertEquals(asList(4L, 6L), report.getRejections().stream().map(ImportReportDto.Rejection::getLine).collect(toList()));
+		WeatherDto first = chunks.get(0).get(0);
+		assertEquals(Dates.parse("2023-03-20"), first.getDate());
+		assertEquals(Double.valueOf(-74.75), first.getLon());
+		assertEquals(asList(17.2, 18.4), first.getTemperatures());
+		assertEquals("Washington, D.C.", chunks.get(0).get(1).getCity());
+	}
+
+	@Test
+	public void testChunksAreStoredInOrder() throws Exception {
+		List<List<WeatherDto>> chunks = recordChunks();
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 1; i <= 7; i++) {
+			ndjson.append("{\"date\": \"2023-03-20\", \"city\": \"").append(i).append("\"}\n");
+		}
+		ndjson.append("{\"date\": \"2023-03-20\", \"city\": ");
+		ImportReportDto report = bulkImport(2).importStream(stream(ndjson.toString()), ImportFormat.NDJSON, 0);
+
+		assertEquals(7, report.getStored());
+		assertEquals(1, report.getRejected());
+		assertEquals(asList(2, 2, 2, 1), chunks.stream().map(List::size).collect(toList()));
+		assertEquals(asList("1", "2", "3", "4", "5", "6", "7"), chunks.stream().flatMap(List::stream).map(WeatherDto::getCity).collect(toList()));
+	}
+
+	@Test
+	public void testFileImportResumesFromCheckpoint() throws Exception {
+		Path file = folder.newFile("weather.csv").toPath();
+		StringBuilder csv = new StringBuilder("date,city\r\n");
+		for (int i = 1; i <= 6; i++) {
+			csv.append("2023-03-2").append(i).append(",City ").append(i).append("\r\n");
+		}
+		Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+		List<String> stored = new ArrayList<>();
+		AtomicBoolean failing = new AtomicBoolean(true);
+		given(weatherService.createAll(anyList())).willAnswer(invocation -> {
+			List<WeatherDto> records = invocation.getArgument(0);
+			if (failing.get() && records.get(0).getCity().equals("City 3")) {
+				throw new IllegalStateException("Connection lost");
+			}
+			records.forEach(record -> stored.add(record.getCity()));
+			return ids(records);
+		});
+
+		ImportReportDto failed = bulkImport(2).importFile(file, ImportFormat.CSV);
+		assertEquals("Connection lost", failed.getError());
+		assertEquals(3, failed.getCommittedLines());
+		assertTrue(Files.exists(file.resolveSibling("weather.csv.checkpoint")));
+
+		failing.set(false);
+		List<String> upserted = new ArrayList<>();
+		given(weatherService.upsertAll(anyList())).willAnswer(invocation -> {
+			List<WeatherDto> records = invocation.getArgument(0);
+			records.forEach(record -> upserted.add(record.getCity()));
+			return ids(records);
+		});
+		ImportReportDto resumed = bulkImport(2).importFile(file, ImportFormat.CSV);
+		assertNull(resumed.getError());
+		assertEquals(3, resumed.getSkippedLines());
+		assertEquals(7, resumed.getCommittedLines());
+		assertEquals(4, resumed.getStored());
+		assertEquals(asList("City 3", "City 4"), upserted);
+		assertEquals(asList("City 1", "City 2", "City 5", "City 6"), stored);
+		assertFalse(Files.exists(file.resolveSibling("weather.csv.checkpoint")));
+	}
+
+	private BulkImport bulkImport(int chunkSize) {
+		return new BulkImport(weatherService, new ObjectMapper(), chunkSize, 2);
+	}
+
+	private List<List<WeatherDto>> recordChunks() {
+		List<List<WeatherDto>> chunks = new ArrayList<>();
+		given(weatherService.createAll(anyList())).willAnswer(invocation -> {
+			List<WeatherDto> records = invocation.getArgument(0);
+			chunks.add(records);
+			return ids(records);
+		});
+		return chunks;
+	}
+
+	private static List<Integer> ids(List<WeatherDto> records) {
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < records.size(); i++) {
+			ids.add(i + 1);
+		}
+		return ids;
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
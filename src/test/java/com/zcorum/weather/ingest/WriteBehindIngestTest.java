@@ -0,0 +1,158 @@
+package com.zcorum.weather.ingest;
+
+import com.zcorum.weather.dto.IngestStatusDto;
+import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.exception.IngestQueueFullException;
+import com.zcorum.weather.exception.PartialWriteException;
+import com.zcorum.weather.service.WeatherService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.zcorum.weather.dto.IngestStatusDto.State.FAILED;
+import static com.zcorum.weather.dto.IngestStatusDto.State.STORED;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WriteBehindIngestTest {
+
+	@Mock
+	private WeatherService weatherService;
+
+	private WriteBehindIngest ingest;
+
+	@After
+	public void tearDown() {
+		if (ingest != null && ingest.isRunning()) {
+			ingest.stop();
+		}
+	}
+
+	@Test
+	public void testQueuedRecordsAreStoredInBatches() {
+		List<Integer> batchSizes = new ArrayList<>();
+		given(weatherService.createAll(anyList())).willAnswer(invocation -> {
+			List<WeatherDto> records = invocation.getArgument(0);
+			batchSizes.add(records.size());
+			List<Integer> ids = new ArrayList<>();
+			records.forEach(record -> ids.add(Integer.valueOf(record.getCity())));
+			return ids;
+		});
+		ingest = start(100, 2, Duration.ofMillis(200));
+		List<IngestStatusDto> statuses = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			statuses.add(ingest.submit(record(String.valueOf(i))));
+		}
+		ingest.stop();
+		for (int i = 0; i < statuses.size(); i++) {
+			IngestStatusDto status = ingest.status(statuses.get(i).getTicket()).get();
+			assertEquals(STORED, status.getState());
+			assertEquals(Integer.valueOf(i + 1), status.getId());
+		}
+		assertEquals(5, batchSizes.stream().mapToInt(Integer::intValue).sum());
+		assertTrue(batchSizes.stream().allMatch(size -> size <= 2));
+	}
+
+	@Test
+	public void testFullQueueRejectsRecords() throws InterruptedException {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		given(weatherService.createAll(anyList())).willAnswer(invocation -> {
+			writing.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			List<WeatherDto> records = invocation.getArgument(0);
+			List<Integer> ids = new ArrayList<>();
+			records.forEach(record -> ids.add(1));
+			return ids;
+		});
+		ingest = start(2, 10, Duration.ZERO);
+		ingest.submit(record("1"));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		ingest.submit(record("2"));
+		ingest.submit(record("3"));
+		try {
+			ingest.submit(record("4"));
+			fail("The queue holds two records");
+		} catch (IngestQueueFullException e) {
+			// expected
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testFailedBatchIsRetriedRecordByRecord() {
+		given(weatherService.createAll(anyList())).willThrow(new IllegalStateException("batch failed"));
+		WeatherDto stored = record("stored");
+		stored.setId(7);
+		given(weatherService.create(any())).willAnswer(invocation -> {
+			WeatherDto record = invocation.getArgument(0);
+			if (record.getCity().equals("bad")) {
+				throw new IllegalArgumentException("bad record");
+			}
+			return stored;
+		});
+		ingest = start(100, 10, Duration.ofMillis(100));
+		List<IngestStatusDto> statuses = asList(ingest.submit(record("good")), ingest.submit(record("bad")));
+		ingest.stop();
+		IngestStatusDto good = ingest.status(statuses.get(0).getTicket()).get();
+		assertEquals(STORED, good.getState());
+		assertEquals(Integer.valueOf(7), good.getId());
+		IngestStatusDto bad = ingest.status(statuses.get(1).getTicket()).get();
+		assertEquals(FAILED, bad.getState());
+		assertEquals("bad record", bad.getError());
+	}
+
+	@Test
+	public void testOnlyRecordsOfFailedShardsAreRetried() {
+		given(weatherService.createAll(anyList())).willThrow(new PartialWriteException("shard failed", asList(5, null),
+				new IllegalStateException("shard failed")));
+		WeatherDto stored = record("retried");
+		stored.setId(8);
+		given(weatherService.create(any())).willReturn(stored);
+		ingest = start(100, 10, Duration.ofMillis(100));
+		List<IngestStatusDto> statuses = asList(ingest.submit(record("committed")), ingest.submit(record("retried")));
+		ingest.stop();
+		assertEquals(Integer.valueOf(5), ingest.status(statuses.get(0).getTicket()).get().getId());
+		assertEquals(Integer.valueOf(8), ingest.status(statuses.get(1).getTicket()).get().getId());
+		verify(weatherService, times(1)).create(any());
+	}
+
+	@Test(expected = IngestQueueFullException.class)
+	public void testStoppedIngestRejectsRecords() {
+		ingest = start(10, 10, Duration.ZERO);
+		ingest.stop();
+		ingest.submit(record("1"));
+	}
+
+	private WriteBehindIngest start(int capacity, int batchSize, Duration linger) {
+		WriteBehindIngest writeBehindIngest = new WriteBehindIngest(weatherService, new SimpleMeterRegistry(), capacity, batchSize, linger,
+				Duration.ofMinutes(1), Duration.ofSeconds(10));
+		writeBehindIngest.start();
+		return writeBehindIngest;
+	}
+
+	private WeatherDto record(String city) {
+		WeatherDto dto = new WeatherDto();
+		dto.setCity(city);
+		return dto;
+	}
+
+}
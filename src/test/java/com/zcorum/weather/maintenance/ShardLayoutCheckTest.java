@@ -0,0 +1,51 @@
+package com.zcorum.weather.maintenance;
+
+import com.zcorum.weather.shard.Shards;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardLayoutCheckTest {
+
+	private JdbcDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:layout;DB_CLOSE_DELAY=-1");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE weather (id INT PRIMARY KEY)");
+	}
+
+	@After
+	public void tearDown() {
+		jdbcTemplate.execute("DROP ALL OBJECTS");
+	}
+
+	@Test
+	public void layoutIsRecordedOnFirstStartAndAcceptedAgain() {
+		jdbcTemplate.update("INSERT INTO weather VALUES (4), (7)");
+		new ShardLayoutCheck(dataSource, new Shards(3, null)).check(1);
+		new ShardLayoutCheck(dataSource, new Shards(3, null)).check(1);
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM weather_shard", Integer.class));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void resizedShardsAreRejected() {
+		new ShardLayoutCheck(dataSource, new Shards(1, null)).check(0);
+		new ShardLayoutCheck(dataSource, new Shards(2, null)).check(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void idsOfAnotherShardAreRejected() {
+		jdbcTemplate.update("INSERT INTO weather VALUES (2), (3)");
+		new ShardLayoutCheck(dataSource, new Shards(2, null)).check(0);
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.zcorum.weather.repository;
+
+import com.zcorum.weather.routing.ReadRouting;
+import com.zcorum.weather.service.impl.WeatherServiceImpl;
+import com.zcorum.weather.shard.Shards;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+	Verifies on H2 query plans that the statements Hibernate generates for the search predicates of WeatherServiceImpl are
+	served by the weather indexes instead of a table scan. The statements are captured as sent and explained with the
+	parameters the search binds, in the order of its predicates: dates first, then cities.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.zcorum.weather.repository.WeatherRepositoryIndexTest$CapturedStatements")
+@Sql(scripts = {"/create-default-db-data.sql"}, executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class WeatherRepositoryIndexTest {
+
+	private static final String CITY_INDEX = "IDX_WEATHER_CITY_KEY_DATE_ID";
+	private static final String DATE_INDEX = "IDX_WEATHER_DATE_ID";
+
+	private static final LocalDate MARCH_20 = LocalDate.of(2023, 3, 20);
+	private static final LocalDate MARCH_22 = LocalDate.of(2023, 3, 22);
+	private static final LocalDate MARCH_26 = LocalDate.of(2023, 3, 26);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private WeatherRepository weatherRepository;
+
+	private WeatherServiceImpl weatherService;
+
+	@BeforeEach
+	public void setup() {
+		weatherService = new WeatherServiceImpl(weatherRepository, null, null, new Shards(1, null), new NoOpCacheManager(), new ReadRouting(""));
+		CapturedStatements.STATEMENTS.clear();
+	}
+
+	@Test
+	public void searchByCityUsesCityIndex() {
+		weatherService.search(null, null, null, "Laredo", null);
+		assertPlanUsesIndex(CITY_INDEX, "laredo");
+	}
+
+	@Test
+	public void searchBySeveralCitiesUsesCityIndex() {
+		weatherService.search(null, null, null, "Laredo,Los Angeles", null);
+		assertPlanUsesIndex(CITY_INDEX, "laredo", "los angeles");
+	}
+
+	@Test
+	public void searchByCityAndDateUsesCityIndex() {
+		weatherService.search("2023-03-20", null, null, "LAREDO", null);
+		assertPlanUsesIndex(CITY_INDEX, MARCH_20, "laredo");
+	}
+
+	@Test
+	public void searchByDateUsesDateIndex() {
+		weatherService.search("2023-03-20", null, null, null, null);
+		assertPlanUsesIndex(DATE_INDEX, MARCH_20);
+	}
+
+	@Test
+	public void searchByDateRangeUsesDateIndex() {
+		weatherService.search(null, "2023-03-20", "2023-03-26", null, null);
+		assertPlanUsesIndex(DATE_INDEX, MARCH_20, MARCH_26);
+	}
+
+	@Test
+	public void searchBySeveralDatesUsesDateIndex() {
+		weatherService.search("2023-03-20,2023-03-22", null, null, null, null);
+		assertPlanUsesIndex(DATE_INDEX, MARCH_20, MARCH_22);
+	}
+
+	@Test
+	public void searchByCityAndDateRangeUsesCityIndex() {
+		weatherService.search(null, "2023-03-20", "2023-03-26", "laredo", null);
+		assertPlanUsesIndex(CITY_INDEX, MARCH_20, MARCH_26, "laredo");
+	}
+
+	private void assertPlanUsesIndex(String index, Object... parameters) {
+		assertEquals(1, CapturedStatements.STATEMENTS.size(), "Expected one statement in " + CapturedStatements.STATEMENTS);
+		String sql = CapturedStatements.STATEMENTS.get(0);
+		assertFalse(sql.toLowerCase(Locale.ROOT).contains("lower("), "Expected no function on a column in " + sql);
+		String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters);
+		assertTrue(plan.toUpperCase(Locale.ROOT).contains(index), "Expected " + index + " in plan " + plan);
+	}
+
+	/*
+		Registered with Hibernate by class name, so the statements are kept in a static list.
+	 */
+	public static class CapturedStatements implements StatementInspector {
+
+		private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			if (sql.toLowerCase(Locale.ROOT).startsWith("select")) {
+				STATEMENTS.add(sql);
+			}
+			return sql;
+		}
+	}
+
+}
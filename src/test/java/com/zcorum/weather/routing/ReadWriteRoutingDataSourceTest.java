@@ -0,0 +1,36 @@
+package com.zcorum.weather.routing;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static com.zcorum.weather.routing.ReadWriteRoutingDataSource.Route.PRIMARY;
+import static com.zcorum.weather.routing.ReadWriteRoutingDataSource.Route.REPLICA;
+import static com.zcorum.weather.routing.ReadWriteRoutingDataSource.currentRoute;
+import static org.junit.Assert.assertEquals;
+
+public class ReadWriteRoutingDataSourceTest {
+
+	@After
+	public void tearDown() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		ReadYourWrites.release();
+	}
+
+	@Test
+	public void testReadOnlyTransactionsGoToReplica() {
+		assertEquals(PRIMARY, currentRoute());
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals(REPLICA, currentRoute());
+	}
+
+	@Test
+	public void testPinnedReadsGoToPrimary() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		ReadYourWrites.pin();
+		assertEquals(PRIMARY, currentRoute());
+		ReadYourWrites.release();
+		assertEquals(REPLICA, currentRoute());
+	}
+
+}
@@ -1,24 +1,41 @@
 package com.zcorum.weather.service.impl;
 
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.dto.WeatherMultiGetDto;
+import com.zcorum.weather.dto.WeatherPageDto;
 import com.zcorum.weather.entity.WeatherEntity;
+import com.zcorum.weather.event.WeatherChangedEvent;
+import com.zcorum.weather.exception.WrongMultiGetRequestException;
+import com.zcorum.weather.exception.WrongPageRequestException;
 import com.zcorum.weather.repository.WeatherRepository;
+import com.zcorum.weather.rollup.WeatherRollups;
+import com.zcorum.weather.routing.ReadRouting;
+import com.zcorum.weather.shard.Shards;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
-import java.util.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
-import static com.zcorum.weather.constants.Constants.FIELD_CITY;
+import static com.zcorum.weather.constants.Constants.CACHE_WEATHER_BY_ID;
+import static com.zcorum.weather.constants.Constants.FIELD_CITY_KEY;
+import static com.zcorum.weather.constants.Constants.FIELD_DATE;
 import static com.zcorum.weather.constants.Constants.FIELD_ID;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -34,9 +51,17 @@ public class WeatherServiceImplTest {
 	@Mock
 	private WeatherRepository weatherRepository;
 
+	@Mock
+	private WeatherRollups weatherRollups;
+
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+
+	private final CacheManager cacheManager = new ConcurrentMapCacheManager(CACHE_WEATHER_BY_ID);
+
 	@Before
 	public void setup() {
-		this.weatherServiceImpl = new WeatherServiceImpl(weatherRepository);
+		this.weatherServiceImpl = new WeatherServiceImpl(weatherRepository, weatherRollups, eventPublisher, new Shards(1, null), cacheManager, new ReadRouting(""));
 	}
 
 	@Test
@@ -55,6 +80,7 @@ public class WeatherServiceImplTest {
 		assertEntityValuesMatchingDtoValues(entity, createdDto);
 
 		verify(weatherRepository, times(1)).save(any());
+		verify(eventPublisher, times(1)).publishEvent(any(WeatherChangedEvent.class));
 	}
 
 	@Test
@@ -85,15 +111,63 @@ public class WeatherServiceImplTest {
 		verify(weatherRepository, times(1)).findById(any());
 	}
 
+	@Test
+	public void testFindAllById() {
+		cacheManager.getCache(CACHE_WEATHER_BY_ID).put(2, generateTestDto());
+		given(weatherRepository.findAllById(asList(3, 1))).willReturn(singletonList(generateTestEntity(1)));
+
+		WeatherMultiGetDto result = weatherServiceImpl.findAllById(asList(3, 1, 2, 3, null));
+		assertEquals(2, result.getRecords().size());
+		assertEquals(Integer.valueOf(1), result.getRecords().get(0).getId());
+		assertEquals(singletonList(3), result.getMissingIds());
+		assertNotNull(cacheManager.getCache(CACHE_WEATHER_BY_ID).get(1));
+
+		verify(weatherRepository, times(1)).findAllById(any());
+	}
+
+	@Test
+	public void testFindAllByIdFromReplicaIsNotCached() {
+		weatherServiceImpl = new WeatherServiceImpl(weatherRepository, weatherRollups, eventPublisher, new Shards(1, null), cacheManager,
+				new ReadRouting("jdbc:h2:mem:replica"));
+		given(weatherRepository.findAllById(singletonList(1))).willReturn(singletonList(generateTestEntity(1)));
+
+		assertEquals(1, weatherServiceImpl.findAllById(singletonList(1)).getRecords().size());
+		assertNull(cacheManager.getCache(CACHE_WEATHER_BY_ID).get(1));
+	}
+
+	@Test
+	public void testFindAllByIdInChunks() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 2500; id++) {
+			ids.add(id);
+		}
+		given(weatherRepository.findAllById(any())).willReturn(emptyList());
+
+		WeatherMultiGetDto result = weatherServiceImpl.findAllById(ids);
+		assertEquals(0, result.getRecords().size());
+		assertEquals(ids, result.getMissingIds());
+
+		verify(weatherRepository, times(3)).findAllById(any());
+	}
+
+	@Test(expected = WrongMultiGetRequestException.class)
+	public void testFindAllByIdTooManyIds() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 10001; id++) {
+			ids.add(id);
+		}
+		weatherServiceImpl.findAllById(ids);
+	}
+
 	@Test
 	public void testSearchOrderByParameterAsc() {
 		List<WeatherEntity> entitiesList = asList(generateTestEntity(1), generateTestEntity(2));
 		given(weatherRepository.findAll(any(Specification.class), any(Sort.class))).willReturn(entitiesList);
 
-		List<WeatherDto> searchResult = weatherServiceImpl.search("2023-03-24", "Jersey City", "city");
+		List<WeatherDto> searchResult = weatherServiceImpl.search("2023-03-24", null, null, "Jersey City", "city");
 		assertEquals(entitiesList.size(), searchResult.size());
 
-		verify(weatherRepository, times(1)).findAll(any(Specification.class), eq(Sort.by(Sort.Direction.ASC, FIELD_CITY)));
+		verify(weatherRepository, times(1)).findAll(any(Specification.class), eq(Sort.by(Sort.Direction.ASC, FIELD_CITY_KEY).and(Sort.by(Sort.Direction.ASC, FIELD_ID))));
 	}
 
 	@Test
@@ -101,15 +175,15 @@ public class WeatherServiceImplTest {
 		List<WeatherEntity> entitiesList = asList(generateTestEntity(1), generateTestEntity(2));
 		given(weatherRepository.findAll(any(Specification.class), any(Sort.class))).willReturn(entitiesList);
 
-		List<WeatherDto> searchResult = weatherServiceImpl.search("2023-03-24", "Jersey City", "-city");
+		List<WeatherDto> searchResult = weatherServiceImpl.search("2023-03-24", null, null, "Jersey City", "-city");
 		assertEquals(entitiesList.size(), searchResult.size());
 
-		verify(weatherRepository, times(1)).findAll(any(Specification.class), eq(Sort.by(Sort.Direction.DESC, FIELD_CITY)));
+		verify(weatherRepository, times(1)).findAll(any(Specification.class), eq(Sort.by(Sort.Direction.DESC, FIELD_CITY_KEY).and(Sort.by(Sort.Direction.ASC, FIELD_ID))));
 	}
 
 	@Test(expected = RuntimeException.class)
 	public void testSearchSortByUnknownField() {
-		weatherServiceImpl.search("2023-03-24", "Jersey City", "unknown");
+		weatherServiceImpl.search("2023-03-24", null, null, "Jersey City", "unknown");
 
 		verify(weatherRepository, times(0)).findAll(any(Specification.class), any(Sort.class));
 	}
@@ -121,7 +195,7 @@ public class WeatherServiceImplTest {
 
 		String city = "Jersey City";
 		String date = "2023-03-24";
-		List<WeatherDto> searchResult = weatherServiceImpl.search(date, city, null);
+		List<WeatherDto> searchResult = weatherServiceImpl.search(date, null, null, city, null);
 		assertEquals(entitiesList.size(), searchResult.size());
 
 		verify(weatherRepository, times(1)).findAll(
@@ -129,6 +203,52 @@ public class WeatherServiceImplTest {
 				eq(Sort.by(Sort.Direction.ASC, FIELD_ID)));
 	}
 
+	@Test
+	public void testSearchWithConsumer() {
+		List<WeatherEntity> entitiesList = asList(generateTestEntity(1), generateTestEntity(2));
+		given(weatherRepository.stream(any(Specification.class), any(Sort.class))).willReturn(entitiesList.stream());
+
+		List<WeatherDto> consumed = new ArrayList<>();
+		int count = weatherServiceImpl.search("2023-03-24", null, null, "Jersey City", "-date", consumed::add);
+		assertEquals(entitiesList.size(), count);
+		assertEquals(entitiesList.size(), consumed.size());
+		assertEntityValuesMatchingDtoValues(entitiesList.get(0), consumed.get(0));
+
+		verify(weatherRepository, times(1)).stream(any(Specification.class), eq(Sort.by(Sort.Direction.DESC, FIELD_DATE).and(Sort.by(Sort.Direction.ASC, FIELD_ID))));
+		verify(weatherRepository, times(2)).detach(any());
+	}
+
+	@Test
+	public void testSearchPage() {
+		List<WeatherEntity> entitiesList = asList(generateTestEntity(1), generateTestEntity(2), generateTestEntity(3));
+		given(weatherRepository.findAll(any(Specification.class), any(Sort.class), eq(3))).willReturn(entitiesList);
+
+		WeatherPageDto page = weatherServiceImpl.search(null, null, null, "Jersey City", "city", 2, null);
+		assertEquals(2, page.getRecords().size());
+		assertNotNull(page.getNextPageToken());
+
+		given(weatherRepository.findAll(any(Specification.class), any(Sort.class), eq(3))).willReturn(entitiesList.subList(2, 3));
+		WeatherPageDto lastPage = weatherServiceImpl.search(null, null, null, "Jersey City", "city", 2, page.getNextPageToken());
+		assertEquals(1, lastPage.getRecords().size());
+		assertNull(lastPage.getNextPageToken());
+	}
+
+	@Test(expected = WrongPageRequestException.class)
+	public void testSearchPageWithTokenOfAnotherSort() {
+		String token = new PageToken("date", 2, "2023-03-24").encode();
+		weatherServiceImpl.search(null, null, null, null, "-date", 2, token);
+	}
+
+	@Test(expected = WrongPageRequestException.class)
+	public void testSearchPageWithMalformedToken() {
+		weatherServiceImpl.search(null, null, null, null, null, 2, "not a token");
+	}
+
+	@Test(expected = WrongPageRequestException.class)
+	public void testSearchPageWithWrongLimit() {
+		weatherServiceImpl.search(null, null, null, null, null, 0, null);
+	}
+
 	private void assertEntityValuesMatchingDtoValues(WeatherEntity entity, WeatherDto createdDto) {
 		assertEquals(entity.getId(), createdDto.getId());
 		assertEquals(entity.getCity(), createdDto.getCity());
@@ -143,7 +263,7 @@ public class WeatherServiceImplTest {
 		WeatherDto dto = new WeatherDto();
 		dto.setLon(-14.1234);
 		dto.setLat(23.4567);
-		dto.setDate(new Date());
+		dto.setDate(LocalDate.now());
 		dto.setCity("Jersey City");
 		dto.setState("New Jersey");
 		dto.setTemperatures(asList(17.3, 16.8, 16.4, 16.0, 15.6, 15.3, 15.0, 14.9, 15.8, 18.0, 20.2, 22.3, 23.8, 24.9, 25.5, 25.7, 24.9, 23.0, 21.7, 20.8, 29.9, 29.2, 28.6, 28.1));
@@ -155,7 +275,7 @@ public class WeatherServiceImplTest {
 		entity.setId(Optional.ofNullable(id).orElse(1));
 		entity.setLon(-14.1234);
 		entity.setLat(23.4567);
-		entity.setDate(new Date());
+		entity.setDate(LocalDate.now());
 		entity.setCity("Jersey City");
 		entity.setState("New Jersey");
 		entity.setTemperatures(asList(17.3, 16.8, 16.4, 16.0, 15.6, 15.3, 15.0, 14.9, 15.8, 18.0, 20.2, 22.3, 23.8, 24.9, 25.5, 25.7, 24.9, 23.0, 21.7, 20.8, 29.9, 29.2, 28.6, 28.1));
@@ -0,0 +1,33 @@
+package com.zcorum.weather.shard;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+
+public class ShardMergeTest {
+
+	@Test
+	public void testMergeKeepsOrder() {
+		List<List<Integer>> sources = asList(asList(1, 4, 7), emptyList(), asList(2, 3, 9), asList(5));
+		assertEquals(asList(1, 2, 3, 4, 5, 7, 9), ShardMerge.merge(sources, Comparator.<Integer>naturalOrder()));
+	}
+
+	@Test
+	public void testEqualElementsKeepSourceOrder() {
+		List<List<String>> sources = asList(asList("b1", "c1"), asList("a2", "b2"));
+		Comparator<String> byLetter = Comparator.comparing(value -> value.charAt(0));
+		assertEquals(asList("a2", "b1", "b2", "c1"), ShardMerge.merge(sources, byLetter));
+	}
+
+	@Test
+	public void testMergeDescending() {
+		List<List<Integer>> sources = asList(asList(9, 3), asList(8, 5, 1));
+		assertEquals(asList(9, 8, 5, 3, 1), ShardMerge.merge(sources, Comparator.<Integer>reverseOrder()));
+	}
+
+}
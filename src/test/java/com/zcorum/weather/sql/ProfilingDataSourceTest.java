@@ -0,0 +1,129 @@
+package com.zcorum.weather.sql;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilingDataSourceTest {
+
+	private final List<String> recorded = new ArrayList<>();
+
+	private Connection connection;
+
+	@Before
+	public void setup() throws SQLException {
+		JdbcDataSource target = new JdbcDataSource();
+		target.setURL("jdbc:h2:mem:profiling;DB_CLOSE_DELAY=-1");
+		SqlProfiler profiler = new SqlProfiler(Duration.ZERO) {
+			@Override
+			void record(String sql, String parameterShape, long rows, long nanos) {
+				super.record(sql, parameterShape, rows, nanos);
+				recorded.add(sql + " | " + parameterShape + " | " + rows + " | " + SqlProfile.origin());
+			}
+		};
+		connection = new ProfilingDataSource(target, profiler).getConnection();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE t (id INT, name VARCHAR(10))");
+		}
+		recorded.clear();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE t");
+		}
+		connection.close();
+		SqlProfile.stop();
+	}
+
+	@Test
+	public void batchAndQueryAreRecordedWithParameterShapeRowsAndOrigin() throws SQLException {
+		String previous = SqlProfile.enter("WeatherServiceImpl.search(..)");
+		SqlProfile profile = SqlProfile.start();
+		try (PreparedStatement insert = connection.prepareStatement("INSERT INTO t VALUES (?, ?)")) {
+			for (int i = 0; i < 3; i++) {
+				insert.setInt(1, i);
+				insert.setString(2, "n" + i);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		try (PreparedStatement select = connection.prepareStatement("SELECT id FROM t WHERE id >= ? AND name <> ?")) {
+			select.setInt(1, 1);
+			select.setNull(2, java.sql.Types.VARCHAR);
+			select.setString(2, "x");
+			try (ResultSet resultSet = select.executeQuery()) {
+				while (resultSet.next()) {
+					assertTrue(resultSet.getInt(1) >= 1);
+				}
+			}
+		} finally {
+			SqlProfile.exit(previous);
+		}
+		assertEquals(2, recorded.size());
+		assertEquals("INSERT INTO t VALUES (?, ?) | Int, String | 3 | WeatherServiceImpl.search(..)", recorded.get(0));
+		assertEquals("SELECT id FROM t WHERE id >= ? AND name <> ? | Int, String | 2 | WeatherServiceImpl.search(..)", recorded.get(1));
+		assertEquals(2, profile.getStatements());
+		assertTrue(profile.getNanos() > 0);
+	}
+
+	@Test
+	public void capturedProfileAndOriginAreCarriedToAnotherThread() throws Exception {
+		String previous = SqlProfile.enter("WeatherServiceImpl.search(..)");
+		SqlProfile profile = SqlProfile.start();
+		SqlProfile.Context context;
+		try {
+			context = SqlProfile.capture();
+		} finally {
+			SqlProfile.exit(previous);
+		}
+		Thread thread = new Thread(() -> context.run(() -> {
+			try (Statement statement = connection.createStatement()) {
+				return statement.execute("SELECT id FROM t");
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		}));
+		thread.start();
+		thread.join();
+		assertEquals(1, recorded.size());
+		assertEquals("SELECT id FROM t |  | 0 | WeatherServiceImpl.search(..)", recorded.get(0));
+		assertEquals(1, profile.getStatements());
+	}
+
+	@Test
+	public void statementClosedBeforeResultSetIsRecordedOnce() throws SQLException {
+		PreparedStatement select = connection.prepareStatement("SELECT id FROM t");
+		ResultSet resultSet = select.executeQuery();
+		assertFalse(resultSet.next());
+		select.close();
+		resultSet.close();
+		assertEquals(1, recorded.size());
+		assertEquals("SELECT id FROM t |  | 0 | null", recorded.get(0));
+	}
+
+	@Test
+	public void proxiesAreEqualOnlyToThemselves() throws SQLException {
+		try (PreparedStatement first = connection.prepareStatement("SELECT id FROM t")) {
+			assertEquals(first, first);
+			assertEquals(System.identityHashCode(first), first.hashCode());
+			assertFalse(first.equals(connection.prepareStatement("SELECT id FROM t")));
+		}
+	}
+
+}
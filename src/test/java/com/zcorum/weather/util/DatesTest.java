@@ -0,0 +1,53 @@
+package com.zcorum.weather.util;
+
+import com.zcorum.weather.exception.WrongDateFormatException;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class DatesTest {
+
+	@Test
+	public void testParse() {
+		assertEquals(LocalDate.of(2023, 3, 20), Dates.parse("2023-03-20"));
+		assertEquals(LocalDate.of(2024, 2, 29), Dates.parse("2024-02-29"));
+		assertEquals(LocalDate.of(1985, 12, 31), Dates.parse("1985-12-31"));
+	}
+
+	@Test
+	public void testParseLenient() {
+		// accepted by the former SimpleDateFormat parsing as well
+		assertEquals(LocalDate.of(2023, 3, 5), Dates.parse("2023-3-5"));
+		assertEquals(LocalDate.of(2023, 3, 2), Dates.parse("2023-02-30"));
+		assertEquals(LocalDate.of(2024, 1, 1), Dates.parse("2023-13-01"));
+		assertEquals(LocalDate.of(2023, 3, 20), Dates.parse("2023-03-20T10:00"));
+	}
+
+	@Test(expected = WrongDateFormatException.class)
+	public void testParseWrongFormat() {
+		Dates.parse("January 1st, 2023");
+	}
+
+	@Test(expected = WrongDateFormatException.class)
+	public void testParseWrongSeparator() {
+		Dates.parse("2023/03/20");
+	}
+
+	@Test
+	public void testParseList() {
+		assertEquals(asList(LocalDate.of(2023, 3, 20), LocalDate.of(2023, 3, 22)), Dates.parseList("2023-03-20, 2023-03-22"));
+	}
+
+	@Test
+	public void testFormat() {
+		assertEquals("2023-03-05", Dates.format(LocalDate.of(2023, 3, 5)));
+		assertEquals("0099-12-31", Dates.format(LocalDate.of(99, 12, 31)));
+		for (LocalDate date = LocalDate.of(2023, 1, 1); date.getYear() == 2023; date = date.plusDays(1)) {
+			assertEquals(date, Dates.parse(Dates.format(date)));
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.zcorum.weather.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeohashTest {
+
+	@Test
+	public void testEncode() {
+		assertEquals("ezs42", Geohash.encode(42.605, -5.603, 5));
+		assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+	}
+
+	@Test
+	public void testDistance() {
+		// London to Paris
+		assertEquals(343.5, Geohash.distanceKm(51.5074, -0.1278, 48.8566, 2.3522), 0.5);
+		assertEquals(0.0, Geohash.distanceKm(10, 20, 10, 20), 1e-9);
+	}
+
+	@Test
+	public void testCoveringContainsEveryPointWithinRadius() {
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			double lat = random.nextDouble() * 160 - 80;
+			double lon = random.nextDouble() * 360 - 180;
+			double radiusKm = Math.pow(10, random.nextDouble() * 3);
+			// no cells mean every point is searched
+			List<String> cells = Geohash.covering(lat, lon, radiusKm);
+			double pointLat = lat + (random.nextDouble() * 2 - 1) * radiusKm / 111.2;
+			double pointLon = lon + (random.nextDouble() * 2 - 1) * radiusKm / 111.2 / Math.cos(Math.toRadians(Math.abs(lat) + 10));
+			pointLon = pointLon >= 180 ? pointLon - 360 : pointLon < -180 ? pointLon + 360 : pointLon;
+			if (Geohash.distanceKm(lat, lon, pointLat, pointLon) <= radiusKm) {
+				String hash = Geohash.encode(pointLat, pointLon, Geohash.MAX_PRECISION);
+				assertTrue(cells.isEmpty() || cells.stream().anyMatch(hash::startsWith));
+			}
+		}
+	}
+
+	@Test
+	public void testCoveringPrecision() {
+		List<String> cells = Geohash.covering(41.4, -74.75, 10);
+		assertFalse(cells.isEmpty());
+		assertEquals(4, cells.get(0).length());
+		assertEquals(9, cells.size());
+	}
+
+	@Test
+	public void testNeighbourhoodAcrossAntimeridian() {
+		List<String> cells = Geohash.neighbourhood(0.1, 179.99, 4);
+		assertEquals(9, cells.size());
+		assertTrue(cells.contains(Geohash.encode(0.1, -179.99, 4)));
+	}
+
+	@Test
+	public void testNoCoveringAroundPoles() {
+		assertTrue(Geohash.covering(89.9, 0, 50).isEmpty());
+		assertEquals(0.0, Geohash.coveredRadiusKm(89.9, 0, 3), 1e-9);
+	}
+
+}
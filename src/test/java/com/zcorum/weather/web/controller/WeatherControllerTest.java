@@ -1,23 +1,40 @@
 package com.zcorum.weather.web.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zcorum.weather.cache.WeatherChanges;
+import com.zcorum.weather.config.CborConfig;
 import com.zcorum.weather.dto.WeatherDto;
+import com.zcorum.weather.ingest.BulkImport;
+import com.zcorum.weather.routing.ReadRouting;
 import com.zcorum.weather.service.WeatherService;
+import com.zcorum.weather.util.Dates;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
-import static com.zcorum.weather.constants.Constants.yyyy_MM_dd;
+import static com.zcorum.weather.constants.Constants.MEDIA_TYPE_NDJSON;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -26,6 +43,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(WeatherController.class)
+@Import({CborConfig.class, ReadRouting.class})
 public class WeatherControllerTest {
 
 	@Autowired
@@ -34,6 +52,24 @@ public class WeatherControllerTest {
 	@MockBean
 	private WeatherService weatherService;
 
+	@MockBean
+	private BulkImport bulkImport;
+
+	@MockBean
+	private WeatherChanges weatherChanges;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@TestConfiguration
+	static class MetricsConfig {
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+
 	@Test
 	public void createWeatherEndpointShouldReturn_201_StatusAndRecordId() throws Exception {
 		WeatherDto request = generateTestWeatherRecord();
@@ -54,12 +90,32 @@ public class WeatherControllerTest {
 				.andExpect(jsonPath("$.lat").value(expectedResponse.getLat()))
 				.andExpect(jsonPath("$.city").value(expectedResponse.getCity()))
 				.andExpect(jsonPath("$.state").value(expectedResponse.getState()))
-				.andExpect(jsonPath("$.date").value(new SimpleDateFormat(yyyy_MM_dd).format(expectedResponse.getDate())))
+				.andExpect(jsonPath("$.date").value(Dates.format(expectedResponse.getDate())))
 				.andExpect(jsonPath("$.temperatures.length()").value(expectedResponse.getTemperatures().size()));
 		// verify service was called only once
 		verify(weatherService, times(1)).create(any());
 	}
 
+	@Test
+	public void createBatchEndpointShouldReadEveryNdjsonLine() throws Exception {
+		List<WeatherDto> received = new ArrayList<>();
+		given(weatherService.createAll(any())).willAnswer(invocation -> {
+			Iterable<WeatherDto> requests = invocation.getArgument(0);
+			requests.forEach(received::add);
+			return asList(1, 2);
+		});
+
+		mockMvc.perform(post("/weather/batch")
+						.contentType(MEDIA_TYPE_NDJSON)
+						.content(toJsonString(generateTestWeatherRecord()) + "\n" + toJsonString(generateTestWeatherRecord()) + "\n")
+				)
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0]").value(1));
+		assertEquals(2, received.size());
+		assertEquals("Jersey City", received.get(1).getCity());
+	}
+
 	@Test
 	public void getWeatherRecordByExistingId() throws Exception {
 		Integer expectedId = 1;
@@ -75,12 +131,22 @@ public class WeatherControllerTest {
 				.andExpect(jsonPath("$.lat").value(expectedResponse.getLat()))
 				.andExpect(jsonPath("$.city").value(expectedResponse.getCity()))
 				.andExpect(jsonPath("$.state").value(expectedResponse.getState()))
-				.andExpect(jsonPath("$.date").value(new SimpleDateFormat(yyyy_MM_dd).format(expectedResponse.getDate())))
+				.andExpect(jsonPath("$.date").value(Dates.format(expectedResponse.getDate())))
 				.andExpect(jsonPath("$.temperatures.length()").value(expectedResponse.getTemperatures().size()));
 		// verify service was called only once
 		verify(weatherService, times(1)).findById(expectedId);
 	}
 
+	@Test
+	public void getWeatherRecordWithCurrentTagIsNotModifiedWithoutReadingIt() throws Exception {
+		given(weatherService.findVersionById(1)).willReturn(2);
+		mockMvc.perform(get("/weather/1").header(HttpHeaders.IF_NONE_MATCH, "\"1.2\""))
+				// verify status is 304 - Not Modified
+				.andExpect(status().isNotModified());
+		// verify the record itself was not read
+		verify(weatherService, never()).findById(any());
+	}
+
 	@Test
 	public void getWeatherRecordByNotExistingId() throws Exception {
 		Integer expectedId = 100500;
@@ -99,10 +165,12 @@ public class WeatherControllerTest {
 		// in this test we need to make sure that service is calling using correct parameters
 		WeatherDto record = generateTestWeatherRecord();
 		record.setId(1);
-		given(weatherService.search(any(), any(), any())).willReturn(singletonList(record));
+		given(weatherService.search(any(), any(), any(), any(), any())).willReturn(singletonList(record));
 		String city = "Jersey City";
 		String date = "2023-03-23";
 		String sort = "-date";
+		String from = "2023-03-20";
+		String to = "2023-03-26";
 		// call without params
 		mockMvc.perform(get("/weather"))
 				.andExpect(status().isOk())
@@ -119,25 +187,66 @@ public class WeatherControllerTest {
 		mockMvc.perform(get("/weather").param("sort", sort))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$").exists());
+		// call with date range params
+		mockMvc.perform(get("/weather").param("from", from).param("to", to))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$").exists());
 		// call with all params
 		mockMvc.perform(get("/weather")
 						.param("city", city)
 						.param("date", date)
+						.param("from", from)
+						.param("to", to)
 						.param("sort", sort))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$").exists());
-		verify(weatherService, times(1)).search(null, null, null);
-		verify(weatherService, times(1)).search(null, city, null);
-		verify(weatherService, times(1)).search(date, null, null);
-		verify(weatherService, times(1)).search(null, null, sort);
-		verify(weatherService, times(1)).search(date, city, sort);
+		verify(weatherService, times(1)).search(null, null, null, null, null);
+		verify(weatherService, times(1)).search(null, null, null, city, null);
+		verify(weatherService, times(1)).search(date, null, null, null, null);
+		verify(weatherService, times(1)).search(null, null, null, null, sort);
+		verify(weatherService, times(1)).search(null, from, to, null, null);
+		verify(weatherService, times(1)).search(date, from, to, city, sort);
+	}
+
+	@Test
+	public void searchStreamWritesEveryRecord() throws Exception {
+		WeatherDto first = generateTestWeatherRecord();
+		first.setId(1);
+		WeatherDto second = generateTestWeatherRecord();
+		second.setId(2);
+		given(weatherService.search(any(), any(), any(), any(), any(), any())).willAnswer(invocation -> {
+			Consumer<WeatherDto> consumer = invocation.getArgument(5);
+			consumer.accept(first);
+			consumer.accept(second);
+			return 2;
+		});
+		mockMvc.perform(get("/weather").param("stream", "true").param("city", "Jersey City"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0].id").value(1))
+				.andExpect(jsonPath("$[1].id").value(2))
+				.andExpect(jsonPath("$[1].temperatures.length()").value(second.getTemperatures().size()));
+		verify(weatherService, times(1)).search(eq(null), eq(null), eq(null), eq("Jersey City"), eq(null), any());
+	}
+
+	@Test
+	public void searchResponseSizeIsRecordedByQueryShape() throws Exception {
+		given(weatherService.search(any(), any(), any(), any(), any())).willReturn(singletonList(generateTestWeatherRecord()));
+		String body = mockMvc.perform(get("/weather").param("city", "Jersey City,Kyiv").param("from", "2023-03-20"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		DistributionSummary bytes = meterRegistry.get("weather.search.bytes")
+				.tags("method", "search", "date", "range", "cities", "2-5", "sort", "id")
+				.summary();
+		assertEquals(1, bytes.count());
+		assertEquals(body.length(), bytes.totalAmount(), 0);
 	}
 
 	private WeatherDto generateTestWeatherRecord() {
 		WeatherDto record = new WeatherDto();
 		record.setLon(-14.1234);
 		record.setLat(23.4567);
-		record.setDate(new Date());
+		record.setDate(LocalDate.now());
 		record.setCity("Jersey City");
 		record.setState("New Jersey");
 		record.setTemperatures(asList(17.3, 16.8, 16.4, 16.0, 15.6, 15.3, 15.0, 14.9, 15.8, 18.0, 20.2, 22.3, 23.8, 24.9, 25.5, 25.7, 24.9, 23.0, 21.7, 20.8, 29.9, 29.2, 28.6, 28.1));
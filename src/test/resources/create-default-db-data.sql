@@ -1,4 +1,5 @@
 TRUNCATE TABLE weather;
+TRUNCATE TABLE weather_rollup;
 
 INSERT INTO weather (id, date, lat, lon, city, state, temperatures) VALUES
 (1, '2023-03-20', 41.396318548377, -74.757369084359, 'Laredo', 'Texas', '17.2,18.4,17.3,15.5,19.4,18.7,15.1,19.9,16.5,15.6,19.4,17,15.5,18.8,15.8,15.8,19.9,18.4,15.7,15,15.3,16.6,15.3,16.6'),
@@ -14,4 +15,9 @@ INSERT INTO weather (id, date, lat, lon, city, state, temperatures) VALUES
 (9, '2023-04-11', 40.384348977787, -121.517659411304, 'Los Angeles', 'California', '34.9,32.4,30.1,32.8,34.2,34.4,35,33.1,31,30.5,34.6,32.6,33.3,31.5,34.8,34.5,30.1,33.7,34.4,33.5,31.3,33.1,32.6,31.6'),
 (10, '2023-04-12', 40.384348977787, -121.517659411304, 'Los Angeles', 'California', '31.6,33.3,33.7,34.6,32.5,30.3,31,31.6,31,32.2,30.3,32,30.5,33,34.3,33.6,30.3,34.1,33.1,33.3,34.6,30.8,31.6,31.8'),
 (11, '2023-04-13', 40.384348977787, -121.517659411304, 'Los Angeles', 'California', '31.3,32.4,31.3,34.8,34.2,32,30.5,31.3,30.8,32.4,31,30.9,31.6,30,34.3,31.2,31,32.9,32.6,33.8,34.7,32.7,34.2,34.2'),
-(12, '2023-04-14', 40.384348977787, -121.517659411304, 'Los Angeles', 'California', '31.7,33.6,32.6,33.4,32.2,33.6,34.5,34.7,31.9,30.1,32.7,30.9,30.2,31,31.4,31.2,31.3,30.1,30.7,32.7,33.7,31.8,35,34.3');
\ No newline at end of file
+(12, '2023-04-14', 40.384348977787, -121.517659411304, 'Los Angeles', 'California', '31.7,33.6,32.6,33.4,32.2,33.6,34.5,34.7,31.9,30.1,32.7,30.9,30.2,31,31.4,31.2,31.3,30.1,30.7,32.7,33.7,31.8,35,34.3');
+
+UPDATE weather SET city_key = LOWER(city), state_key = COALESCE(state, '');
+
+-- written directly, see WeatherChanges
+UPDATE weather_changes SET changes = changes + 1;
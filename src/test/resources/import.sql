@@ -0,0 +1 @@
+ALTER SEQUENCE weather_id_seq RESTART WITH 1001;